@@ -0,0 +1,201 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.DictHebMorph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads each dictionary once per process, and shares it between everyone who acquires it. Dictionaries are
+ * keyed by their loader and path, and by the modification time of their files, so a dictionary updated on disk
+ * is loaded anew while the old one serves whoever still holds it.
+ * <p>
+ * Every acquire returns a Lease, which must be closed when its holder is done with the dictionary; the registry
+ * drops a dictionary once all its leases are closed. Dictionaries are frozen on load, see DictHebMorph.freeze, so
+ * no holder can change them under the others: caches and lookup limits have to be set up by the loader.
+ */
+public class DictionaryRegistry {
+    private static final DictionaryRegistry DEFAULT = new DictionaryRegistry();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @return The registry used by the analyzers' no-arg constructors
+     */
+    public static DictionaryRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Acquires the dictionary at path, as loaded by loader.loadDictionaryFromPath
+     */
+    public Lease acquire(final DictionaryLoader loader, final String path) throws IOException {
+        final File file = new File(path).getCanonicalFile();
+        final String key = loader.dictionaryLoaderName() + ":" + file.getPath() + "@" + lastModified(file);
+        return acquire(key, new Opener() {
+            @Override
+            public DictHebMorph open() throws IOException {
+                return loader.loadDictionaryFromPath(path);
+            }
+        });
+    }
+
+    /**
+     * Acquires the dictionary loader.loadDictionaryFromDefaultPath loads
+     */
+    public Lease acquireDefault(final DictionaryLoader loader) throws IOException {
+        return acquire(loader.dictionaryLoaderName() + ":default", new Opener() {
+            @Override
+            public DictHebMorph open() throws IOException {
+                return loader.loadDictionaryFromDefaultPath();
+            }
+        });
+    }
+
+    private Lease acquire(final String key, final Opener opener) throws IOException {
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                final Entry created = new Entry(key);
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                }
+            }
+            // Loading happens under the entry's lock only, so different dictionaries load concurrently
+            synchronized (entry) {
+                if (entry.released) {
+                    continue; // lost a race with the last lease being closed; start over with a fresh entry
+                }
+                if (entry.dict == null) {
+                    try {
+                        entry.dict = opener.open().freeze();
+                    } catch (IOException | RuntimeException e) {
+                        entry.released = true;
+                        entries.remove(key, entry);
+                        throw e;
+                    }
+                }
+                entry.references++;
+                return new Lease(entry);
+            }
+        }
+    }
+
+    private void release(final Entry entry) {
+        synchronized (entry) {
+            if (--entry.references == 0) {
+                entry.released = true;
+                entry.dict = null;
+                entries.remove(entry.key, entry);
+            }
+        }
+    }
+
+    /**
+     * @return The number of open leases on each dictionary held, by dictionary key
+     */
+    public Map<String, Integer> getReferenceCounts() {
+        final TreeMap<String, Integer> ret = new TreeMap<>();
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.references > 0) {
+                    ret.put(entry.key, entry.references);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryRegistry" + getReferenceCounts();
+    }
+
+    // Directories are as new as the newest file in them
+    private static long lastModified(final File file) {
+        long ret = file.lastModified();
+        final File[] files = file.isDirectory() ? file.listFiles() : null;
+        if (files != null) {
+            for (File f : files) {
+                ret = Math.max(ret, f.lastModified());
+            }
+        }
+        return ret;
+    }
+
+    private interface Opener {
+        DictHebMorph open() throws IOException;
+    }
+
+    private static final class Entry {
+        final String key;
+        DictHebMorph dict;
+        int references;
+        boolean released;
+
+        Entry(final String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A hold on a shared dictionary. Closing it more than once has no further effect.
+     */
+    public final class Lease implements Closeable {
+        private final Entry entry;
+        private final DictHebMorph dict;
+        private boolean closed;
+
+        private Lease(final Entry entry) {
+            this.entry = entry;
+            this.dict = entry.dict;
+        }
+
+        /**
+         * @return The frozen dictionary, shared by all holders; its setters throw UnsupportedOperationException
+         */
+        public DictHebMorph getDictionary() {
+            return dict;
+        }
+
+        /**
+         * @return The key the dictionary is registered under, as reported by getReferenceCounts
+         */
+        public String getKey() {
+            return entry.key;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(entry);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A LemmaTable lemmas are added to as they are loaded. Ids never change once given, and lemmas can be
+ * looked up by id while others are being added.
+ */
+public class HeapLemmaTable implements LemmaTable {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private volatile String[] lemmas = new String[8]; // lemmas[NULL_LEMMA] stays null
+    private volatile int size;
+
+    /**
+     * @return The id of the lemma, which is added to the table if it isn't there already
+     * @throws IllegalStateException if the table is full, see {@link MorphData#MAX_LEMMA_ID}
+     */
+    public synchronized int add(final String lemma) {
+        if (lemma == null) {
+            return NULL_LEMMA;
+        }
+        final Integer id = ids.get(lemma);
+        if (id != null) {
+            return id;
+        }
+        if (size == MorphData.MAX_LEMMA_ID) {
+            throw new IllegalStateException("Too many lemmas");
+        }
+
+        final int newId = size + 1;
+        String[] current = lemmas;
+        if (newId == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[newId] = lemma;
+        lemmas = current; // publishes the new lemma along with the array
+        ids.put(lemma, newId);
+        size = newId;
+        return newId;
+    }
+
+    /**
+     * @return The id of the lemma, or -1 if it isn't in the table
+     */
+    public synchronized int getId(final String lemma) {
+        if (lemma == null) {
+            return NULL_LEMMA;
+        }
+        final Integer id = ids.get(lemma);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public String getLemma(final int id) {
+        return lemmas[id];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -24,6 +24,16 @@ public class HebrewToken extends Token implements Comparable<Token> {
         this(_word, _prefixLength, lemma.getDescFlag(), lemma.getLemma(), lemma.getPrefix(), _score);
     }
 
+    /**
+     * Makes a token straight off a packed analysis, see {@link MorphData#packAnalysis}
+     */
+    public HebrewToken(String _word, byte _prefixLength, int analysis, LemmaTable lemmaTable, float _score) {
+        this(_word, _prefixLength, MorphData.getDescFlag(analysis), lemmaTable.getLemma(MorphData.getLemmaId(analysis)),
+                MorphData.getPrefixType(analysis), _score);
+        this.lemmaTable = lemmaTable;
+        this.lemmaId = MorphData.getLemmaId(analysis);
+    }
+
     public HebrewToken(String _word, byte _prefixLength, DescFlag _mask, String _lemma, PrefixType _pref, float _score) {
         super(_word);
         prefixLength = _prefixLength;
@@ -37,11 +47,27 @@ public class HebrewToken extends Token implements Comparable<Token> {
         setScore(_score);
     }
 
+    /**
+     * Copies a token, e.g. to hand out a cached token which the caller is free to modify
+     */
+    public HebrewToken(HebrewToken other) {
+        super(other.getText(), other.isNumeric());
+        prefixLength = other.prefixLength;
+        prefType = other.prefType;
+        mask = other.mask;
+        lemma = other.lemma;
+        score = other.score;
+        lemmaTable = other.lemmaTable;
+        lemmaId = other.lemmaId;
+    }
+
     private float score = 1.0f;
     private byte prefixLength;
     private DescFlag mask;
     private String lemma;
     private PrefixType prefType;
+    private transient LemmaTable lemmaTable; // the table lemmaId is numbered by, if the token was made off an analysis
+    private int lemmaId;
 
     @Override
     public boolean equals(Object obj) {
@@ -132,4 +158,15 @@ public class HebrewToken extends Token implements Comparable<Token> {
     public String getLemma() {
         return lemma;
     }
+
+    /**
+     * @return Whether both tokens have the same lemma; compares lemma ids when both were made off analyses
+     * numbered by the same table, and lemma text otherwise
+     */
+    public boolean hasSameLemma(HebrewToken other) {
+        if (lemmaTable != null && lemmaTable == other.lemmaTable) {
+            return lemmaId == other.lemmaId;
+        }
+        return lemma == null ? other.lemma == null : lemma.equals(other.lemma);
+    }
 }
\ No newline at end of file
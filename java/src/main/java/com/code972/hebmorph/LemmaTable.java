@@ -0,0 +1,37 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+/**
+ * Numbers the distinct lemmas of a dictionary, so an analysis can refer to its lemma by an int id packed
+ * together with its flags (see {@link MorphData#packAnalysis}), and lemmas can be compared by id. Id 0
+ * ({@link #NULL_LEMMA}) always stands for the null lemma, used for words hspell gives no lemma.
+ */
+public interface LemmaTable {
+    int NULL_LEMMA = 0;
+
+    /**
+     * @return The lemma numbered id, null for {@link #NULL_LEMMA}
+     */
+    String getLemma(int id);
+
+    /**
+     * @return The number of lemmas in the table, not counting the null lemma; ids run from 1 to size()
+     */
+    int size();
+}
@@ -0,0 +1,116 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bounded, thread-safe cache of lemmatization results keyed by the word's surface form. One instance is
+ * meant to be shared by all lemmatizers working over the same dictionary - see DictHebMorph.setLemmatizationCache.
+ *
+ * Tokens are copied on the way in and on the way out, so callers may modify the tokens they get without
+ * affecting other callers, which may be on other threads. The lists returned are immutable.
+ *
+ * The cache is split into independently locked segments. Each segment evicts with a CLOCK sweep that spares
+ * recently hit entries, and only admits a new word if it was seen more often than the word it would evict,
+ * as estimated by a small count-min sketch. This keeps the long tail of rare words from flushing out the
+ * frequent ones.
+ */
+public class LemmatizationCache {
+    private final SliceCache<List<HebrewToken>> cache;
+
+    public LemmatizationCache(final int maximumSize) {
+        this.cache = new SliceCache<>(maximumSize);
+    }
+
+    /**
+     * @param tolerant Whether this is a result of tolerant lemmatization; exact and tolerant results are kept apart
+     * @return The cached tokens, or null if the word isn't in the cache
+     */
+    public List<HebrewToken> get(final char[] buf, final int off, final int len, final boolean tolerant) {
+        final List<HebrewToken> cached = cache.get(buf, off, len, tolerant ? 1 : 0);
+        return cached == null ? null : copyOf(cached);
+    }
+
+    /**
+     * Offers the lemmatization result of a word to the cache. The word may not be admitted if it's less
+     * frequent than the word it would replace.
+     *
+     * @return An immutable copy of the tokens, equal to what later get calls will return for the word
+     */
+    public List<HebrewToken> put(final char[] buf, final int off, final int len, final boolean tolerant, final List<HebrewToken> tokens) {
+        return copyOf(cache.put(buf, off, len, tolerant ? 1 : 0, copyOf(tokens)));
+    }
+
+    private static List<HebrewToken> copyOf(final List<HebrewToken> tokens) {
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final HebrewToken[] copies = new HebrewToken[tokens.size()];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = new HebrewToken(tokens.get(i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(copies));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaximumSize() {
+        return cache.getMaximumSize();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * @return The number of entries that were evicted to make room for more frequent words
+     */
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @return The number of words that weren't admitted, being rarer than the entries they'd have replaced
+     */
+    public long getRejections() {
+        return cache.getRejections();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LemmatizationCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, rejections=%d]",
+                size(), getMaximumSize(), getHits(), getMisses(), getEvictions(), getRejections());
+    }
+}
@@ -0,0 +1,260 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The lemmatization of a batch of words, stored in columns - see {@link Lemmatizer#lemmatizeBatch}.
+ * <p>
+ * Every distinct word (form) in the batch is lemmatized once, and the words of the batch point at their form.
+ * The tokens of a form are a contiguous range of token numbers, and for every token the batch keeps its lemma id,
+ * description flag, prefix length and score. Lemma ids are numbered by a table of the batch's own, since the
+ * MorphData of a dictionary don't necessarily share a single table.
+ */
+public final class LemmatizedBatch {
+    private static final int FORMS_PER_TASK = 256;
+    private static final DescFlag[] DESC_FLAGS = DescFlag.values();
+
+    private final HeapLemmaTable lemmaTable = new HeapLemmaTable();
+    private final int[] formOf;     // word i was lemmatized as form formOf[i]
+    private final String[] forms;   // distinct words, in order of first appearance
+    private final int[] tokenStart; // form f's tokens are [tokenStart[f], tokenStart[f + 1])
+    private final int[] lemmaIds;
+    private final byte[] descFlags; // DescFlag ordinals
+    private final byte[] prefixLengths;
+    private final float[] scores;
+
+    static LemmatizedBatch lemmatize(final Lemmatizer lemmatizer, final Collection<String> words, final boolean tolerate,
+                                     final ForkJoinPool pool) {
+        final int[] formOf = new int[words.size()];
+        final HashMap<String, Integer> formIds = new HashMap<>();
+        final List<String> forms = new ArrayList<>();
+        int i = 0;
+        for (String word : words) {
+            Integer form = formIds.get(word);
+            if (form == null) {
+                form = forms.size();
+                formIds.put(word, form);
+                forms.add(word);
+            }
+            formOf[i++] = form;
+        }
+
+        final String[] formsArray = forms.toArray(new String[forms.size()]);
+        final Chunk[] chunks = new Chunk[(formsArray.length + FORMS_PER_TASK - 1) / FORMS_PER_TASK];
+        if (chunks.length > 0) {
+            pool.invoke(new LemmatizeTask(lemmatizer, tolerate, formsArray, chunks, 0, chunks.length));
+        }
+        return new LemmatizedBatch(formOf, formsArray, chunks);
+    }
+
+    private LemmatizedBatch(final int[] formOf, final String[] forms, final Chunk[] chunks) {
+        this.formOf = formOf;
+        this.forms = forms;
+
+        int tokensCount = 0;
+        for (Chunk chunk : chunks) {
+            tokensCount += chunk.tokensCount;
+        }
+        tokenStart = new int[forms.length + 1];
+        lemmaIds = new int[tokensCount];
+        descFlags = new byte[tokensCount];
+        prefixLengths = new byte[tokensCount];
+        scores = new float[tokensCount];
+
+        // Chunks number lemmas locally, so only their distinct lemmas go through the batch's table
+        int form = 0, token = 0;
+        for (Chunk chunk : chunks) {
+            final int[] globalIds = new int[chunk.lemmas.size()];
+            for (int l = 0; l < globalIds.length; l++) {
+                globalIds[l] = lemmaTable.add(chunk.lemmas.get(l));
+            }
+            for (int t = 0; t < chunk.tokensCount; t++) {
+                lemmaIds[token + t] = globalIds[chunk.lemmaIds[t]];
+            }
+            System.arraycopy(chunk.descFlags, 0, descFlags, token, chunk.tokensCount);
+            System.arraycopy(chunk.prefixLengths, 0, prefixLengths, token, chunk.tokensCount);
+            System.arraycopy(chunk.scores, 0, scores, token, chunk.tokensCount);
+            for (int f = 0; f < chunk.tokenCounts.length; f++) {
+                tokenStart[form++] = token;
+                token += chunk.tokenCounts[f];
+            }
+        }
+        tokenStart[form] = token;
+    }
+
+    /**
+     * @return The number of words in the batch, including repeated ones
+     */
+    public int size() {
+        return formOf.length;
+    }
+
+    /**
+     * @return The number of distinct words in the batch
+     */
+    public int getFormsCount() {
+        return forms.length;
+    }
+
+    /**
+     * @return The index of the form the i-th word of the batch was lemmatized as
+     */
+    public int getForm(final int word) {
+        return formOf[word];
+    }
+
+    public String getFormText(final int form) {
+        return forms[form];
+    }
+
+    public int getTokensCount() {
+        return lemmaIds.length;
+    }
+
+    /**
+     * @return The number of the first token of the i-th word of the batch
+     */
+    public int getTokensStart(final int word) {
+        return tokenStart[formOf[word]];
+    }
+
+    /**
+     * @return One past the number of the last token of the i-th word of the batch
+     */
+    public int getTokensEnd(final int word) {
+        return tokenStart[formOf[word] + 1];
+    }
+
+    /**
+     * @return The table numbering the lemma ids of this batch
+     */
+    public LemmaTable getLemmaTable() {
+        return lemmaTable;
+    }
+
+    public int getLemmaId(final int token) {
+        return lemmaIds[token];
+    }
+
+    public String getLemma(final int token) {
+        return lemmaTable.getLemma(lemmaIds[token]);
+    }
+
+    public DescFlag getDescFlag(final int token) {
+        return DESC_FLAGS[descFlags[token]];
+    }
+
+    public byte getPrefixLength(final int token) {
+        return prefixLengths[token];
+    }
+
+    public float getScore(final int token) {
+        return scores[token];
+    }
+
+    // The tokens of a range of forms, with lemmas numbered by the chunk
+    private static final class Chunk {
+        final int[] tokenCounts;
+        final List<String> lemmas = new ArrayList<>();
+        final HashMap<String, Integer> lemmaIdsByText = new HashMap<>();
+        int tokensCount;
+        int[] lemmaIds = new int[FORMS_PER_TASK];
+        byte[] descFlags = new byte[FORMS_PER_TASK];
+        byte[] prefixLengths = new byte[FORMS_PER_TASK];
+        float[] scores = new float[FORMS_PER_TASK];
+
+        Chunk(final int formsCount) {
+            tokenCounts = new int[formsCount];
+        }
+
+        void add(final HebrewToken token) {
+            if (tokensCount == lemmaIds.length) {
+                lemmaIds = Arrays.copyOf(lemmaIds, tokensCount * 2);
+                descFlags = Arrays.copyOf(descFlags, tokensCount * 2);
+                prefixLengths = Arrays.copyOf(prefixLengths, tokensCount * 2);
+                scores = Arrays.copyOf(scores, tokensCount * 2);
+            }
+            Integer lemmaId = lemmaIdsByText.get(token.getLemma());
+            if (lemmaId == null) {
+                lemmaId = lemmas.size();
+                lemmaIdsByText.put(token.getLemma(), lemmaId);
+                lemmas.add(token.getLemma());
+            }
+            lemmaIds[tokensCount] = lemmaId;
+            descFlags[tokensCount] = (byte) token.getMask().ordinal();
+            prefixLengths[tokensCount] = token.getPrefixLength();
+            scores[tokensCount] = token.getScore();
+            tokensCount++;
+        }
+    }
+
+    // Lemmatizes the forms of chunks [fromChunk, toChunk), splitting the range until it's a single chunk
+    private static final class LemmatizeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Lemmatizer lemmatizer;
+        private final boolean tolerate;
+        private final String[] forms;
+        private final Chunk[] chunks;
+        private final int fromChunk, toChunk;
+
+        LemmatizeTask(final Lemmatizer lemmatizer, final boolean tolerate, final String[] forms, final Chunk[] chunks,
+                      final int fromChunk, final int toChunk) {
+            this.lemmatizer = lemmatizer;
+            this.tolerate = tolerate;
+            this.forms = forms;
+            this.chunks = chunks;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                final int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new LemmatizeTask(lemmatizer, tolerate, forms, chunks, fromChunk, mid),
+                        new LemmatizeTask(lemmatizer, tolerate, forms, chunks, mid, toChunk));
+                return;
+            }
+
+            final int from = fromChunk * FORMS_PER_TASK, to = Math.min(from + FORMS_PER_TASK, forms.length);
+            final Chunk chunk = new Chunk(to - from);
+            final List<HebrewToken> tokens = new ArrayList<>();
+            for (int f = from; f < to; f++) {
+                tokens.clear();
+                lemmatizer.lemmatize(forms[f], tokens);
+                if (tokens.isEmpty() && tolerate) { // same as HebrewLemmatizerTokenFilter
+                    lemmatizer.lemmatizeTolerant(forms[f], tokens);
+                }
+                for (HebrewToken token : tokens) {
+                    chunk.add(token);
+                }
+                chunk.tokenCounts[f - from] = tokens.size();
+            }
+            chunks[fromChunk] = chunk;
+        }
+    }
+}
@@ -18,11 +18,15 @@
 package com.code972.hebmorph;
 
 import com.code972.hebmorph.datastructures.DictHebMorph;
-import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.LookupResult;
+import com.code972.hebmorph.datastructures.PrefixTrie;
+import com.code972.hebmorph.datastructures.SuffixIndex;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Lemmatizer {
     private final DictHebMorph dictHeb;
@@ -32,7 +36,11 @@ public class Lemmatizer {
     }
 
     public boolean isLegalPrefix(final String str) {
-        return dictHeb.getPref().containsKey(str);
+        return dictHeb.lookupPrefix(str) != null;
+    }
+
+    private boolean isLegalPrefix(final String word, final int prefixLength) {
+        return dictHeb.getPrefixTrie().getMask(word, prefixLength) != PrefixTrie.NOT_A_PREFIX;
     }
 
     // See the Academy's punctuation rules (see לשוננו לעם, טבת, תשס"ב) for an explanation of this rule
@@ -42,7 +50,7 @@ public class Lemmatizer {
         int firstQuote = word.indexOf('"');
 
         if (firstQuote > -1 && firstQuote < word.length() - 2) {
-            if (isLegalPrefix(word.substring(0, firstQuote))) {
+            if (isLegalPrefix(word, firstQuote)) {
                 return word.substring(firstQuote + 1, firstQuote + 1 + word.length() - firstQuote - 1);
             }
         }
@@ -56,7 +64,7 @@ public class Lemmatizer {
             return word;
         }
 
-        if (isLegalPrefix(word.substring(0, firstSingleQuote))) {
+        if (isLegalPrefix(word, firstSingleQuote)) {
             return word.substring(firstSingleQuote + 1, firstSingleQuote + 1 + word.length() - firstSingleQuote - 1);
         }
 
@@ -85,33 +93,74 @@ public class Lemmatizer {
     }
 
     public List<HebrewToken> lemmatize(final String word, final List<HebrewToken> ret) {
-        byte prefLen = 0;
-        Integer prefixMask;
-        MorphData md = null;
-        HashMap<String, Integer> m_pref = dictHeb.getPref();
+        return lemmatize(word, word.toCharArray(), 0, word.length(), ret);
+    }
+
+    /**
+     * Lemmatizes a slice of a char buffer, e.g. a token's term buffer. Prefixes and stems are looked up
+     * in-place; the only String created is the word itself, and only if it was found in the dictionary.
+     */
+    public List<HebrewToken> lemmatize(final char[] buf, final int off, final int len, final List<HebrewToken> ret) {
+        return lemmatize(null, buf, off, len, ret);
+    }
+
+    private List<HebrewToken> lemmatize(final String word, final char[] buf, final int off, final int len, final List<HebrewToken> ret) {
+        final LemmatizationCache cache = dictHeb.getLemmatizationCache();
+        if (cache == null) {
+            return lemmatizeImpl(word, buf, off, len, ret);
+        }
+
+        final List<HebrewToken> cached = cache.get(buf, off, len, false);
+        if (cached != null) {
+            ret.addAll(cached);
+        } else {
+            final int start = ret.size();
+            lemmatizeImpl(word, buf, off, len, ret);
+            cache.put(buf, off, len, false, ret.subList(start, ret.size()));
+        }
+        return ret;
+    }
+
+    private List<HebrewToken> lemmatizeImpl(final String word, final char[] buf, final int off, final int len, final List<HebrewToken> ret) {
+        final PrefixTrie prefixes = dictHeb.getPrefixTrie();
 
+        // With a suffix index, the word and the stems after all its legal prefixes are found in a single walk,
+        // and stems[p] replaces the lookup of the stem after a prefix of length p
+        final SuffixIndex<MorphData> suffixIndex = dictHeb.getSuffixIndex();
+        if (suffixIndex == null || len == 0) {
+            return lemmatizeImpl(word, buf, off, len, prefixes, null, ret);
+        }
+        final int maxPrefLen = legalPrefixesLength(prefixes, buf, off, len);
+        final MorphData[] stems = stemsBuffer(maxPrefLen + 1);
+        suffixIndex.findStems(buf, off, len, maxPrefLen, stems);
         try {
-            md = dictHeb.lookup(word);
-        } catch (IllegalArgumentException e) {
-            md = null;
+            return lemmatizeImpl(word, buf, off, len, prefixes, stems, ret);
+        } finally {
+            Arrays.fill(stems, 0, maxPrefLen + 1, null); // the buffer is kept per thread, the dictionary's data isn't
         }
+    }
+
+    private List<HebrewToken> lemmatizeImpl(String word, final char[] buf, final int off, final int len, final PrefixTrie prefixes,
+                                            final MorphData[] stems, final List<HebrewToken> ret) {
+        byte prefLen = 0;
+        int prefixMask;
+
+        MorphData md = stems != null ? stems[0] : dictHeb.lookup(buf, off, len);
         if (md != null) {
-            for (int result = 0; result < md.getLemmas().length; result++) {
-                ret.add(new HebrewToken(word, (byte) 0, md.getLemmas()[result], 1.0f));
+            if (word == null) word = new String(buf, off, len);
+            for (int result = 0; result < md.getLemmasCount(); result++) {
+                ret.add(new HebrewToken(word, (byte) 0, md.getAnalysis(result), md.getLemmaTable(), 1.0f));
             }
 
             if (md.haltIfFound())
                 return ret;
 
-        } else if (word.endsWith("'")) { // Try omitting closing Geresh
-            try {
-                md = dictHeb.lookup(word.substring(0, word.length() - 1));
-            } catch (IllegalArgumentException e) {
-                md = null;
-            }
+        } else if (len > 0 && buf[off + len - 1] == '\'') { // Try omitting closing Geresh
+            md = dictHeb.lookup(buf, off, len - 1);
             if (md != null) {
-                for (int result = 0; result < md.getLemmas().length; result++) {
-                    ret.add(new HebrewToken(word, (byte) 0, md.getLemmas()[result], 1.0f));
+                if (word == null) word = new String(buf, off, len);
+                for (int result = 0; result < md.getLemmasCount(); result++) {
+                    ret.add(new HebrewToken(word, (byte) 0, md.getAnalysis(result), md.getLemmaTable(), 1.0f));
                 }
 
                 if (md.haltIfFound())
@@ -119,23 +168,24 @@ public class Lemmatizer {
             }
         }
 
+        // Walk the prefixes automaton along the word, trying the rest of it after every legal prefix
+        int prefixState = PrefixTrie.ROOT;
         prefLen = 0;
         while (true) {
             // Make sure there are at least 2 letters left after the prefix (the words של, שלא for example)
-            if (word.length() - prefLen < 2)
+            if (len - prefLen < 2)
                 break;
-            if ((prefixMask = m_pref.get(word.substring(0, ++prefLen))) == null)
+            if ((prefixState = prefixes.step(prefixState, buf[off + prefLen++])) == PrefixTrie.NO_STATE
+                    || (prefixMask = prefixes.getMask(prefixState)) == PrefixTrie.NOT_A_PREFIX)
                 break;
 
-            try {
-                md = dictHeb.lookup(word.substring(prefLen));
-            } catch (IllegalArgumentException e) {
-                md = null;
-            }
+            md = stems != null ? stems[prefLen] : dictHeb.lookup(buf, off + prefLen, len - prefLen);
             if ((md != null) && ((md.getPrefixes() & prefixMask) > 0)) {
-                for (int result = 0; result < md.getLemmas().length; result++) {
-                    if ((md.getLemmas()[result].getPrefix().getValue() & prefixMask) > 0) {
-                        ret.add(new HebrewToken(word, prefLen, md.getLemmas()[result], 0.9f));
+                for (int result = 0; result < md.getLemmasCount(); result++) {
+                    final int analysis = md.getAnalysis(result);
+                    if ((MorphData.getPrefixMask(analysis) & prefixMask) > 0) {
+                        if (word == null) word = new String(buf, off, len);
+                        ret.add(new HebrewToken(word, prefLen, analysis, md.getLemmaTable(), 0.9f));
                     }
                 }
 
@@ -146,46 +196,125 @@ public class Lemmatizer {
         return ret;
     }
 
+    // The number of prefix lengths lemmatizeImpl tries: all legal ones up to the first illegal length
+    private static int legalPrefixesLength(final PrefixTrie prefixes, final char[] buf, final int off, final int len) {
+        int prefLen = 0;
+        int prefixState = PrefixTrie.ROOT;
+        while (len - prefLen >= 2) {
+            if ((prefixState = prefixes.step(prefixState, buf[off + prefLen])) == PrefixTrie.NO_STATE
+                    || prefixes.getMask(prefixState) == PrefixTrie.NOT_A_PREFIX)
+                break;
+            prefLen++;
+        }
+        return prefLen;
+    }
+
+    private static final ThreadLocal<MorphData[]> stemsBuffers = new ThreadLocal<MorphData[]>() {
+        @Override
+        protected MorphData[] initialValue() {
+            return new MorphData[16];
+        }
+    };
+
+    private static MorphData[] stemsBuffer(final int size) {
+        MorphData[] stems = stemsBuffers.get();
+        if (stems.length < size) {
+            stems = new MorphData[size];
+            stemsBuffers.set(stems);
+        }
+        return stems;
+    }
+
+    /**
+     * Lemmatizes a batch of words, e.g. a query log, on a pool of the given parallelism. See {@link #lemmatizeBatch(Collection, boolean, ForkJoinPool)}
+     */
+    public LemmatizedBatch lemmatizeBatch(final Collection<String> words, final boolean tolerate, final int parallelism) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return lemmatizeBatch(words, tolerate, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lemmatizes a batch of words on the pool. Every distinct word is lemmatized once, so the dictionary this
+     * lemmatizer works over is read by several threads at once and should be frozen - see DictHebMorph.freeze.
+     *
+     * @param tolerate Whether words with no exact lemmas are lemmatized tolerantly, as HebrewLemmatizerTokenFilter does
+     */
+    public LemmatizedBatch lemmatizeBatch(final Collection<String> words, final boolean tolerate, final ForkJoinPool pool) {
+        return LemmatizedBatch.lemmatize(this, words, tolerate, pool);
+    }
+
     public List<HebrewToken> lemmatizeTolerant(final String word) {
         return lemmatizeTolerant(word, new ArrayList<>());
     }
 
     public List<HebrewToken> lemmatizeTolerant(final String word, final List<HebrewToken> ret) {
-        DictRadix<MorphData> m_dict = dictHeb.getRadix();
-        HashMap<String, Integer> m_pref = dictHeb.getPref();
+        return lemmatizeTolerant(word.toCharArray(), 0, word.length(), ret);
+    }
+
+    /**
+     * Tolerant lemmatization of a slice of a char buffer, e.g. a token's term buffer, looked up in-place like
+     * {@link #lemmatize(char[], int, int, List)} does
+     */
+    public List<HebrewToken> lemmatizeTolerant(final char[] buf, final int off, final int len, final List<HebrewToken> ret) {
+        final LemmatizationCache cache = dictHeb.getLemmatizationCache();
+        if (cache == null) {
+            return lemmatizeTolerantImpl(buf, off, len, ret);
+        }
+
+        final List<HebrewToken> cached = cache.get(buf, off, len, true);
+        if (cached != null) {
+            ret.addAll(cached);
+        } else {
+            final int start = ret.size();
+            lemmatizeTolerantImpl(buf, off, len, ret);
+            cache.put(buf, off, len, true, ret.subList(start, ret.size()));
+        }
+        return ret;
+    }
+
+    private List<HebrewToken> lemmatizeTolerantImpl(final char[] buf, final int off, final int len, final List<HebrewToken> ret) {
         // Don't try tolerating long words. Longest Hebrew word is 19 chars long
         // http://en.wikipedia.org/wiki/Longest_words#Hebrew
-        if (word.length() > 20) {
+        if (len > 20) {
             return ret;
         }
 
         byte prefLen = 0;
-        Integer prefixMask;
+        int prefixMask;
+        final PrefixTrie prefixes = dictHeb.getPrefixTrie();
 
-        List<DictRadix<MorphData>.LookupResult> tolerated = m_dict.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll);
+        List<LookupResult<MorphData>> tolerated = dictHeb.lookupTolerant(buf, off, len, LookupTolerators.TolerateEmKryiaAll);
         if (tolerated != null) {
-            for (DictRadix<MorphData>.LookupResult lr : tolerated) {
-                for (int result = 0; result < lr.getData().getLemmas().length; result++) {
-                    ret.add(new HebrewToken(lr.getWord(), (byte) 0, lr.getData().getLemmas()[result], lr.getScore()));
+            for (LookupResult<MorphData> lr : tolerated) {
+                for (int result = 0; result < lr.getData().getLemmasCount(); result++) {
+                    ret.add(new HebrewToken(lr.getWord(), (byte) 0, lr.getData().getAnalysis(result), lr.getData().getLemmaTable(), lr.getScore()));
                 }
             }
         }
 
+        // Walk the prefixes automaton along the word, trying the rest of it after every legal prefix
+        int prefixState = PrefixTrie.ROOT;
         prefLen = 0;
         while (true) {
             // Make sure there are at least 2 letters left after the prefix (the words של, שלא for example)
-            if (word.length() - prefLen < 2)
+            if (len - prefLen < 2)
                 break;
 
-            if ((prefixMask = m_pref.get(word.substring(0, ++prefLen))) == null)
+            if ((prefixState = prefixes.step(prefixState, buf[off + prefLen++])) == PrefixTrie.NO_STATE
+                    || (prefixMask = prefixes.getMask(prefixState)) == PrefixTrie.NOT_A_PREFIX)
                 break;
 
-            tolerated = m_dict.lookupTolerant(word.substring(prefLen), LookupTolerators.TolerateEmKryiaAll);
+            tolerated = dictHeb.lookupTolerant(buf, off + prefLen, len - prefLen, LookupTolerators.TolerateEmKryiaAll);
             if (tolerated != null) {
-                for (DictRadix<MorphData>.LookupResult lr : tolerated) {
-                    for (int result = 0; result < lr.getData().getLemmas().length; result++) {
-                        if ((lr.getData().getLemmas()[result].getPrefix().getValue() & prefixMask) > 0) {
-                            ret.add(new HebrewToken(word.substring(0, prefLen) + lr.getWord(), prefLen, lr.getData().getLemmas()[result], lr.getScore() * 0.9f));
+                for (LookupResult<MorphData> lr : tolerated) {
+                    for (int result = 0; result < lr.getData().getLemmasCount(); result++) {
+                        final int analysis = lr.getData().getAnalysis(result);
+                        if ((MorphData.getPrefixMask(analysis) & prefixMask) > 0) {
+                            ret.add(new HebrewToken(new String(buf, off, prefLen) + lr.getWord(), prefLen, analysis, lr.getData().getLemmaTable(), lr.getScore() * 0.9f));
                         }
                     }
                 }
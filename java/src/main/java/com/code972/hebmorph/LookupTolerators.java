@@ -22,87 +22,108 @@ package com.code972.hebmorph;
  */
 public final class LookupTolerators {
     /**
-     Toleration function used in HebMorph's tolerant dictionary lookups. Returns positive number (or zero)
-     if tolerance was made, null if not.
-     A tolerator function may also increment keyPos, which is provided by reference. For cases where a tolerator
-     function returns 0, it *MUST* increment keyPos, or an endless recursion will be initiated.
-
+     * Tolerate all standard Em Kriya appearances (Yud [incl. doubling], Vav, and double consonant Vav)
      */
-//	public delegate Nullable<byte> ToleranceFuncDelegate(char[] key, ref byte keyPos, string word, ref float score, char curChar);
+    public static final ToleranceFunction[] TolerateEmKryiaAll = {new TolerateEmKryiaYud(), new TolerateEmKryiaVav(), new TolerateNonDoubledConsonantVav()};
 
     /**
-     Tolerate all standard Em Kriya appearances (Yud [incl. doubling], Vav, and double consonant Vav)
+     * Returned by a tolerator function which made no toleration
+     */
+    public static final int NOT_TOLERATED = -1;
 
+    /**
+     * A toleration of a char in the key which is missing from the dictionary word. The lookup will retry
+     * the current dictionary char against the next key position, with the score multiplied by scorePercent / 100.
      */
-//	public static final ToleranceFuncDelegate[] TolerateEmKryiaAll = { TolerateNonDoubledConsonantVav, TolerateEmKryiaVav, TolerateEmKryiaYud };
+    public static int skipKeyChar(final int scorePercent) {
+        return scorePercent << 1;
+    }
 
     /**
-     * Current trie position is Yud, while the requested key does not contain Yud at this position, or
-     * contains Yud but not twice.
+     * A toleration of a dictionary char which is missing from the key. The lookup will consume the current
+     * dictionary char and stay at the same key position, with the score multiplied by scorePercent / 100.
      */
+    public static int consumeChar(final int scorePercent) {
+        return (scorePercent << 1) | 1;
+    }
 
-    public static final ToleranceFunction[] TolerateEmKryiaAll = {new TolerateEmKryiaYud(), new TolerateEmKryiaVav(), new TolerateNonDoubledConsonantVav()};
+    public static boolean consumesChar(final int toleration) {
+        return (toleration & 1) != 0;
+    }
+
+    public static float scoreFactor(final int toleration) {
+        return (toleration >>> 1) / 100f;
+    }
 
+    /**
+     * Toleration function used in HebMorph's tolerant dictionary lookups. Tolerations are plain ints, made with
+     * skipKeyChar or consumeChar, so that tolerant lookups don't allocate anything but their results.
+     */
     public interface ToleranceFunction {
-        public Integer tolerate(char[] key, Reference<Byte> keyPos, String word, Reference<Float> score, char curChar);
+        /**
+         * @param key      The looked up key; only its first keyLen chars are valid
+         * @param keyPos   Current position in the key, always smaller than keyLen
+         * @param word     The dictionary chars matched so far; only its first wordLen chars are valid
+         * @param curChar  The dictionary char at the current trie position
+         * @return NOT_TOLERATED, or the toleration made
+         */
+        int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar);
     }
 
+    /**
+     * Current trie position is Yud, while the requested key does not contain Yud at this position, or
+     * contains Yud but not twice.
+     */
     public static class TolerateEmKryiaYud implements ToleranceFunction {
-        public Integer tolerate(char[] key, Reference<Byte> keyPos, String word, Reference<Float> score, char curChar) {
-            if (keyPos.ref == 0) // check this isn't the beginning of a word (no one misses Yud there)
+        public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
+            if (keyPos == 0) // check this isn't the beginning of a word (no one misses Yud there)
             {
-                return null;
+                return NOT_TOLERATED;
             }
 
             // Yud shouldn't be tolerated before a Vav
-            if (key[keyPos.ref] == HebrewCharacters.VAV) {
-                return null;
+            if (key[keyPos] == HebrewCharacters.VAV) {
+                return NOT_TOLERATED;
             }
 
             if (curChar != HebrewCharacters.YOD) {
                 // Support keys with doubled Yud, where the actual word in the dictionary isn't
-                if ((key[keyPos.ref] == HebrewCharacters.YOD)
-                        && (key[keyPos.ref - 1] == HebrewCharacters.YOD)) {
-                    score.ref *= 0.9f;
-                    keyPos.ref++;
-                    return 0;
+                if ((key[keyPos] == HebrewCharacters.YOD)
+                        && (key[keyPos - 1] == HebrewCharacters.YOD)) {
+                    return skipKeyChar(90);
                 }
 
                 // Support Hirik-Haser (Niqqudless missing Yud), although it would suffer a high penalty
                 // to low rate false positives when there are better options
-                if (key[keyPos.ref] == HebrewCharacters.YOD) {
-                    score.ref *= 0.6f;
-                    keyPos.ref++;
-                    return 0;
+                if (key[keyPos] == HebrewCharacters.YOD) {
+                    return skipKeyChar(60);
                 }
 
-                return null;
+                return NOT_TOLERATED;
             }
 
             // Don't initiate a toleration process if current key position has Yud already. If the correct
             // spelling requires double-Yud, we will arrive here again very soon
-            if (key[keyPos.ref] == HebrewCharacters.YOD) {
-                return null;
+            if (key[keyPos] == HebrewCharacters.YOD) {
+                return NOT_TOLERATED;
             }
 
             // We already have consumed a Yud very recently
-            if (word.charAt(word.length() - 1) == HebrewCharacters.YOD) {
+            if (word[wordLen - 1] == HebrewCharacters.YOD) {
                 // We allow adding another Yud only if there was one in the key originally, and the key is longer
                 // than 3 letters (otherwise חיה becomes חייה, and בית becomes ביית).
-                if ((key[keyPos.ref - 1] != HebrewCharacters.YOD) || ((keyPos.ref + 1 == key.length) && (key.length <= 3))) {
-                    return null;
+                if ((key[keyPos - 1] != HebrewCharacters.YOD) || ((keyPos + 1 == keyLen) && (keyLen <= 3))) {
+                    return NOT_TOLERATED;
                 }
 
-                score.ref *= 0.8f;
-                return 1;
+                return consumeChar(80);
             }
             // No Yud existed before in the key, so we tolerate normally unless we consumed a Vav recently
-            else if (word.charAt(word.length() - 1) != HebrewCharacters.VAV) {
-                score.ref *= 0.8f;
-                return 1;
+            else if (word[wordLen - 1] != HebrewCharacters.VAV) {
+                return consumeChar(80);
             }
 
-            return null;
+            return NOT_TOLERATED;
         }
     }
 
@@ -114,43 +135,40 @@ public final class LookupTolerators {
      * Previous key position isn't Yud (too intrusive a tolerance)
      */
     public static class TolerateEmKryiaVav implements ToleranceFunction {
-        public Integer tolerate(char[] key, Reference<Byte> keyPos, String word, Reference<Float> score, char curChar) {
+        public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
             if ((curChar != HebrewCharacters.VAV) || // check current trie position
-                    (keyPos.ref == 0) || (keyPos.ref + 1 == key.length) || // check this isn't the end or the beginning of a word (no one misses Vav there)
-                    (key[keyPos.ref] == HebrewCharacters.YOD) || (key[keyPos.ref] == HebrewCharacters.HE) || // Vav shouldn't be tolerated before a Yud or a Heh
-                    (key[keyPos.ref] == HebrewCharacters.VAV // Don't low-rank exact matches
+                    (keyPos == 0) || (keyPos + 1 == keyLen) || // check this isn't the end or the beginning of a word (no one misses Vav there)
+                    (key[keyPos] == HebrewCharacters.YOD) || (key[keyPos] == HebrewCharacters.HE) || // Vav shouldn't be tolerated before a Yud or a Heh
+                    (key[keyPos] == HebrewCharacters.VAV // Don't low-rank exact matches
                     )
                     )
-                return null;
+                return NOT_TOLERATED;
 
-            char prevChar = word.charAt(word.length() - 1);
-            if ((key[keyPos.ref + 1] != HebrewCharacters.VAV) && (prevChar != HebrewCharacters.VAV) && // This case is handled by TolerateNonDoubledConsonantVav
+            char prevChar = word[wordLen - 1];
+            if ((key[keyPos + 1] != HebrewCharacters.VAV) && (prevChar != HebrewCharacters.VAV) && // This case is handled by TolerateNonDoubledConsonantVav
                     (prevChar != HebrewCharacters.YOD)) // This is an edit too intrusive to be a possible niqqud-less spelling
             {
-                score.ref *= 0.8f;
-                return 1;
+                return consumeChar(80);
             }
 
-            return null;
+            return NOT_TOLERATED;
         }
     }
 
     public static class TolerateNonDoubledConsonantVav implements ToleranceFunction {
-        public Integer tolerate(char[] key, Reference<Byte> keyPos, String word, Reference<Float> score, char curChar) {
+        public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
             // TODO: Here we apply the Academia's "ha-ktiv hasar ha-niqqud" rule of doubling
             // a consonant waw in the middle a word, unless it's already next to a waw
 
-            if ((curChar == HebrewCharacters.VAV) || (keyPos.ref == 0) || (keyPos.ref + 1 == key.length))
-                return null;
+            if ((curChar == HebrewCharacters.VAV) || (keyPos == 0) || (keyPos + 1 == keyLen))
+                return NOT_TOLERATED;
 
-            if ((key[keyPos.ref] == HebrewCharacters.VAV)
-                    && (word.charAt(word.length() - 1) == HebrewCharacters.VAV)) {
-                keyPos.ref++;
-                score.ref *= 0.8f;
-                return 0;
+            if ((key[keyPos] == HebrewCharacters.VAV)
+                    && (word[wordLen - 1] == HebrewCharacters.VAV)) {
+                return skipKeyChar(80);
             }
 
-            return null;
+            return NOT_TOLERATED;
         }
     }
 }
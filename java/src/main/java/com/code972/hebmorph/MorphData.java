@@ -17,15 +17,50 @@
  **************************************************************************/
 package com.code972.hebmorph;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 
+/**
+ * The analyses of a word: each is a lemma, with its DescFlag and the prefixes it accepts. Analyses are kept
+ * packed into ints (see {@link #packAnalysis}), referring to lemmas by their id in a {@link LemmaTable}
+ * shared by all the MorphData of a dictionary, so they can be examined and compared without touching
+ * any object. The Lemma objects getLemma and getLemmas return are made on the fly.
+ * <p>
+ * Loaders share one instance between all the words with the same data, and make it frozen (see frozenCopy), as
+ * changing it would change every one of those words. To change the data of a single word, add a new MorphData.
+ */
 public class MorphData {
-    private ArrayList<Lemma> lemmas;
+    private static final int PREFIX_BITS = 7, DESC_FLAG_BITS = 3;
+    private static final int DESC_FLAG_SHIFT = PREFIX_BITS, LEMMA_ID_SHIFT = PREFIX_BITS + DESC_FLAG_BITS;
+    private static final int PREFIX_MASK = (1 << PREFIX_BITS) - 1, DESC_FLAG_MASK = (1 << DESC_FLAG_BITS) - 1;
+    private static final int FLAGS_MASK = (1 << LEMMA_ID_SHIFT) - 1; // DescFlag and PrefixType bits
+    public static final int MAX_LEMMA_ID = (1 << (32 - LEMMA_ID_SHIFT)) - 1;
+
+    private static final int[] NO_ANALYSES = new int[0];
+
+    private static final Comparator<Lemma> BY_DESC_FLAG = new Comparator<Lemma>() {
+        @Override
+        public int compare(Lemma l1, Lemma l2) {
+            return l1.descFlag.getVal() - l2.descFlag.getVal();
+        }
+    };
+
+    private LemmaTable lemmaTable;
+    // Sorted by DescFlag, and never modified once set - changes replace the array - so it's safe to share
+    private int[] analyses;
     private short prefixes;
     private boolean haltIfFound;
+    private boolean frozen;
+
+    public MorphData() {
+    }
+
+    /**
+     * @param lemmaTable The table to number lemmas by; MorphData made without one gets a table of its own
+     */
+    public MorphData(LemmaTable lemmaTable) {
+        this.lemmaTable = lemmaTable;
+    }
 
     public static class Lemma {
         private final DescFlag descFlag;
@@ -87,35 +122,198 @@ public class MorphData {
         }
     }
 
+    /**
+     * Packs an analysis into an int: the lemma id takes the high 22 bits, followed by 3 bits of DescFlag
+     * and 7 bits of PrefixType
+     */
+    public static int packAnalysis(int lemmaId, DescFlag descFlag, PrefixType prefix) {
+        if (lemmaId < 0 || lemmaId > MAX_LEMMA_ID) {
+            throw new IllegalArgumentException("Invalid lemma id " + lemmaId);
+        }
+        return (lemmaId << LEMMA_ID_SHIFT) | (descFlag.getVal() << DESC_FLAG_SHIFT) | prefix.getValue();
+    }
+
+    public static int getLemmaId(int analysis) {
+        return analysis >>> LEMMA_ID_SHIFT;
+    }
+
+    public static DescFlag getDescFlag(int analysis) {
+        return DescFlag.create((byte) ((analysis >>> DESC_FLAG_SHIFT) & DESC_FLAG_MASK));
+    }
+
+    /**
+     * @return The PrefixType value of the analysis, as a mask to test prefixes against
+     */
+    public static int getPrefixMask(int analysis) {
+        return analysis & PREFIX_MASK;
+    }
+
+    public static PrefixType getPrefixType(int analysis) {
+        return PrefixType.create((byte) (analysis & PREFIX_MASK));
+    }
+
+    /**
+     * @return A copy of this MorphData which can't be modified; analyses are immutable, so they are shared
+     */
+    public MorphData frozenCopy() {
+        return frozenCopy(lemmaTable);
+    }
+
+    /**
+     * @param lemmaTable A table numbering lemmas the same as this MorphData's, e.g. a read-only view of it
+     */
+    public MorphData frozenCopy(LemmaTable lemmaTable) {
+        final MorphData ret = new MorphData(lemmaTable);
+        ret.analyses = analyses;
+        ret.prefixes = prefixes;
+        ret.haltIfFound = haltIfFound;
+        ret.frozen = true;
+        return ret;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("MorphData is frozen");
+        }
+    }
+
+    // Lemmas can only be added to a HeapLemmaTable; analyses numbered by any other table are moved to a new one
+    private HeapLemmaTable writableLemmaTable() {
+        if (lemmaTable instanceof HeapLemmaTable) {
+            return (HeapLemmaTable) lemmaTable;
+        }
+        final HeapLemmaTable table = new HeapLemmaTable();
+        if (analyses != null) {
+            final int[] moved = new int[analyses.length];
+            for (int i = 0; i < moved.length; i++) {
+                final int id = table.add(lemmaTable.getLemma(getLemmaId(analyses[i])));
+                moved[i] = (id << LEMMA_ID_SHIFT) | (analyses[i] & FLAGS_MASK);
+            }
+            analyses = moved;
+        }
+        lemmaTable = table;
+        return table;
+    }
+
     public void setLemmas(Lemma[] lemmas) {
-        Arrays.sort(lemmas, new Comparator<Lemma>() {
-            @Override
-            public int compare(Lemma l1, Lemma l2) {
-                return l1.descFlag.getVal() - l2.descFlag.getVal();
+        checkNotFrozen();
+        Arrays.sort(lemmas, BY_DESC_FLAG);
+        final HeapLemmaTable table = writableLemmaTable();
+        final int[] newAnalyses = new int[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            newAnalyses[i] = packAnalysis(table.add(lemmas[i].lemma), lemmas[i].descFlag, lemmas[i].prefix);
+        }
+        analyses = newAnalyses;
+    }
+
+    /**
+     * Sets packed analyses whose lemma ids are numbered by this MorphData's lemma table
+     */
+    public void setAnalyses(int[] analyses) {
+        checkNotFrozen();
+        if (lemmaTable == null) {
+            throw new IllegalStateException("No lemma table to number lemmas by");
+        }
+        final int[] sorted = analyses.clone();
+        sortAnalyses(sorted, sorted.length);
+        this.analyses = sorted;
+    }
+
+    /**
+     * Sorts analyses[0, length) in place into the order {@link #setAnalyses} keeps them in, so loaders can
+     * compare packed analyses before making a MorphData of them
+     */
+    public static void sortAnalyses(int[] analyses, int length) {
+        for (int i = 1; i < length; i++) { // stable insertion sort by DescFlag; there are only a few
+            final int analysis = analyses[i];
+            int j = i;
+            for (; j > 0 && descFlagBits(analyses[j - 1]) > descFlagBits(analysis); j--) {
+                analyses[j] = analyses[j - 1];
             }
-        });
-        this.lemmas = new ArrayList<>(Arrays.asList(lemmas));
+            analyses[j] = analysis;
+        }
+    }
+
+    private static int descFlagBits(int analysis) {
+        return (analysis >>> DESC_FLAG_SHIFT) & DESC_FLAG_MASK;
     }
 
+    /**
+     * @return false for data loaded without morphological information, which has no lemmas to get
+     */
+    public boolean hasLemmas() {
+        return analyses != null;
+    }
+
+    /**
+     * @return The lemmas, sorted by DescFlag. Each call allocates the array and a new Lemma per analysis; hot
+     * paths should go over {@link #getLemmasCount()} and {@link #getAnalysis(int)} instead, reading each
+     * analysis with {@link #getLemmaId}, {@link #getDescFlag} and {@link #getPrefixType}.
+     */
     public Lemma[] getLemmas() {
-        return lemmas.toArray(new Lemma[lemmas.size()]);
+        if (analyses == null) {
+            return new Lemma[0];
+        }
+        final Lemma[] ret = new Lemma[analyses.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = getLemma(i);
+        }
+        return ret;
+    }
+
+    public int getLemmasCount() {
+        return analyses == null ? 0 : analyses.length;
+    }
+
+    /**
+     * Allocates a new Lemma on every call; see {@link #getLemmas()} for the allocation-free alternative
+     */
+    public Lemma getLemma(int i) {
+        final int analysis = analyses[i];
+        return new Lemma(lemmaTable.getLemma(getLemmaId(analysis)), getDescFlag(analysis), getPrefixType(analysis));
+    }
+
+    /**
+     * @return The i-th analysis, packed as described in {@link #packAnalysis}
+     */
+    public int getAnalysis(int i) {
+        return analyses[i];
+    }
+
+    /**
+     * @return The table the lemma ids of the analyses are numbered by
+     */
+    public LemmaTable getLemmaTable() {
+        return lemmaTable;
     }
 
     public void addLemma(Lemma lemma) {
-        lemmas.add(lemma);
-        Collections.sort(lemmas, new Comparator<Lemma>() {
-            @Override
-            public int compare(Lemma l1, Lemma l2) {
-                return l1.descFlag.getVal() - l2.descFlag.getVal();
-            }
-        });
+        checkNotFrozen();
+        final HeapLemmaTable table = writableLemmaTable();
+        final int analysis = packAnalysis(table.add(lemma.lemma), lemma.descFlag, lemma.prefix);
+        final int[] current = analyses == null ? NO_ANALYSES : analyses;
+        int pos = current.length; // after all analyses with the same DescFlag or lower
+        while (pos > 0 && descFlagBits(current[pos - 1]) > descFlagBits(analysis)) {
+            pos--;
+        }
+        final int[] newAnalyses = new int[current.length + 1];
+        System.arraycopy(current, 0, newAnalyses, 0, pos);
+        newAnalyses[pos] = analysis;
+        System.arraycopy(current, pos, newAnalyses, pos + 1, current.length - pos);
+        analyses = newAnalyses;
     }
 
     public void clearLemmas(){
-        lemmas.clear();
+        checkNotFrozen();
+        analyses = null;
     }
 
     public void setPrefixes(short prefixes) {
+        checkNotFrozen();
         this.prefixes = prefixes;
     }
 
@@ -128,6 +326,7 @@ public class MorphData {
     }
 
     public void setHaltIfFound(boolean haltIfFound) {
+        checkNotFrozen();
         this.haltIfFound = haltIfFound;
     }
 
@@ -140,23 +339,44 @@ public class MorphData {
         if (getClass() != obj.getClass())
             return false;
         MorphData other = (MorphData) obj;
-        if (lemmas == null) {
-            return other.lemmas == null;
+        if (analyses == null || other.analyses == null) {
+            return analyses == other.analyses;
+        }
+        if (lemmaTable == other.lemmaTable) {
+            return Arrays.equals(analyses, other.analyses);
+        }
+        if (analyses.length != other.analyses.length) {
+            return false;
         }
-        return other.lemmas != null && lemmas.equals(other.lemmas);
+        for (int i = 0; i < analyses.length; i++) {
+            if ((analyses[i] & FLAGS_MASK) != (other.analyses[i] & FLAGS_MASK)) {
+                return false;
+            }
+            final String lemma = lemmaTable.getLemma(getLemmaId(analyses[i]));
+            final String otherLemma = other.lemmaTable.getLemma(getLemmaId(other.analyses[i]));
+            if (lemma == null ? otherLemma != null : !lemma.equals(otherLemma)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + lemmas.hashCode();
+        if (analyses != null) { // by lemma text rather than id, as equals doesn't require the same lemma table
+            for (int analysis : analyses) {
+                final String lemma = lemmaTable.getLemma(getLemmaId(analysis));
+                result = prime * result + (lemma == null ? 0 : lemma.hashCode());
+                result = prime * result + (analysis & FLAGS_MASK);
+            }
+        }
         return result;
     }
 
     @Override
     public String toString() {
-        return "{ prefix=" + prefixes + " lemmas=" + Arrays.asList(lemmas) + "}";
+        return "{ prefix=" + prefixes + " lemmas=" + (analyses == null ? null : Arrays.toString(getLemmas())) + "}";
     }
 }
-
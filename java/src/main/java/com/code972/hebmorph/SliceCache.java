@@ -0,0 +1,307 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The bounded, thread-safe cache behind LemmatizationCache and TolerantLookupCache, keyed by a slice of a char
+ * buffer along with a small int telling apart the kinds of values kept for the same chars.
+ *
+ * The cache is split into independently locked segments. Each segment evicts with a CLOCK sweep that spares
+ * recently hit entries, and only admits a new key if it was seen more often than the key it would evict,
+ * as estimated by a small count-min sketch. This keeps the long tail of rare keys from flushing out the
+ * frequent ones.
+ */
+final class SliceCache<V> {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    SliceCache(final int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maximumSize = maximumSize;
+
+        int segmentsCount = 1;
+        while (segmentsCount < MAX_SEGMENTS && segmentsCount * 2 <= maximumSize) {
+            segmentsCount *= 2;
+        }
+        @SuppressWarnings("unchecked") final Segment[] segments = (Segment[]) new SliceCache<?>.Segment[segmentsCount];
+        this.segments = segments;
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment((maximumSize + segmentsCount - 1) / segmentsCount);
+        }
+    }
+
+    /**
+     * @return The cached value, or null if the key isn't in the cache
+     */
+    V get(final char[] buf, final int off, final int len, final int kind) {
+        final int hash = hash(buf, off, len, kind);
+        final V ret = segmentFor(hash).get(buf, off, len, kind, hash);
+        if (ret == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return ret;
+    }
+
+    /**
+     * Offers a value to the cache. The key may not be admitted if it's less frequent than the key it would replace.
+     *
+     * @return The value later get calls will return for the key - the one given, or one cached meanwhile
+     */
+    V put(final char[] buf, final int off, final int len, final int kind, final V value) {
+        final int hash = hash(buf, off, len, kind);
+        return segmentFor(hash).put(buf, off, len, kind, hash, value);
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    double getHitRate() {
+        final long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    long getRejections() {
+        return rejections.sum();
+    }
+
+    private Segment segmentFor(final int hash) {
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private static int hash(final char[] buf, final int off, final int len, final int kind) {
+        int h = kind;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h;
+    }
+
+    private static final class Key {
+        private char[] chars;
+        private int off, len, hash;
+        private int kind;
+
+        Key set(final char[] chars, final int off, final int len, final int kind, final int hash) {
+            this.chars = chars;
+            this.off = off;
+            this.len = len;
+            this.kind = kind;
+            this.hash = hash;
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            final Key other = (Key) obj;
+            if (hash != other.hash || len != other.len || kind != other.kind)
+                return false;
+            for (int i = 0; i < len; i++) {
+                if (chars[off + i] != other.chars[other.off + i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final Key key;
+        private final V value;
+        private int recency; // bumped on hits, decremented by the clock hand, up to MAX_RECENCY
+
+        private static final int MAX_RECENCY = 3;
+
+        Entry(final Key key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final class Segment {
+        private final HashMap<Key, Entry<V>> map;
+        private final Entry<V>[] clock;
+        private final FrequencySketch sketch;
+        private final Key probe = new Key(); // reused under the segment's lock, so lookups don't allocate
+        private int hand;
+
+        Segment(final int capacity) {
+            map = new HashMap<>(capacity * 4 / 3 + 1);
+            @SuppressWarnings("unchecked") final Entry<V>[] entries = (Entry<V>[]) new Entry<?>[capacity];
+            clock = entries;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized V get(final char[] buf, final int off, final int len, final int kind, final int hash) {
+            sketch.increment(hash);
+            final Entry<V> e = map.get(probe.set(buf, off, len, kind, hash));
+            probe.chars = null;
+            if (e == null)
+                return null;
+            if (e.recency < Entry.MAX_RECENCY)
+                e.recency++;
+            return e.value;
+        }
+
+        synchronized V put(final char[] buf, final int off, final int len, final int kind, final int hash, final V value) {
+            final Entry<V> existing = map.get(probe.set(buf, off, len, kind, hash));
+            probe.chars = null;
+            if (existing != null)
+                return existing.value;
+
+            final int slot;
+            if (map.size() < clock.length) {
+                slot = map.size();
+            } else {
+                // Sweep the clock for a victim which wasn't hit since the hand last passed it
+                while (clock[hand].recency > 0) {
+                    clock[hand].recency--;
+                    hand = (hand + 1) % clock.length;
+                }
+                final Entry<V> victim = clock[hand];
+                if (sketch.frequency(hash) <= sketch.frequency(victim.key.hash)) {
+                    rejections.increment();
+                    return value;
+                }
+                map.remove(victim.key);
+                evictions.increment();
+                slot = hand;
+                hand = (hand + 1) % clock.length;
+            }
+
+            final Entry<V> e = new Entry<>(new Key().set(Arrays.copyOfRange(buf, off, off + len), 0, len, kind, hash), value);
+            clock[slot] = e;
+            map.put(e.key, e);
+            return value;
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized void clear() {
+            map.clear();
+            Arrays.fill(clock, null);
+            sketch.clear();
+            hand = 0;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4 rows of saturating counters, estimating how often a hash was seen recently.
+     * Counters are halved periodically, so the estimates follow changes in the word distribution.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(final int capacity) {
+            int width = 16;
+            while (width < capacity) {
+                width *= 2;
+            }
+            counters = new byte[DEPTH * width];
+            mask = width - 1;
+            sampleSize = 10 * Math.max(capacity, 16);
+        }
+
+        void increment(final int hash) {
+            for (int i = 0; i < DEPTH; i++) {
+                final int index = indexOf(hash, i);
+                if (counters[index] < MAX_COUNT)
+                    counters[index]++;
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(final int hash) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, counters[indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        void clear() {
+            Arrays.fill(counters, (byte) 0);
+            additions = 0;
+        }
+
+        private int indexOf(final int hash, final int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+    }
+}
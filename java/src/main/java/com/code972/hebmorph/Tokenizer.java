@@ -18,6 +18,7 @@
 package com.code972.hebmorph;
 
 import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.PrefixTrie;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -68,7 +69,7 @@ public class Tokenizer {
         this.suffixForExactMatch = suffixForExactMatch;
     }
 
-    private final HashMap<String, Integer> hebrewPrefixes;
+    private final PrefixTrie hebrewPrefixes;
     private final DictRadix<Byte> specialCases;
     private static final Byte dummyData = (byte) 0;
 
@@ -108,6 +109,14 @@ public class Tokenizer {
     }
 
     public Tokenizer(final Reader input, HashMap<String, Integer> prefixes, final DictRadix<Byte> specialCases) {
+        this(input, prefixes == null ? null : new PrefixTrie(prefixes), specialCases);
+    }
+
+    /**
+     * @param prefixes The prefixes table already compiled, e.g. DictHebMorph.getPrefixTrie, which tokenizers
+     *                 over the same dictionary can share
+     */
+    public Tokenizer(final Reader input, final PrefixTrie prefixes, final DictRadix<Byte> specialCases) {
         this.input = input;
         this.specialCases = specialCases != null ? specialCases : new DictRadix<Byte>(false);
         this.hebrewPrefixes = prefixes;
@@ -135,21 +144,21 @@ public class Tokenizer {
     }
 
     private boolean isRecognizedException(char[] token, int tokenLen, byte length, boolean exact) {
-        int i = 0;
+        // Skip the Hebrew letters the token starts with, as long as they are all a legal prefix
+        int i = 0, prefixState = PrefixTrie.ROOT;
         while (i < tokenLen && HebrewUtils.isHebrewLetter(token[i])) {
-            if (!isLegalPrefix(token, i + 1, hebrewPrefixes)) {
+            if (hebrewPrefixes == null || (prefixState = hebrewPrefixes.step(prefixState, token[i])) == PrefixTrie.NO_STATE
+                    || hebrewPrefixes.getMask(prefixState) == PrefixTrie.NOT_A_PREFIX) {
                 i = 0;
                 break;
             }
             i++;
         }
 
-        try {
-            specialCases.lookup(token, i, length - i, i, !exact);
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
+        if (exact) {
+            return specialCases.find(token, i, length - i) != null;
         }
+        return specialCases.containsPrefix(token, i, length - i);
     }
 
     // Niqqud is not being removed by design, to allow for a future analyzer extension to take advantage of it
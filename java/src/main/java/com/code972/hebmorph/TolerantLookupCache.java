@@ -0,0 +1,128 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.LookupResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A bounded, thread-safe cache of tolerant dictionary lookups keyed by the word looked up - see
+ * DictHebMorph.setTolerantLookupCache. Tolerant lemmatization looks up the stem left after every legal prefix,
+ * and the same stems recur across prefixed forms ("הבית", "בבית", "ולבית"), so they're shared by all of them.
+ * Lookups which found nothing are cached too, as misspellings tend to repeat.
+ * <p>
+ * Only lookups made with the tolerators the cache was made for are cached. Results are copied on the way in and
+ * on the way out, like LemmatizationCache's tokens, and the lists returned are immutable. The cache must be
+ * cleared when the dictionary or the lookup limits change. Eviction works like LemmatizationCache's.
+ */
+public class TolerantLookupCache {
+    private final SliceCache<List<LookupResult<MorphData>>> cache;
+    private final LookupTolerators.ToleranceFunction[] toleranceFunctions;
+
+    public TolerantLookupCache(final int maximumSize) {
+        this(maximumSize, LookupTolerators.TolerateEmKryiaAll);
+    }
+
+    public TolerantLookupCache(final int maximumSize, final LookupTolerators.ToleranceFunction[] toleranceFunctions) {
+        this.cache = new SliceCache<>(maximumSize);
+        this.toleranceFunctions = toleranceFunctions;
+    }
+
+    /**
+     * @return Whether lookups made with the tolerators are cached here
+     */
+    public boolean caches(final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        return tolFuncs == toleranceFunctions;
+    }
+
+    public LookupTolerators.ToleranceFunction[] getToleranceFunctions() {
+        return toleranceFunctions;
+    }
+
+    /**
+     * @return The cached results, which are empty if the lookup found nothing, or null if the word isn't in the cache
+     */
+    public List<LookupResult<MorphData>> get(final char[] buf, final int off, final int len) {
+        final List<LookupResult<MorphData>> cached = cache.get(buf, off, len, 0);
+        return cached == null ? null : copyOf(cached);
+    }
+
+    /**
+     * Offers the results of a lookup to the cache. The word may not be admitted if it's less frequent than the
+     * word it would replace.
+     *
+     * @param results The results, or null if there were none
+     * @return An immutable copy of the results, equal to what later get calls will return for the word
+     */
+    public List<LookupResult<MorphData>> put(final char[] buf, final int off, final int len, final List<LookupResult<MorphData>> results) {
+        final List<LookupResult<MorphData>> value = results == null ? Collections.<LookupResult<MorphData>>emptyList() : copyOf(results);
+        return copyOf(cache.put(buf, off, len, 0, value));
+    }
+
+    private static List<LookupResult<MorphData>> copyOf(final List<LookupResult<MorphData>> results) {
+        if (results.isEmpty()) {
+            return Collections.emptyList();
+        }
+        @SuppressWarnings("unchecked") final LookupResult<MorphData>[] copies = (LookupResult<MorphData>[]) new LookupResult<?>[results.size()];
+        for (int i = 0; i < copies.length; i++) {
+            copies[i] = new LookupResult<>(results.get(i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(copies));
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaximumSize() {
+        return cache.getMaximumSize();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    public long getRejections() {
+        return cache.getRejections();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TolerantLookupCache[size=%d/%d, hits=%d, misses=%d, evictions=%d, rejections=%d]",
+                size(), getMaximumSize(), getHits(), getMisses(), getEvictions(), getRejections());
+    }
+}
@@ -0,0 +1,262 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A read-only dictionary compiled into a Lucene FST. The output of every word is an ordinal into a table of
+ * the distinct values stored in the source radix, so words sharing both a suffix and a value share FST
+ * states. Hebrew inflections share suffixes heavily, which makes this a lot smaller than a DictRadix.
+ * <p>
+ * Exact lookups walk the FST using per-thread arcs and readers, and tolerant lookups using a per-thread
+ * {@link TolerantCrawler}.
+ */
+public class DictFST<T> implements DictLookup<T> {
+    private final FST<Long> fst;
+    private final Object[] values;
+    private final int count;
+
+    // Shared by all FSTs, as walkers hold nothing but arcs to reuse; a walker referencing its FST would keep the FST
+    // alive for as long as the thread
+    private static final ThreadLocal<Walker> walkers = new ThreadLocal<Walker>() {
+        @Override
+        protected Walker initialValue() {
+            return new Walker();
+        }
+    };
+
+    private static final class Walker {
+        private final ArrayList<FST.Arc<Long>> arcs = new ArrayList<>();
+
+        FST.Arc<Long> arc(final int depth) {
+            while (arcs.size() <= depth) {
+                arcs.add(new FST.Arc<Long>());
+            }
+            return arcs.get(depth);
+        }
+    }
+
+    public DictFST(final DictRadix<T> radix) {
+        final IdentityHashMap<T, Integer> ordinals = new IdentityHashMap<>();
+        final List<T> distinctValues = new ArrayList<>();
+        final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, PositiveIntOutputs.getSingleton());
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        int words = 0;
+        try {
+            // The radix enumerates its keys in sorted order, as required by the FST builder
+            final DictRadix<T>.RadixEnumerator en = (DictRadix<T>.RadixEnumerator) radix.iterator();
+            while (en.hasNext()) {
+                final T value = en.next();
+                Integer ord = ordinals.get(value);
+                if (ord == null) {
+                    ord = distinctValues.size();
+                    ordinals.put(value, ord);
+                    distinctValues.add(value);
+                }
+                builder.add(Util.toUTF16(en.getCurrentKey(), scratch), (long) ord);
+                words++;
+            }
+            this.fst = builder.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // in-memory FSTs don't do real IO
+        }
+        this.values = distinctValues.toArray();
+        this.count = words;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of distinct values words map to
+     */
+    public int getValuesCount() {
+        return values.length;
+    }
+
+    /**
+     * @return Heap used by the FST itself, not including the values it points to
+     */
+    public long ramBytesUsed() {
+        return fst.ramBytesUsed();
+    }
+
+    @Override
+    public T find(final String key) {
+        final FST.BytesReader in = fst.getBytesReader();
+        final FST.Arc<Long> arc = fst.getFirstArc(walkers.get().arc(0));
+        long output = 0;
+        try {
+            for (int i = 0; i < key.length(); i++) {
+                if (fst.findTargetArc(key.charAt(i), arc, arc, in) == null) {
+                    return null;
+                }
+                output += arc.output;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return arc.isFinal() ? value(output + arc.nextFinalOutput) : null;
+    }
+
+    @Override
+    public T find(final char[] key, final int off, final int len) {
+        final FST.BytesReader in = fst.getBytesReader();
+        final FST.Arc<Long> arc = fst.getFirstArc(walkers.get().arc(0));
+        long output = 0;
+        try {
+            for (int i = off; i < off + len; i++) {
+                if (fst.findTargetArc(key[i], arc, arc, in) == null) {
+                    return null;
+                }
+                output += arc.output;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return arc.isFinal() ? value(output + arc.nextFinalOutput) : null;
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final String strKey, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(strKey, tolFuncs, limits);
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(key, off, len, tolFuncs, limits);
+    }
+
+    // Shared by all FSTs; see TolerantCrawler.release
+    private static final ThreadLocal<TolerantLookupCrawler<?>> crawlers = new ThreadLocal<TolerantLookupCrawler<?>>() {
+        @Override
+        protected TolerantLookupCrawler<?> initialValue() {
+            return new TolerantLookupCrawler<Object>();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static <T> TolerantLookupCrawler<T> crawler() {
+        return (TolerantLookupCrawler<T>) crawlers.get();
+    }
+
+    private static final class TolerantLookupCrawler<T> extends TolerantCrawler<T> {
+        private final Walker walker = new Walker();
+        private DictFST<T> dict; // only set during a lookup
+        private FST<Long> fst;
+        private FST.BytesReader in;
+
+        @Override
+        protected void crawlRoot() {
+            fst = dict.fst;
+            in = fst.getBytesReader();
+            fst.getFirstArc(walker.arc(0));
+            try {
+                crawl(0, 0, 0, 1.0f, 0);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected void release() {
+            dict = null;
+            fst = null;
+            in = null;
+        }
+
+        // Try all chars leaving the node the arc at depth points to
+        private void crawl(final int depth, final int keyPos, final int wordLen, final float score, final long output) throws IOException {
+            final FST.Arc<Long> node = walker.arc(depth);
+            if (!FST.targetHasArcs(node)) {
+                return;
+            }
+            final FST.Arc<Long> child = fst.readFirstTargetArc(node, walker.arc(depth + 1), in);
+            while (true) {
+                if (child.label != FST.END_LABEL) {
+                    matchChar(depth + 1, keyPos, wordLen, score, output + child.output);
+                }
+                if (child.isLast()) {
+                    break;
+                }
+                fst.readNextArc(child, in);
+            }
+        }
+
+        // Match the char of the arc at depth against the key, directly or through toleration
+        private void matchChar(final int depth, final int keyPos, final int wordLen, final float score, final long output) throws IOException {
+            if (keyPos >= keyLen || !enter(score)) {
+                return;
+            }
+            final FST.Arc<Long> arc = walker.arc(depth);
+            final char c = (char) arc.label;
+
+            // toleration
+            for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
+                final int toleration = tf.tolerate(key, keyLen, keyPos, word, wordLen, c);
+                if (toleration == LookupTolerators.NOT_TOLERATED) {
+                    continue;
+                }
+                final float tolScore = score * LookupTolerators.scoreFactor(toleration);
+                if (LookupTolerators.consumesChar(toleration)) {
+                    setWordChar(wordLen, c);
+                    crawl(depth, keyPos, wordLen + 1, tolScore, output);
+                } else {
+                    matchChar(depth, keyPos + 1, wordLen, tolScore, output);
+                }
+            }
+
+            // standard key matching
+            if (c != key[keyPos]) {
+                return;
+            }
+            setWordChar(wordLen, c);
+            if (keyPos + 1 == keyLen) {
+                if (arc.isFinal()) {
+                    addResult(wordLen + 1, dict.value(output + arc.nextFinalOutput), score);
+                }
+            } else {
+                crawl(depth, keyPos + 1, wordLen + 1, score, output);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(final long ord) {
+        return (T) values[(int) ord];
+    }
+}
@@ -17,50 +17,444 @@
  **************************************************************************/
 package com.code972.hebmorph.datastructures;
 
+import com.code972.hebmorph.HeapLemmaTable;
+import com.code972.hebmorph.LemmaTable;
+import com.code972.hebmorph.LemmatizationCache;
+import com.code972.hebmorph.LookupTolerators;
 import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TolerantLookupCache;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
 
+/**
+ * The HebMorph dictionary - a prefixes table and a single store of all known words, which serves both exact
+ * and tolerant lookups. A dictionary is built into a DictRadix, and can later be backed by a compiled,
+ * read-only structure instead, e.g. new DictHebMorph(new DictFST&lt;&gt;(dict.getRadix()), dict.getPref())
+ * <p>
+ * Once built, a dictionary should be frozen before it is shared between threads - see {@link #freeze}.
+ */
 public class DictHebMorph {
-    private HashMap<String, Integer> pref;
-    private DictRadix<MorphData> dict;
-    private HashMap<String, MorphData> mds;
+    private volatile Prefixes prefixes;
+    private final DictLookup<MorphData> dict;
+    private final LemmaTable lemmaTable;
+    private final boolean frozen;
+    private volatile LemmatizationCache lemmatizationCache;
+    private volatile TolerantLookupCache tolerantLookupCache;
+    private volatile TolerantLookupLimits tolerantLookupLimits = TolerantLookupLimits.UNLIMITED;
+    private volatile EmKriyaSkeletonIndex<MorphData> skeletonIndex;
+    private volatile SuffixIndex<MorphData> suffixIndex;
+    private volatile WordBloomFilter bloomFilter;
 
     public DictHebMorph(){
-        dict = new DictRadix<>();
-        pref = new HashMap<>();
-        mds = new HashMap<>();
+        this(new DictRadix<>(), new HashMap<>());
     }
 
+    public DictHebMorph(final DictLookup<MorphData> dict, final HashMap<String, Integer> pref) {
+        this(dict, pref, new HeapLemmaTable());
+    }
+
+    /**
+     * @param lemmaTable The table numbering the lemmas of the MorphData in dict
+     */
+    public DictHebMorph(final DictLookup<MorphData> dict, final HashMap<String, Integer> pref, final LemmaTable lemmaTable) {
+        this(dict, pref, lemmaTable, false);
+    }
+
+    private DictHebMorph(final DictLookup<MorphData> dict, final HashMap<String, Integer> pref, final LemmaTable lemmaTable, final boolean frozen) {
+        this.dict = dict;
+        this.lemmaTable = lemmaTable;
+        this.frozen = frozen;
+        this.prefixes = new Prefixes(pref);
+    }
+
+    // Lets frozen copies read the lemmas of the tables they share with their source, but not add any
+    private static final class ReadOnlyLemmaTable implements LemmaTable {
+        private final LemmaTable table;
+
+        ReadOnlyLemmaTable(final LemmaTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public String getLemma(final int id) {
+            return table.getLemma(id);
+        }
+
+        @Override
+        public int size() {
+            return table.size();
+        }
+    }
+
+    // The prefixes table, and the same table compiled for walking words, always replaced together
+    private static final class Prefixes {
+        final HashMap<String, Integer> map;
+        final PrefixTrie trie;
+
+        Prefixes(final HashMap<String, Integer> map) {
+            this.map = map;
+            this.trie = new PrefixTrie(map == null ? Collections.<String, Integer>emptyMap() : map);
+        }
+    }
+
+    /**
+     * Makes a deeply immutable copy of this dictionary: words are copied into a FrozenDictRadix, each with a
+     * frozen copy of its MorphData, and the prefixes table is copied too. All fields of the copy are final or
+     * immutable, so it can be shared between any number of threads without further synchronization, and any
+     * attempt to modify it or its MorphData throws UnsupportedOperationException. Lookup limits, indexes and
+     * Bloom filter carry over, and the copy gets empty lemmatization and tolerant lookup caches of the same sizes;
+     * configure them before freezing, as their setters throw too. The copy reads lemmas through a read-only view
+     * of the lemma table.
+     *
+     * @return The frozen copy, or this dictionary if it is frozen already
+     * @throws UnsupportedOperationException if the dictionary is backed by a read-only structure other than a MappedDictionary
+     */
+    public DictHebMorph freeze() {
+        if (frozen) {
+            return this;
+        }
+
+        final Prefixes current = prefixes;
+        final HashMap<String, Integer> pref = current.map == null ? null : new HashMap<>(current.map);
+        final LemmaTable table = readOnly(lemmaTable);
+        final DictHebMorph ret;
+        if (dict instanceof MappedDictionary) {
+            // Already immutable, and MorphData is decoded anew for every lookup; so are the indexes
+            ret = new DictHebMorph(dict, pref, table, true);
+            ret.skeletonIndex = skeletonIndex;
+            ret.suffixIndex = suffixIndex;
+        } else {
+            final IdentityHashMap<MorphData, MorphData> copies = new IdentityHashMap<>();
+            final IdentityHashMap<LemmaTable, LemmaTable> views = new IdentityHashMap<>();
+            views.put(lemmaTable, table);
+            final Function<MorphData, MorphData> freezer = new Function<MorphData, MorphData>() {
+                @Override
+                public MorphData apply(final MorphData md) {
+                    MorphData copy = copies.get(md);
+                    if (copy == null) {
+                        LemmaTable view = views.get(md.getLemmaTable());
+                        if (view == null) { // MorphData added by other means may have tables of their own
+                            view = readOnly(md.getLemmaTable());
+                            views.put(md.getLemmaTable(), view);
+                        }
+                        copy = md.frozenCopy(view);
+                        copies.put(md, copy);
+                    }
+                    return copy;
+                }
+            };
+            ret = new DictHebMorph(new FrozenDictRadix<>(getRadix(), freezer), pref, table, true);
+            if (skeletonIndex != null) {
+                ret.skeletonIndex = new EmKriyaSkeletonIndex<>(getRadix(), freezer);
+            }
+            if (suffixIndex != null) {
+                ret.suffixIndex = new SuffixIndex<>(getRadix(), freezer);
+            }
+        }
+        if (lemmatizationCache != null) { // this dictionary may still change, and its cache with it
+            ret.lemmatizationCache = new LemmatizationCache(lemmatizationCache.getMaximumSize());
+        }
+        ret.tolerantLookupLimits = tolerantLookupLimits;
+        if (tolerantLookupCache != null) { // cached results point at this dictionary's MorphData, not the copies
+            ret.tolerantLookupCache = new TolerantLookupCache(tolerantLookupCache.getMaximumSize(), tolerantLookupCache.getToleranceFunctions());
+        }
+        if (bloomFilter != null) {
+            ret.bloomFilter = bloomFilter.copy();
+        }
+        return ret;
+    }
+
+    private static LemmaTable readOnly(final LemmaTable table) {
+        return table instanceof HeapLemmaTable ? new ReadOnlyLemmaTable(table) : table;
+    }
+
+    /**
+     * @return The table loaders number the lemmas of this dictionary's MorphData by; MorphData added by other
+     * means may have tables of their own
+     */
+    public LemmaTable getLemmaTable() {
+        return lemmaTable;
+    }
+
+    public final boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Dictionary is frozen");
+        }
+    }
+
+    /**
+     * Adding words drops the skeleton index, if there was one; rebuild it once done adding. The lemmatization
+     * and tolerant lookup caches are cleared, as they may hold results from before the word was added.
+     */
     public void addNode(String s, MorphData md) {
-        this.mds.put(s,md);
-        this.dict.addNode(s,md);
+        addNode(s.toCharArray(), md);
     }
 
     public void addNode(char[] s, MorphData md) {
-        addNode(new String(s),md);
+        getRadix().addNode(s,md);
+        final WordBloomFilter filter = bloomFilter;
+        // The radix takes the key up to the first '\0', and so must the filter
+        if (filter != null) filter.add(s, 0, DictRadix.getCharArrayLength(s));
+        skeletonIndex = null;
+        suffixIndex = null;
+        final LemmatizationCache cache = lemmatizationCache;
+        if (cache != null) cache.clear();
+        final TolerantLookupCache lookupCache = tolerantLookupCache;
+        if (lookupCache != null) lookupCache.clear();
     }
 
+    /**
+     * @throws UnsupportedOperationException if this dictionary isn't backed by a DictRadix
+     */
     public final DictRadix<MorphData> getRadix() {
+        if (!(dict instanceof DictRadix)) {
+            throw new UnsupportedOperationException("Dictionary is backed by a read-only " + dict.getClass().getSimpleName());
+        }
+        return (DictRadix<MorphData>) dict;
+    }
+
+    public final DictLookup<MorphData> getDictionary() {
         return dict;
     }
 
+    /**
+     * Changes made to the returned map are not seen by lookupPrefix; use setPref to replace the prefixes table.
+     * Frozen dictionaries return a copy.
+     */
     public final HashMap<String, Integer> getPref() {
-        return pref;
+        final Prefixes current = prefixes;
+        return frozen && current.map != null ? new HashMap<>(current.map) : current.map;
     }
 
+    /**
+     * Replaces the prefixes table. The lemmatization cache is cleared, as its results depend on the prefixes.
+     */
     public void setPref(final HashMap<String, Integer> prefs) {
-        this.pref = prefs;
+        checkNotFrozen();
+        this.prefixes = new Prefixes(prefs);
+        final LemmatizationCache cache = lemmatizationCache;
+        if (cache != null) cache.clear();
+    }
+
+    /**
+     * @return The prefixes table compiled into an automaton, which finds all the legal prefixes of a word in
+     * one walk over it
+     */
+    public final PrefixTrie getPrefixTrie() {
+        return prefixes.trie;
+    }
+
+    /**
+     * Looks up a prefix in the prefixes table without creating a String for it
+     *
+     * @return The prefix mask, or null if the chars aren't a legal prefix
+     */
+    public final Integer lookupPrefix(final char[] buf, final int off, final int len) {
+        final int mask = prefixes.trie.getMask(buf, off, len);
+        return mask == PrefixTrie.NOT_A_PREFIX ? null : mask;
+    }
+
+    public final Integer lookupPrefix(final CharSequence prefix) {
+        final int mask = prefixes.trie.getMask(prefix, prefix.length());
+        return mask == PrefixTrie.NOT_A_PREFIX ? null : mask;
+    }
+
+    /**
+     * @return The cache shared by all lemmatizers using this dictionary, or null if lemmatization results aren't cached
+     */
+    public final LemmatizationCache getLemmatizationCache() {
+        return lemmatizationCache;
+    }
+
+    /**
+     * Enables caching of lemmatization results for all lemmatizers using this dictionary, including those
+     * already created. Pass null to disable caching.
+     */
+    public void setLemmatizationCache(final LemmatizationCache cache) {
+        checkNotFrozen();
+        this.lemmatizationCache = cache;
+    }
+
+    /**
+     * @return The cache of tolerant lookups made through this dictionary, or null if they aren't cached
+     */
+    public final TolerantLookupCache getTolerantLookupCache() {
+        return tolerantLookupCache;
+    }
+
+    /**
+     * Enables caching of tolerant lookups made through this dictionary, e.g. of the stems tolerant lemmatization
+     * tries after every prefix. The cache is cleared along with the dictionary, when words are added to it and when
+     * lookup limits change.
+     * Pass null to disable caching.
+     */
+    public void setTolerantLookupCache(final TolerantLookupCache cache) {
+        checkNotFrozen();
+        this.tolerantLookupCache = cache;
     }
 
+    /**
+     * Exact lookup of a word in the dictionary
+     *
+     * @param key The word to look up
+     * @return The word's morphological data, or null if the word isn't in the dictionary. It may be shared with
+     * other words, and is frozen if it was loaded; see MorphData.
+     */
     public final MorphData lookup (final String key){
-        return mds.get(key);
+        final WordBloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(key)) {
+            return null;
+        }
+        return dict.find(key);
+    }
+
+    /**
+     * Exact lookup of a slice of a char buffer, e.g. a token's term buffer, without copying it into a String
+     */
+    public final MorphData lookup(final char[] buf, final int off, final int len) {
+        final WordBloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(buf, off, len)) {
+            return null;
+        }
+        return dict.find(buf, off, len);
+    }
+
+    public final TolerantLookupLimits getTolerantLookupLimits() {
+        return tolerantLookupLimits;
+    }
+
+    /**
+     * Sets the limits applied to all tolerant lookups made through this dictionary, e.g. by lemmatizers. Both caches
+     * are cleared, as they hold tolerant results found under the previous limits.
+     */
+    public void setTolerantLookupLimits(final TolerantLookupLimits limits) {
+        checkNotFrozen();
+        this.tolerantLookupLimits = limits == null ? TolerantLookupLimits.UNLIMITED : limits;
+        final LemmatizationCache cache = lemmatizationCache;
+        if (cache != null) cache.clear();
+        final TolerantLookupCache lookupCache = tolerantLookupCache;
+        if (lookupCache != null) lookupCache.clear();
+    }
+
+    public final EmKriyaSkeletonIndex<MorphData> getSkeletonIndex() {
+        return skeletonIndex;
+    }
+
+    /**
+     * Builds a skeleton index over the radix, which then serves tolerant lookups made with the Em Kriya tolerators
+     *
+     * @throws UnsupportedOperationException if this dictionary isn't backed by a DictRadix; build the index from
+     *                                       the radix before compiling it, and set it on the compiled dictionary
+     */
+    public void buildSkeletonIndex() {
+        skeletonIndex = new EmKriyaSkeletonIndex<>(getRadix());
+    }
+
+    /**
+     * Sets an index built over the same words as this dictionary, or null to crawl the dictionary on all tolerant lookups
+     */
+    public void setSkeletonIndex(final EmKriyaSkeletonIndex<MorphData> index) {
+        checkNotFrozen();
+        this.skeletonIndex = index;
+    }
+
+    public final SuffixIndex<MorphData> getSuffixIndex() {
+        return suffixIndex;
+    }
+
+    /**
+     * Builds a suffix index over the radix, which lemmatizers then use to find the stems left after all legal
+     * prefixes of a word in a single walk
+     *
+     * @throws UnsupportedOperationException if this dictionary isn't backed by a DictRadix; build the index from
+     *                                       the radix before compiling it, and set it on the compiled dictionary
+     */
+    public void buildSuffixIndex() {
+        suffixIndex = new SuffixIndex<>(getRadix());
+    }
+
+    /**
+     * Sets an index built over the same words as this dictionary, or null to look up every stem separately
+     */
+    public void setSuffixIndex(final SuffixIndex<MorphData> index) {
+        checkNotFrozen();
+        this.suffixIndex = index;
+    }
+
+    public final WordBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * Builds a Bloom filter over the words of the radix, which then rejects most exact lookups of words that
+     * aren't in the dictionary before they reach it. Words added later are added to the filter too.
+     *
+     * @throws UnsupportedOperationException if this dictionary isn't backed by a DictRadix; build the filter from
+     *                                       the radix before compiling it, and set it on the compiled dictionary
+     */
+    public void buildBloomFilter(final double falsePositiveRate) {
+        bloomFilter = WordBloomFilter.build(getRadix(), falsePositiveRate);
+    }
+
+    /**
+     * Sets a filter holding at least all words of this dictionary, or null to look up every word in the dictionary
+     */
+    public void setBloomFilter(final WordBloomFilter filter) {
+        checkNotFrozen();
+        this.bloomFilter = filter;
+    }
+
+    public final List<LookupResult<MorphData>> lookupTolerant(final String key, final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        final TolerantLookupCache cache = tolerantLookupCache;
+        if (cache != null && cache.caches(tolFuncs)) {
+            return lookupTolerant(key.toCharArray(), 0, key.length(), tolFuncs);
+        }
+        return tolerantDictionary(tolFuncs).lookupTolerant(key, tolFuncs, tolerantLookupLimits);
+    }
+
+    public final List<LookupResult<MorphData>> lookupTolerant(final char[] buf, final int off, final int len,
+                                                              final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        final TolerantLookupCache cache = tolerantLookupCache;
+        if (cache == null || !cache.caches(tolFuncs)) {
+            return tolerantDictionary(tolFuncs).lookupTolerant(buf, off, len, tolFuncs, tolerantLookupLimits);
+        }
+
+        List<LookupResult<MorphData>> results = cache.get(buf, off, len);
+        if (results == null) {
+            results = cache.put(buf, off, len, tolerantDictionary(tolFuncs).lookupTolerant(buf, off, len, tolFuncs, tolerantLookupLimits));
+        }
+        return results.isEmpty() ? null : results;
+    }
+
+    private DictLookup<MorphData> tolerantDictionary(final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        final EmKriyaSkeletonIndex<MorphData> index = skeletonIndex;
+        return index != null && EmKriyaSkeletonIndex.supports(tolFuncs) ? index : dict;
     }
 
     public void clear() {
-        dict.clear();
-        pref.clear();
-        mds.clear();
+        checkNotFrozen();
+        getRadix().clear();
+        final Prefixes current = prefixes;
+        if (current.map != null) {
+            current.map.clear();
+            prefixes = new Prefixes(current.map);
+        }
+        skeletonIndex = null;
+        suffixIndex = null;
+        final WordBloomFilter filter = bloomFilter;
+        if (filter != null) filter.clear();
+        final LemmatizationCache cache = lemmatizationCache;
+        if (cache != null) cache.clear();
+        final TolerantLookupCache lookupCache = tolerantLookupCache;
+        if (lookupCache != null) lookupCache.clear();
     }
 
     @Override
@@ -72,6 +466,6 @@ public class DictHebMorph {
         if (getClass() != other.getClass())
             return false;
         DictHebMorph otherDict = (DictHebMorph) other;
-        return (this.dict.equals(otherDict.dict) && this.pref.equals(otherDict.pref) && this.mds.equals(otherDict.mds));
+        return (this.dict.equals(otherDict.dict) && this.prefixes.map.equals(otherDict.prefixes.map));
     }
 }
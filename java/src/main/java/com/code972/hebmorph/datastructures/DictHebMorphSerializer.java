@@ -0,0 +1,347 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.DescFlag;
+import com.code972.hebmorph.HeapLemmaTable;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.PrefixType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes a fully built DictHebMorph - prefixes, words and their MorphData - in a compact binary format,
+ * so a dictionary compiled once from the hspell data files can be loaded without parsing them again.
+ * <p>
+ * The format is big-endian and columnar, so that reading it is mostly bulk copies out of a single buffer:
+ * <pre>
+ * header    magic, version, radix flags
+ * prefixes  count, then (length, chars, mask) per prefix
+ * strings   count, lengths (-1 for null), total chars, chars
+ * lemmas    count, string ids, DescFlag ordinals, PrefixType ordinals
+ * morphs    count, prefix masks, flags, lemma counts (-1 for none), total lemma ids, lemma ids
+ * words     count, lengths shared with the previous word, suffix lengths, total suffix chars, suffix chars, morph ids
+ * trailer   magic
+ * </pre>
+ * Words are written in sorted order. Strings, lemmas and MorphData are written once each, and MorphData shared
+ * by several words is still shared after reading. Runtime settings such as caches and lookup limits aren't saved.
+ */
+public final class DictHebMorphSerializer {
+    private static final int MAGIC = 0x484D4443; // "HMDC"
+
+    /**
+     * Version of the format written; readers reject any other version
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_CASE_SENSITIVE = 1, FLAG_ALLOW_VALUE_OVERRIDE = 2;
+    private static final int MORPH_HALT_IF_FOUND = 1;
+
+    private static final DescFlag[] DESC_FLAGS = DescFlag.values();
+    private static final PrefixType[] PREFIX_TYPES = PrefixType.values();
+
+    private DictHebMorphSerializer() {
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the dictionary isn't backed by a DictRadix
+     */
+    public static void write(final DictHebMorph dict, final OutputStream stream) throws IOException {
+        final DictRadix<MorphData> radix = dict.getRadix();
+
+        // Number everything the words point to, in order of first appearance
+        final List<String> words = new ArrayList<>(radix.getCount());
+        final List<MorphData> morphs = new ArrayList<>();
+        final IdentityHashMap<MorphData, Integer> morphIds = new IdentityHashMap<>();
+        final int[] wordMorphs = new int[radix.getCount()];
+        final List<MorphData.Lemma> lemmas = new ArrayList<>();
+        final HashMap<MorphData.Lemma, Integer> lemmaIds = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final HashMap<String, Integer> stringIds = new HashMap<>();
+        // The lemma ids of every MorphData in morphs, one after the other; Lemma objects are made once per analysis
+        int[] morphLemmaIds = new int[1024];
+        int morphLemmaIdsCount = 0;
+        int nullStringId = -1;
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            final MorphData md = en.next();
+            Integer morphId = morphIds.get(md);
+            if (morphId == null) {
+                morphId = morphs.size();
+                morphIds.put(md, morphId);
+                morphs.add(md);
+                for (int i = 0; i < md.getLemmasCount(); i++) {
+                    final MorphData.Lemma lemma = md.getLemma(i);
+                    Integer lemmaId = lemmaIds.get(lemma);
+                    if (lemmaId == null) {
+                        lemmaId = lemmas.size();
+                        lemmaIds.put(lemma, lemmaId);
+                        lemmas.add(lemma);
+                        if (lemma.getLemma() == null) {
+                            if (nullStringId < 0) {
+                                nullStringId = strings.size();
+                                strings.add(null);
+                            }
+                        } else if (!stringIds.containsKey(lemma.getLemma())) {
+                            stringIds.put(lemma.getLemma(), strings.size());
+                            strings.add(lemma.getLemma());
+                        }
+                    }
+                    if (morphLemmaIdsCount == morphLemmaIds.length) {
+                        morphLemmaIds = Arrays.copyOf(morphLemmaIds, morphLemmaIdsCount * 2);
+                    }
+                    morphLemmaIds[morphLemmaIdsCount++] = lemmaId;
+                }
+            }
+            wordMorphs[words.size()] = morphId;
+            words.add(en.getCurrentKey());
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeByte((radix.getCaseSensitiveKeys() ? FLAG_CASE_SENSITIVE : 0)
+                | (radix.getAllowValueOverride() ? FLAG_ALLOW_VALUE_OVERRIDE : 0));
+
+        final Map<String, Integer> prefixes = dict.getPref() == null ? new TreeMap<String, Integer>() : new TreeMap<>(dict.getPref());
+        out.writeInt(prefixes.size());
+        for (Map.Entry<String, Integer> prefix : prefixes.entrySet()) {
+            out.writeShort(prefix.getKey().length());
+            out.writeChars(prefix.getKey());
+            out.writeInt(prefix.getValue());
+        }
+
+        out.writeInt(strings.size());
+        int totalChars = 0;
+        for (String s : strings) {
+            out.writeInt(s == null ? -1 : s.length());
+            totalChars += s == null ? 0 : s.length();
+        }
+        out.writeInt(totalChars);
+        for (String s : strings) {
+            if (s != null) out.writeChars(s);
+        }
+
+        out.writeInt(lemmas.size());
+        for (MorphData.Lemma lemma : lemmas) {
+            out.writeInt(lemma.getLemma() == null ? nullStringId : stringIds.get(lemma.getLemma()));
+        }
+        for (MorphData.Lemma lemma : lemmas) {
+            out.writeByte(lemma.getDescFlag().ordinal());
+        }
+        for (MorphData.Lemma lemma : lemmas) {
+            out.writeByte(lemma.getPrefix().ordinal());
+        }
+
+        out.writeInt(morphs.size());
+        for (MorphData md : morphs) {
+            out.writeShort(md.getPrefixes());
+        }
+        for (MorphData md : morphs) {
+            out.writeByte(md.haltIfFound() ? MORPH_HALT_IF_FOUND : 0);
+        }
+        int totalLemmaIds = 0;
+        for (MorphData md : morphs) {
+            final int count = md.hasLemmas() ? md.getLemmasCount() : -1;
+            out.writeInt(count);
+            totalLemmaIds += Math.max(count, 0);
+        }
+        out.writeInt(totalLemmaIds);
+        for (int i = 0; i < morphLemmaIdsCount; i++) {
+            out.writeInt(morphLemmaIds[i]);
+        }
+
+        out.writeInt(words.size());
+        int totalSuffixChars = 0;
+        String prev = "";
+        for (String word : words) {
+            final int shared = sharedPrefixLength(prev, word);
+            out.writeShort(shared);
+            totalSuffixChars += word.length() - shared;
+            prev = word;
+        }
+        prev = "";
+        for (String word : words) {
+            out.writeShort(word.length() - sharedPrefixLength(prev, word));
+            prev = word;
+        }
+        out.writeInt(totalSuffixChars);
+        prev = "";
+        for (String word : words) {
+            out.writeChars(word.substring(sharedPrefixLength(prev, word)));
+            prev = word;
+        }
+        for (int morphId : wordMorphs) {
+            out.writeInt(morphId);
+        }
+
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    /**
+     * Reads a dictionary written by write. The stream is read to its end, but not closed.
+     *
+     * @throws IOException if the stream doesn't hold a dictionary in this version of the format
+     */
+    public static DictHebMorph read(final InputStream stream) throws IOException {
+        final ByteBuffer in = ByteBuffer.wrap(readFully(stream));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a compiled HebMorph dictionary");
+            }
+            final int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported compiled dictionary version " + version + ", expected " + FORMAT_VERSION);
+            }
+            final int radixFlags = in.get();
+
+            final HashMap<String, Integer> prefixes = new HashMap<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                final String prefix = new String(getChars(in, in.getShort()));
+                prefixes.put(prefix, in.getInt());
+            }
+
+            final String[] strings = new String[in.getInt()];
+            final int[] stringLengths = getInts(in, strings.length);
+            final char[] stringChars = getChars(in, in.getInt());
+            for (int i = 0, pos = 0; i < strings.length; i++) {
+                if (stringLengths[i] >= 0) {
+                    strings[i] = new String(stringChars, pos, stringLengths[i]);
+                    pos += stringLengths[i];
+                }
+            }
+
+            final HeapLemmaTable lemmaTable = new HeapLemmaTable();
+            final int[] analyses = new int[in.getInt()];
+            final int[] lemmaStrings = getInts(in, analyses.length);
+            final byte[] descFlags = getBytes(in, analyses.length);
+            final byte[] prefixTypes = getBytes(in, analyses.length);
+            for (int i = 0; i < analyses.length; i++) {
+                analyses[i] = MorphData.packAnalysis(lemmaTable.add(strings[lemmaStrings[i]]), DESC_FLAGS[descFlags[i]], PREFIX_TYPES[prefixTypes[i]]);
+            }
+
+            final MorphData[] morphs = new MorphData[in.getInt()];
+            final short[] morphPrefixes = getShorts(in, morphs.length);
+            final byte[] morphFlags = getBytes(in, morphs.length);
+            final int[] lemmaCounts = getInts(in, morphs.length);
+            final int[] lemmaIds = getInts(in, in.getInt());
+            for (int i = 0, pos = 0; i < morphs.length; i++) {
+                final MorphData md = new MorphData(lemmaTable);
+                md.setPrefixes(morphPrefixes[i]);
+                md.setHaltIfFound((morphFlags[i] & MORPH_HALT_IF_FOUND) != 0);
+                if (lemmaCounts[i] >= 0) {
+                    final int[] mdAnalyses = new int[lemmaCounts[i]];
+                    for (int j = 0; j < mdAnalyses.length; j++) {
+                        mdAnalyses[j] = analyses[lemmaIds[pos++]];
+                    }
+                    md.setAnalyses(mdAnalyses);
+                }
+                morphs[i] = md.frozenCopy(); // shared by all the words written with it
+            }
+
+            final DictRadix<MorphData> radix = new DictRadix<>((radixFlags & FLAG_CASE_SENSITIVE) != 0);
+            radix.setAllowValueOverride((radixFlags & FLAG_ALLOW_VALUE_OVERRIDE) != 0);
+            final int wordCount = in.getInt();
+            final short[] shared = getShorts(in, wordCount);
+            final short[] suffixLengths = getShorts(in, wordCount);
+            final char[] suffixChars = getChars(in, in.getInt());
+            final int[] wordMorphs = getInts(in, wordCount);
+            // Words were written in sorted order, so the radix is built in one pass over them
+            final SortedDictRadixBuilder<MorphData> builder = new SortedDictRadixBuilder<>(radix);
+            char[] word = new char[32];
+            for (int i = 0, pos = 0; i < wordCount; i++) {
+                final int len = shared[i] + suffixLengths[i];
+                if (len > word.length) {
+                    word = Arrays.copyOf(word, Math.max(len, word.length * 2));
+                }
+                System.arraycopy(suffixChars, pos, word, shared[i], suffixLengths[i]);
+                pos += suffixLengths[i];
+                builder.add(word, 0, len, morphs[wordMorphs[i]]);
+            }
+            builder.build();
+
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Corrupt compiled HebMorph dictionary");
+            }
+            return new DictHebMorph(radix, prefixes, lemmaTable);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt compiled HebMorph dictionary", e);
+        }
+    }
+
+    private static int sharedPrefixLength(final String a, final String b) {
+        final int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static byte[] readFully(final InputStream stream) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        final byte[] buf = new byte[1 << 16];
+        int read;
+        while ((read = stream.read(buf)) > 0) {
+            bytes.write(buf, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] getBytes(final ByteBuffer in, final int count) {
+        final byte[] ret = new byte[count];
+        in.get(ret);
+        return ret;
+    }
+
+    private static short[] getShorts(final ByteBuffer in, final int count) {
+        final short[] ret = new short[count];
+        in.asShortBuffer().get(ret);
+        in.position(in.position() + count * 2);
+        return ret;
+    }
+
+    private static char[] getChars(final ByteBuffer in, final int count) {
+        final char[] ret = new char[count];
+        in.asCharBuffer().get(ret);
+        in.position(in.position() + count * 2);
+        return ret;
+    }
+
+    private static int[] getInts(final ByteBuffer in, final int count) {
+        final int[] ret = new int[count];
+        in.asIntBuffer().get(ret);
+        in.position(in.position() + count * 4);
+        return ret;
+    }
+}
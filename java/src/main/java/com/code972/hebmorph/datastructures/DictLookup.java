@@ -0,0 +1,72 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+
+import java.util.List;
+
+/**
+ * Read access to a dictionary of words, as required by the lemmatizer. Implemented by the mutable
+ * {@link DictRadix} and by compiled, read-only structures such as {@link DictFST}.
+ */
+public interface DictLookup<T> {
+    /**
+     * Exact lookup
+     *
+     * @param key The word to look up
+     * @return The data stored for the word, or null if the word isn't in the dictionary
+     */
+    T find(String key);
+
+    /**
+     * Exact lookup of the word in key[off, off + len)
+     *
+     * @return The data stored for the word, or null if the word isn't in the dictionary
+     */
+    T find(char[] key, int off, int len);
+
+    /**
+     * Lookup allowing for missing or superfluous letters, as dictated by the tolerance functions
+     *
+     * @return All words matched, or null if there were none
+     */
+    default List<LookupResult<T>> lookupTolerant(String key, LookupTolerators.ToleranceFunction[] tolFuncs) {
+        return lookupTolerant(key, tolFuncs, TolerantLookupLimits.UNLIMITED);
+    }
+
+    /**
+     * Tolerant lookup of the word in key[off, off + len)
+     *
+     * @return All words matched, or null if there were none
+     */
+    default List<LookupResult<T>> lookupTolerant(char[] key, int off, int len, LookupTolerators.ToleranceFunction[] tolFuncs) {
+        return lookupTolerant(key, off, len, tolFuncs, TolerantLookupLimits.UNLIMITED);
+    }
+
+    /**
+     * Tolerant lookup which stops exploring where the limits say so
+     *
+     * @return The words matched within the limits, or null if there were none
+     */
+    List<LookupResult<T>> lookupTolerant(String key, LookupTolerators.ToleranceFunction[] tolFuncs, TolerantLookupLimits limits);
+
+    List<LookupResult<T>> lookupTolerant(char[] key, int off, int len, LookupTolerators.ToleranceFunction[] tolFuncs, TolerantLookupLimits limits);
+
+    int getCount();
+}
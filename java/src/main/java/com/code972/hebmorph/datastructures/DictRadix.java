@@ -18,7 +18,6 @@
 package com.code972.hebmorph.datastructures;
 
 import com.code972.hebmorph.LookupTolerators;
-import com.code972.hebmorph.Reference;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
@@ -26,7 +25,7 @@ import java.util.Iterator;
 import java.util.List;
 
 
-public class DictRadix<T> implements Iterable<T> {
+public class DictRadix<T> implements Iterable<T>, DictLookup<T> {
     public class DictNode {
         private DictNode[] children;
         private char[] key;
@@ -68,128 +67,86 @@ public class DictRadix<T> implements Iterable<T> {
         }
     }
 
-    protected class TolerantLookupCrawler {
-        protected class MatchCandidate {
-            public MatchCandidate(byte _keyPos, String _word, float _score) {
-                this.keyPos = _keyPos;
-                this.word = _word;
-                this.score = _score;
-            }
-
-            private byte keyPos;
-            private String word;
-            private float score = 1.0f;
-
-            public byte getKeyPos() {
-                return keyPos;
-            }
-
-            public void setKeyPos(byte keyPos) {
-                this.keyPos = keyPos;
-            }
-
-            public String getWord() {
-                return word;
-            }
-
-            public void setWord(String word) {
-                this.word = word;
-            }
-
-            public float getScore() {
-                return score;
-            }
-
-            public void setScore(float score) {
-                this.score = score;
-            }
+    // Shared by all radixes; see TolerantCrawler.release
+    private static final ThreadLocal<TolerantLookupCrawler<?>> crawlers = new ThreadLocal<TolerantLookupCrawler<?>>() {
+        @Override
+        protected TolerantLookupCrawler<?> initialValue() {
+            return new TolerantLookupCrawler<Object>();
         }
+    };
 
-        public TolerantLookupCrawler(LookupTolerators.ToleranceFunction[] _tolFuncs) {
-            this.toleranceFunctions = _tolFuncs;
-        }
+    @SuppressWarnings("unchecked")
+    private static <T> TolerantLookupCrawler<T> crawler() {
+        return (TolerantLookupCrawler<T>) crawlers.get();
+    }
 
-        private LookupTolerators.ToleranceFunction[] toleranceFunctions;
+    private static final class TolerantLookupCrawler<T> extends TolerantCrawler<T> {
+        private DictRadix<T> dict; // only set during a lookup
 
-        private char[] key;
+        @Override
+        protected void crawlRoot() {
+            crawl(dict.getRootNode(), 0, 0, 1.0f);
+        }
 
-        public List<LookupResult> lookupTolerant(String strKey) {
-            final List<LookupResult> resultSet = new ArrayList<LookupResult>();
-            key = strKey.toCharArray();
-            lookupTolerantImpl(getRootNode(), new MatchCandidate((byte) 0, "", 1.0f), resultSet);
-            if (resultSet.size() > 0) {
-                return resultSet;
-            }
-            return null;
+        @Override
+        protected void release() {
+            dict = null;
         }
 
-        private void lookupTolerantImpl(DictNode cur, MatchCandidate mc, List<LookupResult> resultSet) {
+        // Try all children of a node whose key was fully consumed
+        private void crawl(final DictRadix<T>.DictNode cur, final int keyPos, final int wordLen, final float score) {
             if (cur.getChildren() == null) {
                 return;
             }
-
-            //System.out.println("--------------------------");
-            //System.out.println(String.format("Processing children for word %1$s", mc.Word));
-            for (int childPos = 0; childPos < cur.getChildren().length; childPos++) {
-                DictNode child = cur.getChildren()[childPos];
-                doKeyMatching(child, (byte) 0, mc, resultSet);
+            for (DictRadix<T>.DictNode child : cur.getChildren()) {
+                matchChar(child, 0, keyPos, wordLen, score);
             }
-            //System.out.println(String.format("Completed processing node children for word %1$s", mc.Word));
-            //System.out.println("--------------------------");
         }
 
-        private void doKeyMatching(DictNode node, byte nodeKeyPos, MatchCandidate mc, List<LookupResult> resultSet) {
-            byte currentKeyPos = mc.keyPos, startingNodeKeyPos = nodeKeyPos;
-            while ((nodeKeyPos < node.getKey().length) && (currentKeyPos < key.length)) {
-                // toleration
-                for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
-                    byte tmpKeyPos = mc.keyPos;
-                    float tmpScore = mc.getScore();
-                    Reference<Byte> tempRefObject = new Reference<Byte>(tmpKeyPos);
-                    Reference<Float> tempRefObject2 = new Reference<Float>(tmpScore);
-                    Integer tret = tf.tolerate(key, tempRefObject, mc.getWord(), tempRefObject2, node.getKey()[nodeKeyPos]);
-                    tmpKeyPos = tempRefObject.ref;
-                    tmpScore = tempRefObject2.ref;
-                    if (tret != null) {
-                        //System.out.println(String.format("%1$s tolerated a char, attempting word %2$s", tf.getClass().getName(), mc.Word + node.getKey()[nodeKeyPos]));
-
-                        String consumedLetters = "";
-                        if ((tret > 0) && (tret <= node.getKey().length)) {
-                            consumedLetters = new String(node.getKey(), nodeKeyPos, tret);
-                        }
-                        MatchCandidate nmc = new MatchCandidate(tmpKeyPos, mc.getWord() + consumedLetters, tmpScore);
-                        if ((nodeKeyPos + tret) == node.getKey().length) {
-                            lookupTolerantImpl(node, nmc, resultSet);
-                        } else {
-                            doKeyMatching(node, (byte) (nodeKeyPos + tret), nmc, resultSet);
-                        }
-                    }
-                }
+        // Match the node key char at nodeKeyPos against the key, directly or through toleration
+        private void matchChar(final DictRadix<T>.DictNode node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (keyPos >= keyLen || !enter(score)) {
+                return;
+            }
+            final char c = node.getKey()[nodeKeyPos];
 
-                // standard key matching
-                if (node.getKey()[nodeKeyPos] != key[currentKeyPos]) {
-                    break;
+            // toleration
+            for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
+                final int toleration = tf.tolerate(key, keyLen, keyPos, word, wordLen, c);
+                if (toleration == LookupTolerators.NOT_TOLERATED) {
+                    continue;
+                }
+                final float tolScore = score * LookupTolerators.scoreFactor(toleration);
+                if (LookupTolerators.consumesChar(toleration)) {
+                    setWordChar(wordLen, c);
+                    advance(node, nodeKeyPos, keyPos, wordLen + 1, tolScore);
+                } else {
+                    matchChar(node, nodeKeyPos, keyPos + 1, wordLen, tolScore);
                 }
-
-                //System.out.println(String.format("Matched char: %1$s", key[currentKeyPos]));
-                currentKeyPos++;
-                nodeKeyPos++;
             }
 
-            if (nodeKeyPos == node.getKey().length) {
-                if (currentKeyPos == key.length) {
-                    //System.out.println(String.format("Consumed the whole key"));
-                    if (node.getValue() != null) {
-                        resultSet.add(new LookupResult(mc.getWord() + new String(node.getKey(), startingNodeKeyPos, nodeKeyPos - startingNodeKeyPos), node.getValue(), mc.getScore()));
-                    }
-                } else {
-                    MatchCandidate nmc = new MatchCandidate(currentKeyPos, mc.getWord() + new String(node.getKey(), startingNodeKeyPos, nodeKeyPos - startingNodeKeyPos), mc.getScore());
-                    lookupTolerantImpl(node, nmc, resultSet);
+            // standard key matching
+            if (c != key[keyPos]) {
+                return;
+            }
+            setWordChar(wordLen, c);
+            if (keyPos + 1 == keyLen) {
+                if (nodeKeyPos + 1 == node.getKey().length && node.getValue() != null) {
+                    addResult(wordLen + 1, node.getValue(), score);
                 }
+            } else {
+                advance(node, nodeKeyPos, keyPos + 1, wordLen + 1, score);
             }
         }
-    }
 
+        private void advance(final DictRadix<T>.DictNode node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (nodeKeyPos + 1 == node.getKey().length) {
+                crawl(node, keyPos, wordLen, score);
+            } else {
+                matchChar(node, nodeKeyPos + 1, keyPos, wordLen, score);
+            }
+        }
+    }
 
     protected final DictNode m_root;
 
@@ -199,6 +156,7 @@ public class DictRadix<T> implements Iterable<T> {
 
     protected int m_nCount = 0;
 
+    @Override
     public int getCount() {
         return m_nCount;
     }
@@ -215,6 +173,10 @@ public class DictRadix<T> implements Iterable<T> {
 
     private final boolean caseSensitiveKeys;
 
+    public boolean getCaseSensitiveKeys() {
+        return caseSensitiveKeys;
+    }
+
     public DictRadix() {
         this(true);
     }
@@ -243,16 +205,35 @@ public class DictRadix<T> implements Iterable<T> {
     public T lookup(final char[] key, final int keyPos, final int keyLength, final int keyOffset, final boolean allowPartial) throws IllegalArgumentException {
         final DictNode dn = lookupImpl(key, keyPos, keyLength, keyOffset, allowPartial);
         if (dn == null)
-            return null;
+            throw new IllegalArgumentException();
 
         return dn.getValue();
     }
 
+    @Override
+    public T find(final String key) {
+        return find(key.toCharArray(), 0, key.length());
+    }
+
+    @Override
+    public T find(final char[] key, final int off, final int len) {
+        final DictNode dn = lookupImpl(key, off, len, off, false);
+        return dn == null ? null : dn.getValue();
+    }
+
     /**
-     * Simple, efficient method for exact lookup in the radix
-     *
-     * @param key
-     * @return
+     * Checks whether any key in the radix starts with the given chars (or is equal to them)
+     */
+    public boolean containsPrefix(final char[] key, final int off, final int len) {
+        return len > 0 && lookupImpl(key, off, len, off, true) != null;
+    }
+
+    // Returned by lookupImpl when a partial match is allowed and the key ended in the middle of a node's key
+    private final DictNode partialMatch = new DictNode();
+
+    /**
+     * Simple, efficient method for exact lookup in the radix. Returns null if the key wasn't found; misses
+     * are common on the lemmatizer's and tokenizer's hot paths, so this never throws.
      */
     private DictNode lookupImpl(final char[] key, int keyPos, final int keyLength, final int keyOffset, final boolean allowPartial) {
         int n;
@@ -282,61 +263,36 @@ public class DictRadix<T> implements Iterable<T> {
                         break;
                     }
                 } else if (allowPartial && keyPos - keyOffset == keyLength) {
-                    return null;
+                    return partialMatch;
                 } else if ((n > 0) || (childPos + 1 == cur.getChildren().length)) { // We looked at all the node's children -  Incomplete match to child's key (worths nothing)
-                    throw new IllegalArgumentException();
+                    return null;
                 }
             }
         }
 
         if (allowPartial && keyLength == keyPos - keyOffset)
-            return null;
+            return partialMatch;
 
-        throw new IllegalArgumentException();
+        return null;
     }
 
-    public class LookupResult {
-        public void setScore(float score) {
-            this.score = score;
-        }
-
-        public float getScore() {
-            return score;
-        }
-
-        public void setData(T data) {
-            this.data = data;
-        }
-
-        public T getData() {
-            return data;
-        }
-
-        public void setWord(String word) {
-            this.word = word;
-        }
-
-        public String getWord() {
-            return word;
-        }
-
-        public LookupResult(String _word, T _data, float _score) {
-            setWord(_word);
-            setData(_data);
-            setScore(_score);
-        }
-
-        private String word;
-        private T data;
-        private float score;
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final String strKey, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(strKey, tolFuncs, limits);
     }
 
-    public List<LookupResult> lookupTolerant(String strKey, LookupTolerators.ToleranceFunction[] tolFuncs) {
-        TolerantLookupCrawler tlc = new TolerantLookupCrawler(tolFuncs);
-        return tlc.lookupTolerant(strKey);
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(key, off, len, tolFuncs, limits);
     }
 
-    static private int getCharArrayLength(char[] ar) {
+    static int getCharArrayLength(char[] ar) {
         int i = 0;
         while ((ar.length > i) && (ar[i] != '\0')) {
             i++;
@@ -505,6 +461,42 @@ public class DictRadix<T> implements Iterable<T> {
         m_nCount = 0;
     }
 
+    /**
+     * Joins radixes built separately, e.g. in parallel, into one, by moving their root's children under a new
+     * root. No two shards may have keys starting with the same char, and shards must come sorted by the first
+     * char of their keys. The shards shouldn't be used afterwards.
+     */
+    public static <T> DictRadix<T> merge(final List<DictRadix<T>> shards, final boolean caseSensitiveKeys) {
+        final DictRadix<T> ret = new DictRadix<>(caseSensitiveKeys);
+        final List<DictRadix<T>.DictNode> children = new ArrayList<>();
+        char last = 0;
+        for (DictRadix<T> shard : shards) {
+            if (shard.getCaseSensitiveKeys() != caseSensitiveKeys) {
+                throw new IllegalArgumentException("All shards must have the same key case sensitivity");
+            }
+            if (shard.m_root.getValue() != null) {
+                throw new IllegalArgumentException("Shards can't have an empty key");
+            }
+            if (shard.m_root.getChildren() == null) {
+                continue;
+            }
+            for (DictRadix<T>.DictNode child : shard.m_root.getChildren()) {
+                if (!children.isEmpty() && child.getKey()[0] <= last) {
+                    throw new IllegalArgumentException("Shards must be sorted, and not share first chars");
+                }
+                last = child.getKey()[0];
+                children.add(child);
+            }
+            ret.m_nCount += shard.m_nCount;
+        }
+        if (!children.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            final DictRadix<T>.DictNode[] array = (DictRadix<T>.DictNode[]) Array.newInstance(DictRadix.DictNode.class, children.size());
+            ret.m_root.setChildren(children.toArray(array));
+        }
+        return ret;
+    }
+
 
     public class RadixEnumerator implements Iterator<T> {
         private DictRadix<T> radix;
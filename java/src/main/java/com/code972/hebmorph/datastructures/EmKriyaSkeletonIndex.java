@@ -0,0 +1,364 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.HebrewCharacters;
+import com.code972.hebmorph.LookupTolerators;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A secondary index over a dictionary for tolerant lookups made with the Em Kriya tolerators. Those only ever add
+ * or drop a Yud or a Vav after the first letter, so a word can only be tolerated into a dictionary word with the
+ * same skeleton - its first letter followed by its other letters except Yud and Vav.
+ * <p>
+ * The index groups the dictionary words by skeleton, so a tolerant lookup is a hash lookup of the key's skeleton
+ * followed by running the tolerators along each candidate word, instead of a crawl over the whole trie. Results
+ * and scores are the same as the trie's, but candidates are verified in sorted order, so results may come in a
+ * different order. Lookups with tolerators other than the Em Kriya ones are rejected, see {@link #supports}.
+ * <p>
+ * The index is a snapshot; it doesn't see words added to the source radix after it was built.
+ */
+public class EmKriyaSkeletonIndex<T> implements DictLookup<T> {
+    private final char[] chars;     // all words, grouped by skeleton and sorted within a group
+    private final int[] wordStart;  // word i is chars[wordStart[i], wordStart[i + 1])
+    private final Object[] values;
+    private final int[] groupStart; // group g is words [groupStart[g], groupStart[g + 1])
+    private final int[] slots;      // open addressing table of group + 1 by skeleton hash, 0 for empty slots
+    private final int slotMask;
+
+    public EmKriyaSkeletonIndex(final DictRadix<T> radix) {
+        this(radix, Function.<T>identity());
+    }
+
+    /**
+     * Indexes the radix, storing valueMapper's result for every word instead of the word's value
+     */
+    public <S> EmKriyaSkeletonIndex(final DictRadix<S> radix, final Function<? super S, ? extends T> valueMapper) {
+        final int count = radix.getCount();
+        final String[] words = new String[count];
+        final String[] skeletons = new String[count];
+        final Object[] radixValues = new Object[count];
+        final char[] skel = new char[32];
+        int n = 0;
+        final DictRadix<S>.RadixEnumerator en = (DictRadix<S>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            radixValues[n] = valueMapper.apply(en.next());
+            words[n] = en.getCurrentKey();
+            final char[] w = words[n].toCharArray();
+            final char[] s = w.length > skel.length ? new char[w.length] : skel;
+            skeletons[n] = new String(s, 0, skeleton(w, 0, w.length, s));
+            n++;
+        }
+
+        // Sorting is stable, so words keep their sorted order within a group
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return skeletons[a].compareTo(skeletons[b]);
+            }
+        });
+
+        int totalChars = 0;
+        int groups = 0;
+        for (int i = 0; i < n; i++) {
+            totalChars += words[i].length();
+            if (i == 0 || !skeletons[order[i]].equals(skeletons[order[i - 1]])) {
+                groups++;
+            }
+        }
+        chars = new char[totalChars];
+        wordStart = new int[n + 1];
+        values = new Object[n];
+        groupStart = new int[groups + 1];
+        int slotCount = 1;
+        while (slotCount < groups * 2) {
+            slotCount <<= 1;
+        }
+        slots = new int[slotCount];
+        slotMask = slotCount - 1;
+
+        int pos = 0, g = 0;
+        for (int i = 0; i < n; i++) {
+            final String w = words[order[i]];
+            w.getChars(0, w.length(), chars, pos);
+            wordStart[i] = pos;
+            values[i] = radixValues[order[i]];
+            pos += w.length();
+            if (i == 0 || !skeletons[order[i]].equals(skeletons[order[i - 1]])) {
+                groupStart[g] = i;
+                final String s = skeletons[order[i]];
+                int slot = hash(s.toCharArray(), s.length()) & slotMask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & slotMask;
+                }
+                slots[slot] = g + 1;
+                g++;
+            }
+        }
+        wordStart[n] = pos;
+        groupStart[groups] = n;
+    }
+
+    /**
+     * @return true if the tolerators are all Em Kriya tolerators, which is what this index can serve
+     */
+    public static boolean supports(final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        for (LookupTolerators.ToleranceFunction tf : tolFuncs) {
+            if (!(tf instanceof LookupTolerators.TolerateEmKryiaYud || tf instanceof LookupTolerators.TolerateEmKryiaVav
+                    || tf instanceof LookupTolerators.TolerateNonDoubledConsonantVav)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getCount() {
+        return values.length;
+    }
+
+    /**
+     * @return The number of distinct skeletons, i.e. of candidate groups
+     */
+    public int getSkeletonsCount() {
+        return groupStart.length - 1;
+    }
+
+    @Override
+    public T find(final String key) {
+        return find(key.toCharArray(), 0, key.length());
+    }
+
+    @Override
+    public T find(final char[] key, final int off, final int len) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        final int skelLen = crawler.skeletonOf(key, off, len);
+        final int g = group(crawler.skel, skelLen);
+        if (g < 0) {
+            return null;
+        }
+        for (int i = groupStart[g]; i < groupStart[g + 1]; i++) {
+            if (wordEquals(i, key, off, len)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final String key, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        checkSupported(tolFuncs);
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(key, tolFuncs, limits);
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        checkSupported(tolFuncs);
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(key, off, len, tolFuncs, limits);
+    }
+
+    private static void checkSupported(final LookupTolerators.ToleranceFunction[] tolFuncs) {
+        if (!supports(tolFuncs)) {
+            throw new IllegalArgumentException("The skeleton index only serves lookups with the Em Kriya tolerators");
+        }
+    }
+
+    private static boolean isEmKriya(final char c) {
+        return c == HebrewCharacters.YOD || c == HebrewCharacters.VAV;
+    }
+
+    /**
+     * Writes the skeleton of word[off, off + len) to skel, which must be at least len chars long
+     *
+     * @return The skeleton's length
+     */
+    private static int skeleton(final char[] word, final int off, final int len, final char[] skel) {
+        if (len == 0) {
+            return 0;
+        }
+        skel[0] = word[off];
+        int skelLen = 1;
+        for (int i = off + 1; i < off + len; i++) {
+            if (!isEmKriya(word[i])) {
+                skel[skelLen++] = word[i];
+            }
+        }
+        return skelLen;
+    }
+
+    private static int hash(final char[] skel, final int skelLen) {
+        int h = 0;
+        for (int i = 0; i < skelLen; i++) {
+            h = 31 * h + skel[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The group of words with the skeleton in skel[0, skelLen), or -1 if there is none
+     */
+    private int group(final char[] skel, final int skelLen) {
+        int slot = hash(skel, skelLen) & slotMask;
+        while (slots[slot] != 0) {
+            final int g = slots[slot] - 1;
+            if (skeletonEquals(groupStart[g], skel, skelLen)) {
+                return g;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    private boolean skeletonEquals(final int w, final char[] skel, final int skelLen) {
+        final int end = wordStart[w + 1];
+        int pos = wordStart[w];
+        if (pos == end) {
+            return skelLen == 0;
+        }
+        if (skelLen == 0 || chars[pos++] != skel[0]) {
+            return false;
+        }
+        int s = 1;
+        for (; pos < end; pos++) {
+            if (isEmKriya(chars[pos])) {
+                continue;
+            }
+            if (s == skelLen || chars[pos] != skel[s++]) {
+                return false;
+            }
+        }
+        return s == skelLen;
+    }
+
+    private boolean wordEquals(final int w, final char[] key, final int off, final int len) {
+        if (wordStart[w + 1] - wordStart[w] != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (chars[wordStart[w] + i] != key[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Shared by all indexes; see TolerantCrawler.release. find only borrows the skeleton buffer.
+    private static final ThreadLocal<TolerantLookupCrawler<?>> crawlers = new ThreadLocal<TolerantLookupCrawler<?>>() {
+        @Override
+        protected TolerantLookupCrawler<?> initialValue() {
+            return new TolerantLookupCrawler<Object>();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static <T> TolerantLookupCrawler<T> crawler() {
+        return (TolerantLookupCrawler<T>) crawlers.get();
+    }
+
+    /**
+     * Crawls each candidate word as if it were a trie with a single branch
+     */
+    private static final class TolerantLookupCrawler<T> extends TolerantCrawler<T> {
+        private char[] skel = new char[32];
+        private EmKriyaSkeletonIndex<T> dict; // only set during a lookup
+
+        int skeletonOf(final char[] word, final int off, final int len) {
+            if (len > skel.length) {
+                skel = new char[len];
+            }
+            return skeleton(word, off, len, skel);
+        }
+
+        @Override
+        protected void crawlRoot() {
+            if (keyLen == 0) {
+                return;
+            }
+            final int skelLen = skeletonOf(key, 0, keyLen);
+            final int g = dict.group(skel, skelLen);
+            if (g < 0) {
+                return;
+            }
+            for (int w = dict.groupStart[g]; w < dict.groupStart[g + 1]; w++) {
+                matchChar(w, dict.wordStart[w], 0, 0, 1.0f);
+            }
+        }
+
+        @Override
+        protected void release() {
+            dict = null;
+        }
+
+        // Match chars[pos], a char of word w, against the key, directly or through toleration
+        private void matchChar(final int w, final int pos, final int keyPos, final int wordLen, final float score) {
+            if (keyPos >= keyLen || !enter(score)) {
+                return;
+            }
+            final char c = dict.chars[pos];
+
+            // toleration
+            for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
+                final int toleration = tf.tolerate(key, keyLen, keyPos, word, wordLen, c);
+                if (toleration == LookupTolerators.NOT_TOLERATED) {
+                    continue;
+                }
+                final float tolScore = score * LookupTolerators.scoreFactor(toleration);
+                if (LookupTolerators.consumesChar(toleration)) {
+                    setWordChar(wordLen, c);
+                    if (pos + 1 < dict.wordStart[w + 1]) {
+                        matchChar(w, pos + 1, keyPos, wordLen + 1, tolScore);
+                    }
+                } else {
+                    matchChar(w, pos, keyPos + 1, wordLen, tolScore);
+                }
+            }
+
+            // standard key matching
+            if (c != key[keyPos]) {
+                return;
+            }
+            setWordChar(wordLen, c);
+            if (keyPos + 1 == keyLen) {
+                if (pos + 1 == dict.wordStart[w + 1]) {
+                    addResult(wordLen + 1, dict.value(w), score);
+                }
+            } else if (pos + 1 < dict.wordStart[w + 1]) {
+                matchChar(w, pos + 1, keyPos + 1, wordLen + 1, score);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(final int w) {
+        return (T) values[w];
+    }
+}
@@ -0,0 +1,318 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A read-only copy of a DictRadix, flattened into primitive arrays. Nodes are numbered breadth-first, so
+ * the children of every node are a contiguous range of node numbers, sorted by their first char. All node
+ * keys live in one shared char pool, and values are stored as ordinals into a table of distinct values.
+ * <p>
+ * This trades the DictNode object per node (with its own key and children arrays) for a handful of flat
+ * arrays, which take a fraction of the memory and are much friendlier to the CPU cache on lookups.
+ */
+public class FrozenDictRadix<T> implements DictLookup<T> {
+    private static final int NO_VALUE = -1;
+
+    private final char[] keys; // all node keys, concatenated
+    private final int[] keyStart; // node i's key is keys[keyStart[i], keyStart[i + 1])
+    private final int[] firstChild; // node i's children are nodes [firstChild[i], firstChild[i + 1])
+    private final int[] valueOrds; // ordinal into values, or NO_VALUE
+    private final Object[] values;
+    private final int count;
+    private final boolean caseSensitiveKeys;
+
+    public FrozenDictRadix(final DictRadix<T> radix) {
+        this(radix, Function.<T>identity());
+    }
+
+    /**
+     * Copies the radix, storing valueMapper's result for every distinct value in it instead of the value itself
+     */
+    public <S> FrozenDictRadix(final DictRadix<S> radix, final Function<? super S, ? extends T> valueMapper) {
+        final List<DictRadix<S>.DictNode> nodes = new ArrayList<>();
+        nodes.add(radix.getRootNode());
+        int keysLength = 0;
+        for (int i = 0; i < nodes.size(); i++) { // breadth-first
+            final DictRadix<S>.DictNode node = nodes.get(i);
+            if (node.getKey() != null) {
+                keysLength += node.getKey().length;
+            }
+            if (node.getChildren() != null) {
+                for (DictRadix<S>.DictNode child : node.getChildren()) {
+                    nodes.add(child);
+                }
+            }
+        }
+
+        final int nodesCount = nodes.size();
+        keys = new char[keysLength];
+        keyStart = new int[nodesCount + 1];
+        firstChild = new int[nodesCount + 1];
+        valueOrds = new int[nodesCount];
+        final IdentityHashMap<S, Integer> ordinals = new IdentityHashMap<>();
+        final List<T> distinctValues = new ArrayList<>();
+
+        int keyPos = 0, nextChild = 1;
+        for (int i = 0; i < nodesCount; i++) {
+            final DictRadix<S>.DictNode node = nodes.get(i);
+            keyStart[i] = keyPos;
+            if (node.getKey() != null) {
+                System.arraycopy(node.getKey(), 0, keys, keyPos, node.getKey().length);
+                keyPos += node.getKey().length;
+            }
+            firstChild[i] = nextChild;
+            if (node.getChildren() != null) {
+                nextChild += node.getChildren().length;
+            }
+
+            final S value = node.getValue();
+            if (value == null) {
+                valueOrds[i] = NO_VALUE;
+            } else {
+                Integer ord = ordinals.get(value);
+                if (ord == null) {
+                    ord = distinctValues.size();
+                    ordinals.put(value, ord);
+                    distinctValues.add(valueMapper.apply(value));
+                }
+                valueOrds[i] = ord;
+            }
+        }
+        keyStart[nodesCount] = keyPos;
+        firstChild[nodesCount] = nextChild;
+
+        values = distinctValues.toArray();
+        count = radix.getCount();
+        caseSensitiveKeys = radix.getCaseSensitiveKeys();
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    public int getNodesCount() {
+        return valueOrds.length;
+    }
+
+    /**
+     * @return Heap used by the trie arrays, not including the values it points to
+     */
+    public long ramBytesUsed() {
+        return 2L * keys.length + 4L * (keyStart.length + firstChild.length + valueOrds.length) + 8L * values.length;
+    }
+
+    @Override
+    public T find(final String key) {
+        return find(key.toCharArray(), 0, key.length());
+    }
+
+    @Override
+    public T find(final char[] key, final int off, final int len) {
+        final int node = findNode(key, off, len);
+        return node < 0 ? null : value(valueOrds[node]);
+    }
+
+    // Returns the node the key ends at, or -1 if there's no such node
+    private int findNode(final char[] key, final int off, final int len) {
+        final int end = off + len;
+        int node = 0, keyPos = off;
+        while (keyPos < end) {
+            final int child = findChild(node, keyChar(key[keyPos]));
+            if (child < 0) {
+                return -1;
+            }
+
+            // The first char matched, now match the rest of the child's key
+            final int childKeyEnd = keyStart[child + 1];
+            int n = keyStart[child] + 1;
+            keyPos++;
+            while (n < childKeyEnd) {
+                if (keyPos == end || keys[n] != keyChar(key[keyPos])) {
+                    return -1;
+                }
+                n++;
+                keyPos++;
+            }
+            node = child;
+        }
+        return node == 0 ? -1 : node;
+    }
+
+    /**
+     * Walks the trie once along key[off + len - 1], key[off + len - 2], ..., key[off], and for every key matched
+     * on the way - that is, for every suffix key[off + p, off + len) of the slice whose reverse is in the trie -
+     * stores its value in found[p]. Only suffixes with p &lt;= maxP are stored; found[0, maxP] is cleared first.
+     */
+    void findReversedSuffixes(final char[] key, final int off, final int len, final int maxP, final Object[] found) {
+        for (int p = 0; p <= maxP; p++) {
+            found[p] = null;
+        }
+        int node = 0, keyPos = off + len - 1;
+        while (keyPos >= off) {
+            final int child = findChild(node, keyChar(key[keyPos]));
+            if (child < 0) {
+                return;
+            }
+
+            final int childKeyEnd = keyStart[child + 1];
+            int n = keyStart[child] + 1;
+            keyPos--;
+            while (n < childKeyEnd) {
+                if (keyPos < off || keys[n] != keyChar(key[keyPos])) {
+                    return;
+                }
+                n++;
+                keyPos--;
+            }
+            node = child;
+
+            final int p = keyPos + 1 - off;
+            if (p <= maxP && valueOrds[node] != NO_VALUE) {
+                found[p] = values[valueOrds[node]];
+            }
+        }
+    }
+
+    // Binary search for the child whose key starts with c
+    private int findChild(final int node, final char c) {
+        int lo = firstChild[node], hi = firstChild[node + 1] - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final char midChar = keys[keyStart[mid]];
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private char keyChar(final char c) {
+        return caseSensitiveKeys ? c : Character.toLowerCase(c);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(final int ord) {
+        return ord == NO_VALUE ? null : (T) values[ord];
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final String strKey, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(strKey, tolFuncs, limits);
+    }
+
+    @Override
+    public List<LookupResult<T>> lookupTolerant(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                               final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler<T> crawler = crawler();
+        crawler.dict = this;
+        return crawler.lookup(key, off, len, tolFuncs, limits);
+    }
+
+    // Shared by all radixes; see TolerantCrawler.release
+    private static final ThreadLocal<TolerantLookupCrawler<?>> crawlers = new ThreadLocal<TolerantLookupCrawler<?>>() {
+        @Override
+        protected TolerantLookupCrawler<?> initialValue() {
+            return new TolerantLookupCrawler<Object>();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static <T> TolerantLookupCrawler<T> crawler() {
+        return (TolerantLookupCrawler<T>) crawlers.get();
+    }
+
+    private static final class TolerantLookupCrawler<T> extends TolerantCrawler<T> {
+        private FrozenDictRadix<T> dict; // only set during a lookup
+
+        @Override
+        protected void crawlRoot() {
+            crawl(0, 0, 0, 1.0f);
+        }
+
+        @Override
+        protected void release() {
+            dict = null;
+        }
+
+        // Try all children of a node whose key was fully consumed
+        private void crawl(final int node, final int keyPos, final int wordLen, final float score) {
+            for (int child = dict.firstChild[node]; child < dict.firstChild[node + 1]; child++) {
+                matchChar(child, dict.keyStart[child], keyPos, wordLen, score);
+            }
+        }
+
+        // Match the node key char at nodeKeyPos against the key, directly or through toleration
+        private void matchChar(final int node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (keyPos >= keyLen || !enter(score)) {
+                return;
+            }
+            final char c = dict.keys[nodeKeyPos];
+
+            // toleration
+            for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
+                final int toleration = tf.tolerate(key, keyLen, keyPos, word, wordLen, c);
+                if (toleration == LookupTolerators.NOT_TOLERATED) {
+                    continue;
+                }
+                final float tolScore = score * LookupTolerators.scoreFactor(toleration);
+                if (LookupTolerators.consumesChar(toleration)) {
+                    setWordChar(wordLen, c);
+                    advance(node, nodeKeyPos, keyPos, wordLen + 1, tolScore);
+                } else {
+                    matchChar(node, nodeKeyPos, keyPos + 1, wordLen, tolScore);
+                }
+            }
+
+            // standard key matching
+            if (c != key[keyPos]) {
+                return;
+            }
+            setWordChar(wordLen, c);
+            if (keyPos + 1 == keyLen) {
+                if (nodeKeyPos + 1 == dict.keyStart[node + 1] && dict.valueOrds[node] != NO_VALUE) {
+                    addResult(wordLen + 1, dict.value(dict.valueOrds[node]), score);
+                }
+            } else {
+                advance(node, nodeKeyPos, keyPos + 1, wordLen + 1, score);
+            }
+        }
+
+        private void advance(final int node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (nodeKeyPos + 1 == dict.keyStart[node + 1]) {
+                crawl(node, keyPos, wordLen, score);
+            } else {
+                matchChar(node, nodeKeyPos + 1, keyPos, wordLen, score);
+            }
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.DescFlag;
+import com.code972.hebmorph.LemmaTable;
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.PrefixType;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A read-only dictionary which stays in a memory-mapped file. The trie has the layout of a FrozenDictRadix, and
+ * the MorphData, lemmas and lemma strings are stored as tables next to it, so the heap holds little more than the
+ * buffer objects: the OS page cache shares the file between all processes using it, and the GC never scans it.
+ * MorphData is decoded from the file on every hit, so pair this with a LemmatizationCache when lookups repeat.
+ * <p>
+ * Files are written by {@link #write} and opened by {@link #load}, which returns a DictHebMorph to use like any
+ * other. A mapping stays valid until the dictionary is garbage collected.
+ */
+public class MappedDictionary implements DictLookup<MorphData> {
+    private static final int MAGIC = 0x444D4D48; // "HMMD", little-endian
+
+    /**
+     * Version of the format written; load rejects any other version
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int NO_VALUE = -1, NO_STRING = -1;
+    private static final int FLAG_CASE_SENSITIVE = 1;
+    private static final int MORPH_HALT_IF_FOUND = 1, MORPH_HAS_LEMMAS = 2;
+
+    // Sections in file order; the header holds the magic, version, flags, word count and each section's offset and length
+    private static final int KEYS = 0, KEY_START = 1, FIRST_CHILD = 2, VALUE_ORDS = 3, MORPH_START = 4, MORPHS = 5,
+            LEMMA_STRINGS = 6, LEMMA_FLAGS = 7, STRING_START = 8, STRING_CHARS = 9, PREFIXES = 10, SECTIONS = 11;
+    private static final int HEADER_SIZE = 4 * (4 + 2 * SECTIONS);
+
+    private static final DescFlag[] DESC_FLAGS = DescFlag.values();
+    private static final PrefixType[] PREFIX_TYPES = PrefixType.values();
+
+    private final ByteBuffer buffer;
+    private final CharBuffer keys;
+    private final IntBuffer keyStart, firstChild, valueOrds;
+    private final IntBuffer morphStart;
+    private final ByteBuffer morphs; // per MorphData: short prefixes, byte flags, byte padding, int lemma ids
+    private final IntBuffer lemmaStrings;
+    private final ShortBuffer lemmaFlags; // DescFlag ordinal << 8 | PrefixType ordinal
+    private final IntBuffer stringStart;
+    private final CharBuffer stringChars;
+    private final ByteBuffer prefixes;
+    private final int count;
+    private final boolean caseSensitiveKeys;
+
+    private MappedDictionary(final ByteBuffer mapped) throws IOException {
+        buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped HebMorph dictionary");
+        }
+        final int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported mapped dictionary version " + version + ", expected " + FORMAT_VERSION);
+        }
+        caseSensitiveKeys = (buffer.getInt(8) & FLAG_CASE_SENSITIVE) != 0;
+        count = buffer.getInt(12);
+
+        keys = section(KEYS).asCharBuffer();
+        keyStart = section(KEY_START).asIntBuffer();
+        firstChild = section(FIRST_CHILD).asIntBuffer();
+        valueOrds = section(VALUE_ORDS).asIntBuffer();
+        morphStart = section(MORPH_START).asIntBuffer();
+        morphs = section(MORPHS);
+        lemmaStrings = section(LEMMA_STRINGS).asIntBuffer();
+        lemmaFlags = section(LEMMA_FLAGS).asShortBuffer();
+        stringStart = section(STRING_START).asIntBuffer();
+        stringChars = section(STRING_CHARS).asCharBuffer();
+        prefixes = section(PREFIXES);
+    }
+
+    private ByteBuffer section(final int section) throws IOException {
+        final int offset = buffer.getInt(16 + 8 * section), length = buffer.getInt(20 + 8 * section);
+        if (offset < HEADER_SIZE || length < 0 || (long) offset + length > buffer.capacity()) {
+            throw new IOException("Truncated or corrupt mapped HebMorph dictionary");
+        }
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a file written by write
+     *
+     * @return A dictionary backed by the mapped file, with its prefixes table copied to the heap
+     */
+    public static DictHebMorph load(final File file) throws IOException {
+        final MappedDictionary dict = open(file);
+        return new DictHebMorph(dict, dict.getPrefixes(), dict.lemmaTable);
+    }
+
+    public static MappedDictionary open(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return true if the file starts like a file written by write
+     */
+    public static boolean isMappedDictionary(final File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        }
+    }
+
+    /**
+     * @return A copy of the prefixes table stored in the file
+     */
+    public HashMap<String, Integer> getPrefixes() {
+        final HashMap<String, Integer> ret = new HashMap<>();
+        int pos = 0;
+        while (pos < prefixes.limit()) {
+            final char[] prefix = new char[prefixes.getShort(pos)];
+            pos += 2;
+            for (int i = 0; i < prefix.length; i++, pos += 2) {
+                prefix[i] = prefixes.getChar(pos);
+            }
+            ret.put(new String(prefix), prefixes.getInt(pos));
+            pos += 4;
+        }
+        return ret;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The size of the mapped file, none of which is on the heap
+     */
+    public long mappedBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public MorphData find(final String key) {
+        return find(key.toCharArray(), 0, key.length());
+    }
+
+    @Override
+    public MorphData find(final char[] key, final int off, final int len) {
+        final int node = findNode(key, off, len);
+        return node < 0 ? null : value(valueOrds.get(node));
+    }
+
+    // Returns the node the key ends at, or -1 if there's no such node
+    private int findNode(final char[] key, final int off, final int len) {
+        final int end = off + len;
+        int node = 0, keyPos = off;
+        while (keyPos < end) {
+            final int child = findChild(node, keyChar(key[keyPos]));
+            if (child < 0) {
+                return -1;
+            }
+
+            // The first char matched, now match the rest of the child's key
+            final int childKeyEnd = keyStart.get(child + 1);
+            int n = keyStart.get(child) + 1;
+            keyPos++;
+            while (n < childKeyEnd) {
+                if (keyPos == end || keys.get(n) != keyChar(key[keyPos])) {
+                    return -1;
+                }
+                n++;
+                keyPos++;
+            }
+            node = child;
+        }
+        return node == 0 ? -1 : node;
+    }
+
+    // Binary search for the child whose key starts with c
+    private int findChild(final int node, final char c) {
+        int lo = firstChild.get(node), hi = firstChild.get(node + 1) - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final char midChar = keys.get(keyStart.get(mid));
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private char keyChar(final char c) {
+        return caseSensitiveKeys ? c : Character.toLowerCase(c);
+    }
+
+    // Decodes the MorphData stored at ord
+    private MorphData value(final int ord) {
+        if (ord == NO_VALUE) {
+            return null;
+        }
+        final int pos = morphStart.get(ord);
+        final MorphData md = new MorphData(lemmaTable);
+        md.setPrefixes(morphs.getShort(pos));
+        final int flags = morphs.get(pos + 2);
+        md.setHaltIfFound((flags & MORPH_HALT_IF_FOUND) != 0);
+        if ((flags & MORPH_HAS_LEMMAS) != 0) {
+            final int[] analyses = new int[(morphStart.get(ord + 1) - pos - 4) / 4];
+            for (int i = 0; i < analyses.length; i++) {
+                analyses[i] = analysis(morphs.getInt(pos + 4 + 4 * i));
+            }
+            md.setAnalyses(analyses);
+        }
+        return md;
+    }
+
+    // Lemma ids are string ids plus one, leaving 0 for the null lemma
+    private int analysis(final int id) {
+        final int stringId = lemmaStrings.get(id);
+        final int flags = lemmaFlags.get(id);
+        return MorphData.packAnalysis(stringId == NO_STRING ? LemmaTable.NULL_LEMMA : stringId + 1,
+                DESC_FLAGS[flags >>> 8], PREFIX_TYPES[flags & 0xFF]);
+    }
+
+    // Lemma strings are decoded from the file whenever they're asked for
+    private final LemmaTable lemmaTable = new LemmaTable() {
+        @Override
+        public String getLemma(final int id) {
+            if (id == NULL_LEMMA) {
+                return null;
+            }
+            final int stringId = id - 1;
+            final char[] chars = new char[stringStart.get(stringId + 1) - stringStart.get(stringId)];
+            for (int i = 0, pos = stringStart.get(stringId); i < chars.length; i++, pos++) {
+                chars[i] = stringChars.get(pos);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public int size() {
+            return stringStart.capacity() - 1;
+        }
+    };
+
+    @Override
+    public List<LookupResult<MorphData>> lookupTolerant(final String strKey, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                                       final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler crawler = crawlers.get();
+        crawler.dict = this;
+        return crawler.lookup(strKey, tolFuncs, limits);
+    }
+
+    @Override
+    public List<LookupResult<MorphData>> lookupTolerant(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                                       final TolerantLookupLimits limits) {
+        final TolerantLookupCrawler crawler = crawlers.get();
+        crawler.dict = this;
+        return crawler.lookup(key, off, len, tolFuncs, limits);
+    }
+
+    // Shared by all mapped dictionaries, so that none of them outlives its last user; see TolerantCrawler.release
+    private static final ThreadLocal<TolerantLookupCrawler> crawlers = new ThreadLocal<TolerantLookupCrawler>() {
+        @Override
+        protected TolerantLookupCrawler initialValue() {
+            return new TolerantLookupCrawler();
+        }
+    };
+
+    private static final class TolerantLookupCrawler extends TolerantCrawler<MorphData> {
+        private MappedDictionary dict; // only set during a lookup
+
+        @Override
+        protected void crawlRoot() {
+            crawl(0, 0, 0, 1.0f);
+        }
+
+        @Override
+        protected void release() {
+            dict = null;
+        }
+
+        // Try all children of a node whose key was fully consumed
+        private void crawl(final int node, final int keyPos, final int wordLen, final float score) {
+            final int end = dict.firstChild.get(node + 1);
+            for (int child = dict.firstChild.get(node); child < end; child++) {
+                matchChar(child, dict.keyStart.get(child), keyPos, wordLen, score);
+            }
+        }
+
+        // Match the node key char at nodeKeyPos against the key, directly or through toleration
+        private void matchChar(final int node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (keyPos >= keyLen || !enter(score)) {
+                return;
+            }
+            final char c = dict.keys.get(nodeKeyPos);
+
+            // toleration
+            for (LookupTolerators.ToleranceFunction tf : toleranceFunctions) {
+                final int toleration = tf.tolerate(key, keyLen, keyPos, word, wordLen, c);
+                if (toleration == LookupTolerators.NOT_TOLERATED) {
+                    continue;
+                }
+                final float tolScore = score * LookupTolerators.scoreFactor(toleration);
+                if (LookupTolerators.consumesChar(toleration)) {
+                    setWordChar(wordLen, c);
+                    advance(node, nodeKeyPos, keyPos, wordLen + 1, tolScore);
+                } else {
+                    matchChar(node, nodeKeyPos, keyPos + 1, wordLen, tolScore);
+                }
+            }
+
+            // standard key matching
+            if (c != key[keyPos]) {
+                return;
+            }
+            setWordChar(wordLen, c);
+            if (keyPos + 1 == keyLen) {
+                if (nodeKeyPos + 1 == dict.keyStart.get(node + 1) && dict.valueOrds.get(node) != NO_VALUE) {
+                    addResult(wordLen + 1, dict.value(dict.valueOrds.get(node)), score);
+                }
+            } else {
+                advance(node, nodeKeyPos, keyPos + 1, wordLen + 1, score);
+            }
+        }
+
+        private void advance(final int node, final int nodeKeyPos, final int keyPos, final int wordLen, final float score) {
+            if (nodeKeyPos + 1 == dict.keyStart.get(node + 1)) {
+                crawl(node, keyPos, wordLen, score);
+            } else {
+                matchChar(node, nodeKeyPos + 1, keyPos, wordLen, score);
+            }
+        }
+    }
+
+    /**
+     * Writes a dictionary in the format load maps
+     *
+     * @throws UnsupportedOperationException if the dictionary isn't backed by a DictRadix
+     */
+    public static void write(final DictHebMorph dict, final OutputStream out) throws IOException {
+        final DictRadix<MorphData> radix = dict.getRadix();
+
+        // Number the nodes breadth-first, exactly like FrozenDictRadix does
+        final List<DictRadix<MorphData>.DictNode> nodes = new ArrayList<>();
+        nodes.add(radix.getRootNode());
+        int keysLength = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            final DictRadix<MorphData>.DictNode node = nodes.get(i);
+            if (node.getKey() != null) {
+                keysLength += node.getKey().length;
+            }
+            if (node.getChildren() != null) {
+                for (DictRadix<MorphData>.DictNode child : node.getChildren()) {
+                    nodes.add(child);
+                }
+            }
+        }
+
+        final int nodesCount = nodes.size();
+        final char[] keys = new char[keysLength];
+        final int[] keyStart = new int[nodesCount + 1], firstChild = new int[nodesCount + 1], valueOrds = new int[nodesCount];
+        final IdentityHashMap<MorphData, Integer> morphIds = new IdentityHashMap<>();
+        final List<MorphData> morphs = new ArrayList<>();
+        int keyPos = 0, nextChild = 1;
+        for (int i = 0; i < nodesCount; i++) {
+            final DictRadix<MorphData>.DictNode node = nodes.get(i);
+            keyStart[i] = keyPos;
+            if (node.getKey() != null) {
+                System.arraycopy(node.getKey(), 0, keys, keyPos, node.getKey().length);
+                keyPos += node.getKey().length;
+            }
+            firstChild[i] = nextChild;
+            if (node.getChildren() != null) {
+                nextChild += node.getChildren().length;
+            }
+            final MorphData md = node.getValue();
+            if (md == null) {
+                valueOrds[i] = NO_VALUE;
+            } else {
+                Integer ord = morphIds.get(md);
+                if (ord == null) {
+                    ord = morphs.size();
+                    morphIds.put(md, ord);
+                    morphs.add(md);
+                }
+                valueOrds[i] = ord;
+            }
+        }
+        keyStart[nodesCount] = keyPos;
+        firstChild[nodesCount] = nextChild;
+
+        // MorphData records, and the lemmas and strings they point to
+        final int[] morphStart = new int[morphs.size() + 1];
+        final List<MorphData.Lemma> lemmas = new ArrayList<>();
+        final HashMap<MorphData.Lemma, Integer> lemmaIds = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final HashMap<String, Integer> stringIds = new HashMap<>();
+        // The lemma ids of every MorphData in morphs, one after the other; Lemma objects are made once per analysis
+        int[] morphLemmaIds = new int[1024];
+        int morphLemmaIdsCount = 0;
+        int morphBytes = 0, stringChars = 0;
+        for (int i = 0; i < morphs.size(); i++) {
+            morphStart[i] = morphBytes;
+            morphBytes += 4;
+            final MorphData md = morphs.get(i);
+            for (int l = 0; l < md.getLemmasCount(); l++) {
+                final MorphData.Lemma lemma = md.getLemma(l);
+                morphBytes += 4;
+                Integer lemmaId = lemmaIds.get(lemma);
+                if (lemmaId == null) {
+                    lemmaId = lemmas.size();
+                    lemmaIds.put(lemma, lemmaId);
+                    lemmas.add(lemma);
+                    if (lemma.getLemma() != null && !stringIds.containsKey(lemma.getLemma())) {
+                        stringIds.put(lemma.getLemma(), strings.size());
+                        strings.add(lemma.getLemma());
+                        stringChars += lemma.getLemma().length();
+                    }
+                }
+                if (morphLemmaIdsCount == morphLemmaIds.length) {
+                    morphLemmaIds = Arrays.copyOf(morphLemmaIds, morphLemmaIdsCount * 2);
+                }
+                morphLemmaIds[morphLemmaIdsCount++] = lemmaId;
+            }
+        }
+        morphStart[morphs.size()] = morphBytes;
+
+        final Map<String, Integer> prefixes = dict.getPref() == null ? new TreeMap<String, Integer>() : new TreeMap<>(dict.getPref());
+        int prefixBytes = 0;
+        for (String prefix : prefixes.keySet()) {
+            prefixBytes += 2 + 2 * prefix.length() + 4;
+        }
+
+        final int[] lengths = new int[SECTIONS];
+        lengths[KEYS] = 2 * keys.length;
+        lengths[KEY_START] = 4 * keyStart.length;
+        lengths[FIRST_CHILD] = 4 * firstChild.length;
+        lengths[VALUE_ORDS] = 4 * valueOrds.length;
+        lengths[MORPH_START] = 4 * morphStart.length;
+        lengths[MORPHS] = morphBytes;
+        lengths[LEMMA_STRINGS] = 4 * lemmas.size();
+        lengths[LEMMA_FLAGS] = 2 * lemmas.size();
+        lengths[STRING_START] = 4 * (strings.size() + 1);
+        lengths[STRING_CHARS] = 2 * stringChars;
+        lengths[PREFIXES] = prefixBytes;
+        final int[] offsets = new int[SECTIONS];
+        long size = HEADER_SIZE;
+        for (int s = 0; s < SECTIONS; s++) {
+            size = (size + 7) & ~7L; // keep sections 8-byte aligned
+            offsets[s] = (int) size;
+            size += lengths[s];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary too large to map");
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(radix.getCaseSensitiveKeys() ? FLAG_CASE_SENSITIVE : 0).putInt(radix.getCount());
+        for (int s = 0; s < SECTIONS; s++) {
+            buf.putInt(offsets[s]).putInt(lengths[s]);
+        }
+
+        buf.position(offsets[KEYS]);
+        buf.asCharBuffer().put(keys);
+        buf.position(offsets[KEY_START]);
+        buf.asIntBuffer().put(keyStart);
+        buf.position(offsets[FIRST_CHILD]);
+        buf.asIntBuffer().put(firstChild);
+        buf.position(offsets[VALUE_ORDS]);
+        buf.asIntBuffer().put(valueOrds);
+        buf.position(offsets[MORPH_START]);
+        buf.asIntBuffer().put(morphStart);
+
+        buf.position(offsets[MORPHS]);
+        for (int i = 0, pos = 0; i < morphs.size(); i++) {
+            final MorphData md = morphs.get(i);
+            buf.putShort((short) md.getPrefixes());
+            buf.put((byte) ((md.haltIfFound() ? MORPH_HALT_IF_FOUND : 0) | (md.hasLemmas() ? MORPH_HAS_LEMMAS : 0)));
+            buf.put((byte) 0);
+            for (int l = 0; l < md.getLemmasCount(); l++) {
+                buf.putInt(morphLemmaIds[pos++]);
+            }
+        }
+
+        buf.position(offsets[LEMMA_STRINGS]);
+        for (MorphData.Lemma lemma : lemmas) {
+            buf.putInt(lemma.getLemma() == null ? NO_STRING : stringIds.get(lemma.getLemma()));
+        }
+        buf.position(offsets[LEMMA_FLAGS]);
+        for (MorphData.Lemma lemma : lemmas) {
+            buf.putShort((short) (lemma.getDescFlag().ordinal() << 8 | lemma.getPrefix().ordinal()));
+        }
+        buf.position(offsets[STRING_START]);
+        int pos = 0;
+        for (String s : strings) {
+            buf.putInt(pos);
+            pos += s.length();
+        }
+        buf.putInt(pos);
+        buf.position(offsets[STRING_CHARS]);
+        for (String s : strings) {
+            for (int i = 0; i < s.length(); i++) {
+                buf.putChar(s.charAt(i));
+            }
+        }
+        buf.position(offsets[PREFIXES]);
+        for (Map.Entry<String, Integer> prefix : prefixes.entrySet()) {
+            buf.putShort((short) prefix.getKey().length());
+            for (int i = 0; i < prefix.getKey().length(); i++) {
+                buf.putChar(prefix.getKey().charAt(i));
+            }
+            buf.putInt(prefix.getValue());
+        }
+
+        out.write(buf.array());
+        out.flush();
+    }
+}
@@ -0,0 +1,141 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The prefixes table compiled into a deterministic automaton. States are ints and a transition is a single
+ * array read, so walking a word left to right finds every legal prefix of it, along with its mask, without
+ * creating strings or boxing masks. Transitions are kept in a dense table with a column per distinct char
+ * used by the prefixes, which for the hspell prefixes is a handful of Hebrew letters.
+ * <p>
+ * Instances are immutable.
+ */
+public final class PrefixTrie {
+    public static final int ROOT = 0;
+    /**
+     * Returned by step when no prefix continues with the char given
+     */
+    public static final int NO_STATE = -1;
+    /**
+     * Returned by getMask for states which aren't legal prefixes by themselves
+     */
+    public static final int NOT_A_PREFIX = -1;
+
+    private final char minChar;
+    private final int[] columns; // c - minChar -> column, or -1 for chars no prefix uses
+    private final int width;
+    private final int[] transitions; // state * width + column -> state, or NO_STATE
+    private final int[] masks; // per state: the prefix mask, or NOT_A_PREFIX
+
+    public PrefixTrie(final Map<String, Integer> prefixes) {
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        int maxStates = 1;
+        for (String prefix : prefixes.keySet()) {
+            for (int i = 0; i < prefix.length(); i++) {
+                min = (char) Math.min(min, prefix.charAt(i));
+                max = (char) Math.max(max, prefix.charAt(i));
+            }
+            maxStates += prefix.length();
+        }
+        if (min > max) { // no prefixes, or only the empty one
+            min = max = 0;
+        }
+
+        minChar = min;
+        columns = new int[max - min + 1];
+        Arrays.fill(columns, -1);
+        int cols = 0;
+        for (String prefix : prefixes.keySet()) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (columns[prefix.charAt(i) - min] < 0) {
+                    columns[prefix.charAt(i) - min] = cols++;
+                }
+            }
+        }
+        width = Math.max(cols, 1);
+
+        final int[] trans = new int[maxStates * width];
+        final int[] stateMasks = new int[maxStates];
+        Arrays.fill(trans, NO_STATE);
+        Arrays.fill(stateMasks, NOT_A_PREFIX);
+        int states = 1;
+        for (Map.Entry<String, Integer> entry : prefixes.entrySet()) {
+            int state = ROOT;
+            for (int i = 0; i < entry.getKey().length(); i++) {
+                final int t = state * width + columns[entry.getKey().charAt(i) - min];
+                if (trans[t] == NO_STATE) {
+                    trans[t] = states++;
+                }
+                state = trans[t];
+            }
+            stateMasks[state] = entry.getValue();
+        }
+        transitions = Arrays.copyOf(trans, states * width);
+        masks = Arrays.copyOf(stateMasks, states);
+    }
+
+    /**
+     * @return The state reached by reading c in state, or NO_STATE if no prefix goes that way
+     */
+    public int step(final int state, final char c) {
+        final int i = c - minChar;
+        if (i < 0 || i >= columns.length || columns[i] < 0) {
+            return NO_STATE;
+        }
+        return transitions[state * width + columns[i]];
+    }
+
+    /**
+     * @return The mask of the prefix read to reach state, or NOT_A_PREFIX
+     */
+    public int getMask(final int state) {
+        return masks[state];
+    }
+
+    /**
+     * @return The mask of the prefix in buf[off, off + len), or NOT_A_PREFIX
+     */
+    public int getMask(final char[] buf, final int off, final int len) {
+        int state = ROOT;
+        for (int i = off; i < off + len && state != NO_STATE; i++) {
+            state = step(state, buf[i]);
+        }
+        return state == NO_STATE ? NOT_A_PREFIX : masks[state];
+    }
+
+    /**
+     * @return The mask of the prefix made of the first len chars of s, or NOT_A_PREFIX
+     */
+    public int getMask(final CharSequence s, final int len) {
+        int state = ROOT;
+        for (int i = 0; i < len && state != NO_STATE; i++) {
+            state = step(state, s.charAt(i));
+        }
+        return state == NO_STATE ? NOT_A_PREFIX : masks[state];
+    }
+
+    /**
+     * @return The number of states, one per distinct prefix of the prefixes, including the empty one
+     */
+    public int getStatesCount() {
+        return masks.length;
+    }
+}
@@ -0,0 +1,156 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fills an empty DictRadix from keys given in sorted order, in a single pass. Only the path to the last key
+ * added is kept open; once a key shows a part of that path is done with, its nodes are made in their final
+ * form - compacted, with exact-sized children arrays - and are never searched, split or copied again.
+ * <p>
+ * Keys must come sorted by char, as the radix enumerates them, and can't be empty. A key repeated right after
+ * itself keeps its first value, unless the radix allows value overrides. {@link DictRadix#addNode} remains
+ * the way to add words to the radix once it is built.
+ */
+public class SortedDictRadixBuilder<T> {
+    private final DictRadix<T> radix;
+    private final boolean caseSensitiveKeys;
+
+    // The open path: frame d, for 1 <= d <= depth, is the node reached by path[0, d); frame 0 is the root
+    private char[] path = new char[32];
+    private Object[] values = new Object[33];
+    private final List<List<DictRadix<T>.DictNode>> children = new ArrayList<>(); // finished children per frame
+    private int depth;
+    private boolean built;
+
+    /**
+     * @param radix An empty radix to fill; its case sensitivity and value override settings apply
+     */
+    public SortedDictRadixBuilder(final DictRadix<T> radix) {
+        if (radix.getCount() != 0 || radix.getRootNode().getChildren() != null) {
+            throw new IllegalArgumentException("Can only build into an empty radix");
+        }
+        this.radix = radix;
+        this.caseSensitiveKeys = radix.getCaseSensitiveKeys();
+        children.add(new ArrayList<DictRadix<T>.DictNode>());
+    }
+
+    public void add(final String key, final T value) {
+        add(key.toCharArray(), 0, key.length(), value);
+    }
+
+    /**
+     * Adds key[off, off + len), which must not sort before the key added last
+     */
+    public void add(final char[] key, final int off, final int len, final T value) {
+        if (built) {
+            throw new IllegalStateException("The radix was already built");
+        }
+        if (len == 0) {
+            throw new IllegalArgumentException("Keys can't be empty");
+        }
+
+        int common = 0;
+        final int max = Math.min(depth, len);
+        while (common < max && path[common] == keyChar(key[off + common])) {
+            common++;
+        }
+        if (common == len) {
+            if (common == depth) { // the same key again
+                if (radix.getAllowValueOverride()) {
+                    values[depth] = value;
+                }
+                return;
+            }
+            throw new IllegalArgumentException("Keys must be added in sorted order");
+        }
+        if (common < depth && keyChar(key[off + common]) < path[common]) {
+            throw new IllegalArgumentException("Keys must be added in sorted order");
+        }
+
+        close(common);
+        if (len > path.length) {
+            path = Arrays.copyOf(path, Math.max(len, path.length * 2));
+            values = Arrays.copyOf(values, path.length + 1);
+        }
+        for (int i = common; i < len; i++) {
+            path[i] = keyChar(key[off + i]);
+            values[i + 1] = null;
+        }
+        while (children.size() <= len) {
+            children.add(new ArrayList<DictRadix<T>.DictNode>());
+        }
+        values[len] = value;
+        depth = len;
+        radix.m_nCount++;
+    }
+
+    /**
+     * Finishes the radix. The builder can't be used afterwards.
+     */
+    public DictRadix<T> build() {
+        if (!built) {
+            close(0);
+            radix.m_root.setChildren(toArray(children.get(0)));
+            built = true;
+        }
+        return radix;
+    }
+
+    // Makes nodes of all frames deeper than keep. A frame with no value and no other children than the next
+    // frame is the same node as that frame, so a node spans frames [from, to] and has path[from - 1, to) as key.
+    private void close(final int keep) {
+        int to = depth;
+        for (int from = depth; from > keep; from--) {
+            final int parent = from - 1;
+            if (parent > keep && values[parent] == null && children.get(parent).isEmpty()) {
+                continue;
+            }
+            final DictRadix<T>.DictNode node = radix.new DictNode();
+            node.setKey(Arrays.copyOfRange(path, parent, to));
+            node.setValue(value(to));
+            node.setChildren(toArray(children.get(to)));
+            children.get(to).clear();
+            children.get(parent).add(node);
+            to = parent;
+        }
+        depth = keep;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T value(final int frame) {
+        return (T) values[frame];
+    }
+
+    @SuppressWarnings("unchecked")
+    private DictRadix<T>.DictNode[] toArray(final List<DictRadix<T>.DictNode> nodes) {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        final DictRadix<T>.DictNode[] ret = (DictRadix<T>.DictNode[]) Array.newInstance(DictRadix.DictNode.class, nodes.size());
+        return nodes.toArray(ret);
+    }
+
+    private char keyChar(final char c) {
+        return caseSensitiveKeys ? c : Character.toLowerCase(c);
+    }
+}
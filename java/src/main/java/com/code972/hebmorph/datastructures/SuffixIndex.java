@@ -0,0 +1,73 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import java.util.function.Function;
+
+/**
+ * A secondary index over a dictionary for finding all the dictionary words which end a given word, as the
+ * lemmatizer does when it tries the stem left after every legal prefix. The words are stored reversed in a
+ * {@link FrozenDictRadix}, so all the candidate stems of a word lie on a single path from the root, and are
+ * found in one walk over the word's letters from its end - instead of a lookup from the root per prefix length.
+ * <p>
+ * The index is a snapshot; it doesn't see words added to the source radix after it was built.
+ */
+public class SuffixIndex<T> {
+    private final FrozenDictRadix<T> reversed;
+
+    public SuffixIndex(final DictRadix<T> radix) {
+        this(radix, Function.<T>identity());
+    }
+
+    /**
+     * Indexes the radix, storing valueMapper's result for every distinct value in it instead of the value itself
+     */
+    public <S> SuffixIndex(final DictRadix<S> radix, final Function<? super S, ? extends T> valueMapper) {
+        final DictRadix<S> reversedRadix = new DictRadix<>(radix.getCaseSensitiveKeys());
+        final DictRadix<S>.RadixEnumerator en = (DictRadix<S>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            final S value = en.next();
+            reversedRadix.addNode(new StringBuilder(en.getCurrentKey()).reverse().toString(), value);
+        }
+        reversed = new FrozenDictRadix<>(reversedRadix, valueMapper);
+    }
+
+    public int getCount() {
+        return reversed.getCount();
+    }
+
+    /**
+     * @return Heap used by the index, not including the values it points to
+     */
+    public long ramBytesUsed() {
+        return reversed.ramBytesUsed();
+    }
+
+    /**
+     * Looks up every suffix of word[off, off + len) which is at most maxPrefixLength chars shorter than it
+     *
+     * @param stems Receives the results; stems[p] is set to the data stored for word[off + p, off + len), or to null
+     *              if that isn't in the dictionary, for every p in [0, maxPrefixLength]
+     */
+    public void findStems(final char[] word, final int off, final int len, final int maxPrefixLength, final T[] stems) {
+        if (maxPrefixLength >= len || maxPrefixLength >= stems.length) {
+            throw new IllegalArgumentException("maxPrefixLength must be shorter than the word, and fit in stems");
+        }
+        reversed.findReversedSuffixes(word, off, len, maxPrefixLength, stems);
+    }
+}
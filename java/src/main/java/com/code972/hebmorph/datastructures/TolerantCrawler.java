@@ -0,0 +1,170 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable state of a tolerant lookup: the key, the dictionary word matched so far and the results. Each dictionary
+ * class keeps one crawler per thread, shared by all its instances, so a lookup allocates nothing but the results it
+ * finds. Implementations walk their structure from crawlRoot, matching one dictionary char at a time with matchChar
+ * semantics:
+ *
+ * 1. Each tolerator is tried on the char. A skipped key char retries the same dictionary char at the next key
+ *    position, a consumed char continues from the next dictionary char at the same key position.
+ * 2. Then the char is matched against the key; a result is added when the last key char matched a dictionary
+ *    char which ends a word.
+ *
+ * Implementations call enter on every char they visit, which enforces the lookup's TolerantLookupLimits.
+ */
+abstract class TolerantCrawler<T> {
+    protected char[] key = new char[32];
+    protected int keyLen;
+    protected char[] word = new char[32];
+    protected LookupTolerators.ToleranceFunction[] toleranceFunctions;
+    private List<LookupResult<T>> resultSet;
+
+    private TolerantLookupLimits limits;
+    private int nodesVisited;
+    private float worstKeptScore; // once maxResults were found, branches must score above this to make it
+    private boolean scorePruned, resultsCapped, budgetExhausted;
+
+    final List<LookupResult<T>> lookup(final String key, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                       final TolerantLookupLimits limits) {
+        try {
+            ensureKeyCapacity(key.length());
+            key.getChars(0, key.length(), this.key, 0);
+            return lookup(key.length(), tolFuncs, limits);
+        } finally {
+            release();
+        }
+    }
+
+    final List<LookupResult<T>> lookup(final char[] key, final int off, final int len, final LookupTolerators.ToleranceFunction[] tolFuncs,
+                                       final TolerantLookupLimits limits) {
+        try {
+            ensureKeyCapacity(len);
+            System.arraycopy(key, off, this.key, 0, len);
+            return lookup(len, tolFuncs, limits);
+        } finally {
+            release();
+        }
+    }
+
+    private List<LookupResult<T>> lookup(final int len, final LookupTolerators.ToleranceFunction[] tolFuncs, final TolerantLookupLimits limits) {
+        keyLen = len;
+        toleranceFunctions = tolFuncs;
+        this.limits = limits;
+        nodesVisited = 0;
+        worstKeptScore = -1;
+        scorePruned = resultsCapped = budgetExhausted = false;
+        try {
+            crawlRoot();
+            if (scorePruned || resultsCapped || budgetExhausted) {
+                limits.tripped(scorePruned, resultsCapped, budgetExhausted);
+            }
+            return resultSet;
+        } finally {
+            resultSet = null;
+            toleranceFunctions = null;
+            this.limits = null;
+        }
+    }
+
+    protected abstract void crawlRoot();
+
+    /**
+     * Called once a lookup is done, however it ended. Crawlers which are shared by all dictionaries of a class
+     * are handed the dictionary to crawl before each lookup, and must drop it here, or the thread keeping the
+     * crawler would keep the dictionary alive.
+     */
+    protected void release() {
+    }
+
+    /**
+     * Called on visiting a trie char with the score of the branch
+     *
+     * @return false if the branch should be abandoned
+     */
+    protected final boolean enter(final float score) {
+        if (++nodesVisited > limits.getMaxNodesVisited()) {
+            budgetExhausted = true;
+            return false;
+        }
+        if (score < limits.getMinScore()) {
+            scorePruned = true;
+            return false;
+        }
+        if (score <= worstKeptScore) {
+            resultsCapped = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the dictionary char at position pos of the word. Crawling is depth-first, so this overwrites
+     * whatever a previous branch left there.
+     */
+    protected final void setWordChar(final int pos, final char c) {
+        if (pos == word.length) {
+            word = Arrays.copyOf(word, word.length * 2);
+        }
+        word[pos] = c;
+    }
+
+    protected final void addResult(final int wordLen, final T value, final float score) {
+        if (resultSet == null) {
+            resultSet = new ArrayList<>();
+        }
+        if (resultSet.size() < limits.getMaxResults()) {
+            resultSet.add(new LookupResult<T>(new String(word, 0, wordLen), value, score));
+            if (resultSet.size() == limits.getMaxResults()) {
+                worstKeptScore = resultSet.get(worstResult()).getScore();
+            }
+            return;
+        }
+
+        // Full; replace the worst result kept if this one is better
+        resultsCapped = true;
+        if (score > worstKeptScore) {
+            resultSet.set(worstResult(), new LookupResult<T>(new String(word, 0, wordLen), value, score));
+            worstKeptScore = resultSet.get(worstResult()).getScore();
+        }
+    }
+
+    private int worstResult() {
+        int worst = 0;
+        for (int i = 1; i < resultSet.size(); i++) {
+            if (resultSet.get(i).getScore() < resultSet.get(worst).getScore()) {
+                worst = i;
+            }
+        }
+        return worst;
+    }
+
+    private void ensureKeyCapacity(final int len) {
+        if (len > key.length) {
+            key = new char[len];
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits on the work a tolerant lookup may do, with counters of how many lookups each limit cut short. Tolerant
+ * lookups explore every toleration branch, and on long or unusual words the Yud and Vav tolerators can multiply
+ * into a lot of branches; limits make the cost of a lookup predictable.
+ *
+ * Scores only decrease along a branch, so pruning by score never loses a result scoring above the minimum. When
+ * results are capped, the best scoring ones are kept and branches which can't beat the worst of them are pruned.
+ * Running out of the visits budget stops the lookup and returns whatever was found so far.
+ */
+public class TolerantLookupLimits {
+    public static final TolerantLookupLimits UNLIMITED = new TolerantLookupLimits(0f, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final float minScore;
+    private final int maxResults;
+    private final int maxNodesVisited;
+
+    private final LongAdder scorePruned = new LongAdder();
+    private final LongAdder resultsCapped = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    /**
+     * @param minScore        Branches scoring below this are pruned
+     * @param maxResults      Maximum number of results to return, best scoring first
+     * @param maxNodesVisited Maximum number of trie chars a single lookup may visit, retries after a toleration included
+     */
+    public TolerantLookupLimits(final float minScore, final int maxResults, final int maxNodesVisited) {
+        if (maxResults < 1 || maxNodesVisited < 1) {
+            throw new IllegalArgumentException("Results and visits limits must be positive");
+        }
+        this.minScore = minScore;
+        this.maxResults = maxResults;
+        this.maxNodesVisited = maxNodesVisited;
+    }
+
+    public float getMinScore() {
+        return minScore;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public int getMaxNodesVisited() {
+        return maxNodesVisited;
+    }
+
+    /**
+     * @return The number of lookups in which branches were pruned for scoring below the minimum score
+     */
+    public long getScorePrunedCount() {
+        return scorePruned.sum();
+    }
+
+    /**
+     * @return The number of lookups which found more than maxResults results, or pruned branches which couldn't make it
+     */
+    public long getResultsCappedCount() {
+        return resultsCapped.sum();
+    }
+
+    /**
+     * @return The number of lookups stopped for visiting maxNodesVisited trie chars
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    void tripped(final boolean scorePruned, final boolean resultsCapped, final boolean budgetExhausted) {
+        if (scorePruned) this.scorePruned.increment();
+        if (resultsCapped) this.resultsCapped.increment();
+        if (budgetExhausted) this.budgetExhausted.increment();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TolerantLookupLimits[minScore=%s, maxResults=%d, maxNodesVisited=%d; tripped: score=%d, results=%d, budget=%d]",
+                minScore, maxResults, maxNodesVisited, getScorePrunedCount(), getResultsCappedCount(), getBudgetExhaustedCount());
+    }
+}
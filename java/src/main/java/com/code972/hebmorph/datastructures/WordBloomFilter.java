@@ -0,0 +1,237 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter over the words of a dictionary, which answers most lookups of words that aren't in it with a
+ * couple of bit probes instead of a walk down the trie. Lemmatizers look up a stem for every legal prefix of
+ * every word, and most of those stems aren't words, which is what this is for - see DictHebMorph.setBloomFilter.
+ * <p>
+ * The filter never rejects a word which was added to it; it lets through a word which wasn't with roughly the
+ * false positive rate it was sized for, as long as no more than the expected number of words were added.
+ * Adding words isn't thread-safe, but testing words is, also concurrently with each other.
+ * <p>
+ * Filters don't count the words tested against them unless asked to, see withStats.
+ */
+public final class WordBloomFilter {
+    private static final int MAX_HASHES = 16;
+
+    private final long[] bits;
+    private final long bitsCount;
+    private final int hashes;
+    private final boolean caseSensitiveKeys;
+
+    // Null unless this filter records statistics, so that plain filters don't pay for them on every lookup
+    private final LongAdder probes;
+    private final LongAdder rejections;
+
+    /**
+     * @param bitsCount The size of the filter, in bits
+     * @param hashes    The number of bits each word sets
+     */
+    public WordBloomFilter(final long bitsCount, final int hashes, final boolean caseSensitiveKeys) {
+        if (bitsCount < 1 || bitsCount > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Filter size must be between 1 and 2^32 - 1 bits");
+        }
+        if (hashes < 1 || hashes > MAX_HASHES) {
+            throw new IllegalArgumentException("Number of hashes must be between 1 and " + MAX_HASHES);
+        }
+        this.bits = new long[(int) ((bitsCount + 63) >>> 6)];
+        this.bitsCount = bitsCount;
+        this.hashes = hashes;
+        this.caseSensitiveKeys = caseSensitiveKeys;
+        this.probes = null;
+        this.rejections = null;
+    }
+
+    private WordBloomFilter(final WordBloomFilter other, final boolean recordStats) {
+        this.bits = other.bits.clone();
+        this.bitsCount = other.bitsCount;
+        this.hashes = other.hashes;
+        this.caseSensitiveKeys = other.caseSensitiveKeys;
+        this.probes = recordStats ? new LongAdder() : null;
+        this.rejections = recordStats ? new LongAdder() : null;
+    }
+
+    /**
+     * Makes a filter sized for the given number of words and false positive rate
+     */
+    public static WordBloomFilter forFalsePositiveRate(final int expectedWords, final double falsePositiveRate,
+                                                       final boolean caseSensitiveKeys) {
+        return forBitsPerWord(expectedWords, bitsPerWord(falsePositiveRate), caseSensitiveKeys);
+    }
+
+    /**
+     * Makes a filter taking the given number of bits per expected word, with the number of hashes giving
+     * the lowest false positive rate for that size
+     */
+    public static WordBloomFilter forBitsPerWord(final int expectedWords, final double bitsPerWord,
+                                                 final boolean caseSensitiveKeys) {
+        if (bitsPerWord <= 0) {
+            throw new IllegalArgumentException("Bits per word must be positive");
+        }
+        final int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerWord * Math.log(2))));
+        return new WordBloomFilter((long) Math.ceil(Math.max(1, expectedWords) * bitsPerWord), hashes, caseSensitiveKeys);
+    }
+
+    /**
+     * Makes a filter over all the words of the radix
+     */
+    public static WordBloomFilter build(final DictRadix<?> radix, final double falsePositiveRate) {
+        final WordBloomFilter filter = forFalsePositiveRate(radix.getCount(), falsePositiveRate, radix.getCaseSensitiveKeys());
+        final DictRadix<?>.RadixEnumerator en = (DictRadix<?>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            en.next();
+            filter.add(en.getCurrentKey());
+        }
+        return filter;
+    }
+
+    private static double bitsPerWord(final double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        return -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+    }
+
+    /**
+     * @return A copy of this filter, with its own bits and counters
+     */
+    public WordBloomFilter copy() {
+        return new WordBloomFilter(this, isRecordingStats());
+    }
+
+    /**
+     * @return A copy of this filter which counts the words tested against it and the words it rejected, for
+     * measuring how much it saves; this makes every test a little slower, so keep it out of production use
+     */
+    public WordBloomFilter withStats() {
+        return new WordBloomFilter(this, true);
+    }
+
+    public boolean isRecordingStats() {
+        return probes != null;
+    }
+
+    public void add(final String word) {
+        add(word.toCharArray(), 0, word.length());
+    }
+
+    public void add(final char[] key, final int off, final int len) {
+        final long hash = hash(key, off, len);
+        final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            final long bit = bitIndex(h1 + i * h2);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if the word is certainly not in the filter, and true if it may be
+     */
+    public boolean mightContain(final char[] key, final int off, final int len) {
+        if (probes != null) {
+            probes.increment();
+        }
+        final long hash = hash(key, off, len);
+        final int h1 = (int) hash, h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            final long bit = bitIndex(h1 + i * h2);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                if (rejections != null) {
+                    rejections.increment();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean mightContain(final String word) {
+        return mightContain(word.toCharArray(), 0, word.length());
+    }
+
+    // Maps a 32 bit hash onto [0, bitsCount) with a multiplication instead of a division
+    private long bitIndex(final int hash) {
+        return ((hash & 0xFFFFFFFFL) * bitsCount) >>> 32;
+    }
+
+    // FNV-1a over the chars, followed by MurmurHash3's finalizer to spread it over all 64 bits
+    private long hash(final char[] key, final int off, final int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (caseSensitiveKeys ? key[i] : Character.toLowerCase(key[i]))) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    public long getBitsCount() {
+        return bitsCount;
+    }
+
+    public int getHashesCount() {
+        return hashes;
+    }
+
+    public long ramBytesUsed() {
+        return 8L * bits.length;
+    }
+
+    /**
+     * @return The number of words tested against the filter, or 0 if it doesn't record statistics
+     */
+    public long getProbesCount() {
+        return probes != null ? probes.sum() : 0;
+    }
+
+    /**
+     * @return The number of words the filter rejected, each saving a dictionary lookup, or 0 if it doesn't
+     * record statistics
+     */
+    public long getRejectedCount() {
+        return rejections != null ? rejections.sum() : 0;
+    }
+
+    public void resetStats() {
+        if (probes != null) {
+            probes.reset();
+            rejections.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!isRecordingStats()) {
+            return String.format("WordBloomFilter[%d bits, %d hashes]", bitsCount, hashes);
+        }
+        return String.format("WordBloomFilter[%d bits, %d hashes, %d probes, %d rejected]",
+                bitsCount, hashes, getProbesCount(), getRejectedCount());
+    }
+}
@@ -2,18 +2,37 @@ package com.code972.hebmorph.hspell;
 
 import com.code972.hebmorph.DictionaryLoader;
 import com.code972.hebmorph.datastructures.DictHebMorph;
+import com.code972.hebmorph.datastructures.DictHebMorphSerializer;
+import com.code972.hebmorph.datastructures.MappedDictionary;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * DictionaryLoader implementation for loading hspell data files
  */
 public class HSpellDictionaryLoader implements DictionaryLoader {
+    private final ForkJoinPool pool;
+
+    public HSpellDictionaryLoader() {
+        this(null);
+    }
+
+    /**
+     * @param pool The pool to load hspell data files on, which is left running; null to give every load a pool
+     *             of its own, shut down once the load is done
+     */
+    public HSpellDictionaryLoader(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     @Override
     public String dictionaryLoaderName() {
         return "hspell";
@@ -37,9 +56,12 @@ public class HSpellDictionaryLoader implements DictionaryLoader {
         return paths.toArray(new String[paths.size()]);
     }
 
+    /**
+     * Loads a dictionary compiled from the hspell data files, see {@link #main}
+     */
     @Override
     public DictHebMorph loadDictionary(final InputStream stream) throws IOException {
-        throw new UnsupportedOperationException();
+        return DictHebMorphSerializer.read(stream);
     }
 
     @Override
@@ -49,17 +71,50 @@ public class HSpellDictionaryLoader implements DictionaryLoader {
         }
 
         final File file = new File(path);
-        if (file.isDirectory()) {
+        if (MappedDictionary.isMappedDictionary(file)) {
+            return MappedDictionary.load(file);
+        } else if (file.isFile()) {
+            try (InputStream stream = new FileInputStream(file)) {
+                return loadDictionary(stream);
+            }
+        } else if (file.isDirectory()) {
             HSpellLoader loader = new HSpellLoader(new File(path), true);
-            return loader.loadDictionaryFromHSpellData(new FileInputStream(new File(path, HSpellLoader.PREFIX_H)));
+            return load(loader, new FileInputStream(new File(path, HSpellLoader.PREFIX_H)));
         } else {
-            throw new IOException("Expected a folder. Cannot load dictionary from HSpell files.");
+            throw new IOException("Expected a folder of HSpell files or a compiled dictionary file. Cannot load dictionary.");
         }
     }
 
     @Override
     public DictHebMorph loadDictionaryFromDefaultPath() throws IOException {
         HSpellLoader loader = new HSpellLoader(new File(HSpellLoader.getHspellPath()), true);
-        return loader.loadDictionaryFromHSpellData(new FileInputStream(new File(HSpellLoader.getHspellPath(), HSpellLoader.PREFIX_NOH)));
+        return load(loader, new FileInputStream(new File(HSpellLoader.getHspellPath(), HSpellLoader.PREFIX_NOH)));
+    }
+
+    private DictHebMorph load(final HSpellLoader loader, final InputStream prefixesStream) throws IOException {
+        return pool == null ? loader.loadDictionaryFromHSpellData(prefixesStream) : loader.loadDictionaryFromHSpellData(prefixesStream, pool);
+    }
+
+    /**
+     * Compiles the hspell data files into a file loadDictionaryFromPath can load; with --mapped, into a file
+     * it maps instead of reading it to the heap.
+     * Usage: HSpellDictionaryLoader [--mapped] &lt;hspell-data-files folder&gt; &lt;output file&gt;
+     */
+    public static void main(final String[] args) throws IOException {
+        final boolean mapped = args.length == 3 && args[0].equals("--mapped");
+        if (args.length != (mapped ? 3 : 2)) {
+            System.err.println("Usage: HSpellDictionaryLoader [--mapped] <hspell-data-files folder> <output file>");
+            System.exit(1);
+        }
+        final String folder = args[args.length - 2], output = args[args.length - 1];
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(folder);
+        try (OutputStream out = new FileOutputStream(output)) {
+            if (mapped) {
+                MappedDictionary.write(dict, out);
+            } else {
+                DictHebMorphSerializer.write(dict, out);
+            }
+        }
+        System.out.println("Compiled " + dict.getRadix().getCount() + " words into " + output);
     }
 }
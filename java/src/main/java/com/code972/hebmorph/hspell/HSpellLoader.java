@@ -19,14 +19,22 @@ package com.code972.hebmorph.hspell;
 
 import com.code972.hebmorph.DescFlag;
 import com.code972.hebmorph.DictionaryLoader;
+import com.code972.hebmorph.HeapLemmaTable;
+import com.code972.hebmorph.LemmaTable;
 import com.code972.hebmorph.MorphData;
 import com.code972.hebmorph.PrefixType;
 import com.code972.hebmorph.datastructures.DictHebMorph;
 import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.SortedDictRadixBuilder;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.GZIPInputStream;
 
 final class HSpellLoader {
@@ -44,12 +52,19 @@ final class HSpellLoader {
 
     public final static String PREFIX_H = "prefix_h.gz", PREFIX_NOH = "prefix_noH.gz";
 
-    protected List<Integer> dmasks;
+    protected int[] dmasks;
     protected final boolean loadMorphData;
     private int lookupLen;
 
-    protected InputStream fdict, fprefixes;
-    protected InputStream fdesc = null, fstem = null;
+    protected BlockReader fdict, fprefixes;
+    protected BlockReader fdesc = null, fstem = null;
+
+    // Canonical instances of the morphological data loaded so far. Many words share the exact same data (all
+    // inflections of a noun often have the same analyses, for one), so they can share one frozen instance.
+    private final HashMap<MorphDataKey, MorphData> morphDataPool = new HashMap<>();
+    private final MorphDataKey morphDataProbe = new MorphDataKey();
+    private final MorphData[] prefixesOnlyPool = new MorphData[256];
+    private int lemmasCount, distinctLemmasCount, morphDataCount, distinctMorphDataCount;
 
     public HSpellLoader(File hspellFolder, boolean loadMorphData) throws IOException {
         this(new FileInputStream(new File(hspellFolder, sizesFile)), new FileInputStream(new File(hspellFolder, dmaskFile)),
@@ -73,11 +88,12 @@ final class HSpellLoader {
     }
 
     public HSpellLoader(InputStream sizesFile, InputStream dmasksFile, InputStream dictFile, InputStream prefixesFile, InputStream descFile, InputStream stemsFile, boolean loadMorphData) throws IOException {
-        fdict = new GZIPInputStream(dictFile);
-        fprefixes = new GZIPInputStream(prefixesFile);
+        fdict = new BlockReader(dictFile);
+        fprefixes = new BlockReader(prefixesFile);
         this.loadMorphData = loadMorphData;
         if (loadMorphData) {
-            dmasks = new ArrayList<>();
+            dmasks = new int[64];
+            int dmasksCount = 0;
             boolean foundStartLine = false;
             String line;
             BufferedReader reader = new BufferedReader(new InputStreamReader(dmasksFile));
@@ -90,13 +106,17 @@ final class HSpellLoader {
                 }
                 int i = tryParseInt(line);
                 if (i >= 0) {
-                    dmasks.add(i);
+                    if (dmasksCount == dmasks.length) {
+                        dmasks = Arrays.copyOf(dmasks, dmasksCount * 2);
+                    }
+                    dmasks[dmasksCount++] = i;
                 }
             }
             reader.close();
+            dmasks = Arrays.copyOf(dmasks, dmasksCount);
             lookupLen = getWordCountInHSpellFolder(sizesFile);
-            fdesc = new GZIPInputStream(descFile);
-            fstem = new GZIPInputStream(stemsFile);
+            fdesc = new BlockReader(descFile);
+            fstem = new BlockReader(stemsFile);
         }
     }
 
@@ -159,111 +179,437 @@ final class HSpellLoader {
         return map;
     }
 
+    /**
+     * Loads the dictionary. With morphological data, the four hspell files and the prefixes file are decoded
+     * concurrently, and the words are then added to the trie in parallel, one shard per first letter; see
+     * {@link #loadMorphData}. The dictionary is the same whatever the number of threads.
+     * <p>
+     * The work runs on a pool of its own, which is shut down before this returns; reading the files blocks,
+     * so it's kept off the common pool.
+     */
     public DictHebMorph loadDictionaryFromHSpellData(InputStream inputStream) throws IOException {
-        DictHebMorph dict = new DictHebMorph();
-        dict.setPref(readPrefixesFromFile(inputStream));
+        if (!loadMorphData) {
+            return loadDictionaryFromHSpellData(inputStream, null);
+        }
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return loadDictionaryFromHSpellData(inputStream, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Loads the dictionary like {@link #loadDictionaryFromHSpellData(InputStream)}, but on the given pool, which
+     * is left running. Only used when loading morphological data.
+     */
+    public DictHebMorph loadDictionaryFromHSpellData(InputStream inputStream, ForkJoinPool pool) throws IOException {
         if (loadMorphData) {
-            // Load the count of morphological data slots required
-            final String lookup[] = new String[lookupLen + 1];
-            try {
-                final char[] sbuf = new char[DictionaryLoader.MaxWordLength];
-                int c = 0, n, slen = 0, i = 0;
-                while ((c = fdict.read()) > -1) {
-                    if ((c >= '0') && (c <= '9')) { // No conversion required for chars < 0xBE
-                        // new word - finalize and save old word
-                        lookup[i++] = new String(sbuf, 0, slen);
-
-                        // and read how much to go back
-                        n = 0;
-                        do {
-                            // base 10...
-                            n *= 10;
-                            n += (c - '0');
-                        } while (((c = fdict.read()) > -1) && (c >= '0') && (c <= '9'));
-                        slen -= n;
-                    }
-                    sbuf[slen++] = ISO8859_To_Unicode(c);
+            return loadMorphData(inputStream, pool);
+        }
+        final HashMap<String, Integer> prefixes = readPrefixesFromFile(inputStream);
+        final SortedDictRadixBuilder<MorphData> builder = new SortedDictRadixBuilder<>(new DictRadix<MorphData>());
+        try {
+            final char[] sbuf = new char[DictionaryLoader.MaxWordLength];
+            int c = 0, n, slen = 0;
+            while ((c = fdict.read()) > -1) {
+                if ((c >= '0') && (c <= '9')) { // No conversion required for chars < 0xBE
+                    // new word - finalize old word first (set value)
+                    // Words only differ by their prefixes mask, so there are at most 256 distinct values
+                    builder.add(sbuf, 0, slen, canonicalMorphData((short) fprefixes.read())); // Read prefix hint byte
+                    // and read how much to go back
+                    n = 0;
+                    do {
+                        // base 10...
+                        n *= 10;
+                        n += (c - '0');
+                    } while (((c = fdict.read()) > -1) && (c >= '0') && (c <= '9'));
+                    slen -= n;
                 }
-            } finally {
-                if (fdict != null) try {
-                    fdict.close();
-                } catch (IOException ignored) {
+                sbuf[slen++] = ISO8859_To_Unicode(c);
+            }
+
+        } finally {
+            if (fprefixes != null) try {
+                fprefixes.close();
+            } catch (IOException ignored) {
+            }
+            if (fdict != null) try {
+                fdict.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return new DictHebMorph(builder.build(), prefixes, new HeapLemmaTable());
+    }
+
+    /**
+     * The pipelined loader: decodes the words, prefix hints, descriptions and stems on separate tasks of the pool,
+     * makes each word's MorphData in a single pass in word order - which keeps lemma ids and shared MorphData the
+     * same as a sequential load - and then builds a radix per first letter on the pool. Words come sorted from
+     * hspell, so each shard is a contiguous range of them, and the shards are merged in order.
+     */
+    private DictHebMorph loadMorphData(final InputStream prefixesStream, final ForkJoinPool pool) throws IOException {
+        final Future<HashMap<String, Integer>> prefixesMap = pool.submit(new Callable<HashMap<String, Integer>>() {
+            @Override
+            public HashMap<String, Integer> call() {
+                return readPrefixesFromFile(prefixesStream);
+            }
+        });
+        final Future<String[]> wordsFuture = pool.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() throws IOException {
+                return decodeWords(fdict, lookupLen);
+            }
+        });
+        final Future<short[]> hintsFuture = pool.submit(new Callable<short[]>() {
+            @Override
+            public short[] call() throws IOException {
+                return readPrefixHints(fprefixes, lookupLen);
+            }
+        });
+        final Future<DecodedLines> descsFuture = pool.submit(new Callable<DecodedLines>() {
+            @Override
+            public DecodedLines call() throws IOException {
+                return decodeDescs(fdesc, lookupLen, dmasks);
+            }
+        });
+        final Future<DecodedLines> stemsFuture = pool.submit(new Callable<DecodedLines>() {
+            @Override
+            public DecodedLines call() throws IOException {
+                return decodeStems(fstem, lookupLen);
+            }
+        });
+
+        final String[] lookup = await(wordsFuture);
+        final short[] hints = await(hintsFuture);
+        final DecodedLines descs = await(descsFuture), stems = await(stemsFuture);
+
+        final HeapLemmaTable lemmaTable = new HeapLemmaTable();
+        final MorphData[] data = new MorphData[lookup.length];
+        // Lemmas are words of the dictionary too; the lemma id of every word, once it was used as one
+        final int[] lemmaIds = new int[lookup.length];
+        Arrays.fill(lemmaIds, -1);
+        int[] analyses = new int[16]; // scratch, only copied for data not seen before
+        int wordsCount = 0;
+        for (int i = 0; lookup[i] != null; i++, wordsCount++) {
+            final int stemsStart = stems.lineStart(i), descsStart = descs.lineStart(i), analysesCount = stems.lineLength(i);
+            if (analysesCount > analyses.length) {
+                analyses = new int[analysesCount];
+            }
+            for (int stemPosition = 0; stemPosition < analysesCount; stemPosition++) {
+                final int r = stems.values[stemsStart + stemPosition];
+                final int descFlags = descs.values[descsStart + stemPosition];
+                int lemmaId;
+                // This is a bypass for the psuedo-stem "שונות", as defined by hspell
+                // TODO: Try looking into changing this in hspell itself
+                if (lookup[r].equals("שונות") && !lookup[r].equals(lookup[i])) {
+                    lemmaId = LemmaTable.NULL_LEMMA;
+                } else {
+                    if (lemmaIds[r] < 0) {
+                        lemmaIds[r] = lemmaTable.add(lookup[r]);
+                    }
+                    lemmaId = lemmaIds[r];
                 }
+                analyses[stemPosition] = MorphData.packAnalysis(lemmaId, DescFlag.create((byte) (descFlags & 3)), dmaskToPrefix(descFlags));
+            }
+            data[i] = canonicalMorphData(hints[i], analyses, analysesCount, lemmaTable);
+        }
+        morphDataPool.clear();
+        distinctLemmasCount = lemmaTable.size();
+
+        // Shard i is words [shardStart[i], shardStart[i + 1]), all starting with the same letter
+        int shardsCount = 0;
+        final int[] shardStart = new int[wordsCount + 1];
+        for (int i = 0; i < wordsCount; i++) {
+            if (i == 0 || lookup[i].isEmpty() || lookup[i - 1].isEmpty() || lookup[i].charAt(0) != lookup[i - 1].charAt(0)) {
+                shardStart[shardsCount++] = i;
             }
-            try {
-                for (int i = 0; lookup[i] != null; i++) {
-                    MorphData data = new MorphData();
-                    data.setPrefixes((short) fprefixes.read()); // Read prefix hint byte
-                    Integer[] descFlags = readDescFile(fdesc);
-                    final List<Integer> stemReferences = readStemFile(fstem);
-                    final MorphData.Lemma[] lemmas = new MorphData.Lemma[stemReferences.size()];
-                    int stemPosition = 0;
-                    for (int r : stemReferences) {
-                        String lemma;
-                        // This is a bypass for the psuedo-stem "שונות", as defined by hspell
-                        // TODO: Try looking into changing this in hspell itself
-                        if (lookup[r].equals("שונות") && !lookup[r].equals(lookup[i])) {
-                            lemma = null;
-                        } else {
-                            lemma = lookup[r];
+        }
+        shardStart[shardsCount] = wordsCount;
+        @SuppressWarnings("unchecked")
+        final DictRadix<MorphData>[] shards = (DictRadix<MorphData>[]) new DictRadix<?>[shardsCount];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                final List<RecursiveAction> tasks = new ArrayList<>();
+                for (int s = 0; s < shards.length; s++) {
+                    final int shard = s;
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            final SortedDictRadixBuilder<MorphData> builder = new SortedDictRadixBuilder<>(new DictRadix<MorphData>());
+                            for (int i = shardStart[shard]; i < shardStart[shard + 1]; i++) {
+                                builder.add(lookup[i], data[i]);
+                            }
+                            shards[shard] = builder.build();
                         }
-                        lemmas[stemPosition] = new MorphData.Lemma(lemma, DescFlag.create((byte) (descFlags[stemPosition] & 3)), dmaskToPrefix(descFlags[stemPosition]));
-                        stemPosition++;
-                    }
-                    data.setLemmas(lemmas);
-                    dict.addNode(lookup[i], data);
+                    });
                 }
-            } finally {
-                if (fprefixes != null) try {
-                    fprefixes.close();
-                } catch (IOException ignored) {
+                invokeAll(tasks);
+            }
+        });
+
+        return new DictHebMorph(DictRadix.merge(Arrays.asList(shards), true), await(prefixesMap), lemmaTable);
+    }
+
+    private static <T> T await(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the dictionary");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // The hebrew.wgz words, each stored as the number of chars to drop off the end of the previous word
+    // followed by the chars to append to it
+    private static String[] decodeWords(final BlockReader fdict, final int count) throws IOException {
+        final String lookup[] = new String[count + 1];
+        try {
+            final char[] sbuf = new char[DictionaryLoader.MaxWordLength];
+            int c = 0, n, slen = 0, i = 0;
+            while ((c = fdict.read()) > -1) {
+                if ((c >= '0') && (c <= '9')) { // No conversion required for chars < 0xBE
+                    // new word - finalize and save old word
+                    lookup[i++] = new String(sbuf, 0, slen);
+
+                    // and read how much to go back
+                    n = 0;
+                    do {
+                        // base 10...
+                        n *= 10;
+                        n += (c - '0');
+                    } while (((c = fdict.read()) > -1) && (c >= '0') && (c <= '9'));
+                    slen -= n;
                 }
-                if (fdesc != null) try {
-                    fdesc.close();
-                } catch (IOException ignored) {
+                sbuf[slen++] = ISO8859_To_Unicode(c);
+            }
+        } finally {
+            closeQuietly(fdict);
+        }
+        return lookup;
+    }
+
+    // One prefix hint byte per word, and -1 for words past the end of the file
+    private static short[] readPrefixHints(final BlockReader fprefixes, final int count) throws IOException {
+        final short[] hints = new short[count + 1];
+        try {
+            for (int i = 0; i < hints.length; i++) {
+                hints[i] = (short) fprefixes.read();
+            }
+        } finally {
+            closeQuietly(fprefixes);
+        }
+        return hints;
+    }
+
+    /**
+     * The values decoded off the lines of a file, line i being values [lineStart(i), lineStart(i) + lineLength(i))
+     */
+    static final class DecodedLines {
+        private int[] starts;
+        int[] values;
+        private int lines, size;
+
+        DecodedLines(final int expectedLines) {
+            starts = new int[expectedLines + 2];
+            values = new int[Math.max(16, expectedLines * 2)];
+        }
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void endLine() {
+            if (lines + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[++lines] = size;
+        }
+
+        int lineStart(final int line) {
+            return line < lines ? starts[line] : size;
+        }
+
+        int lineLength(final int line) {
+            return line < lines ? starts[line + 1] - starts[line] : 0;
+        }
+    }
+
+    // A line of the desc file holds two letters per analysis, which make up an index into the dmasks table
+    private static DecodedLines decodeDescs(final BlockReader fdesc, final int count, final int[] dmasks) throws IOException {
+        final DecodedLines ret = new DecodedLines(count);
+        try {
+            int c;
+            while ((c = fdesc.read()) > -1) {
+                // Break on EOL or EOF
+                if ((c == '\n') || (c == 0)) {
+                    ret.endLine();
+                    continue;
                 }
-                if (fstem != null) try {
-                    fstem.close();
-                } catch (IOException ignored) {
+                final int c2 = fdesc.read();
+                if (c2 < 0) {
+                    break;
                 }
+                ret.add(dmasks[c - 'A' + (c2 - 'A') * 26]);
             }
-        } else { // Use optimized version for loading HSpell's dictionary files
-            try {
-                final char[] sbuf = new char[DictionaryLoader.MaxWordLength];
-                int c = 0, n, slen = 0;
-                while ((c = fdict.read()) > -1) {
-                    if ((c >= '0') && (c <= '9')) { // No conversion required for chars < 0xBE
-                        // new word - finalize old word first (set value)
-                        sbuf[slen] = '\0';
-                        // TODO: Avoid creating new MorphData object, and enhance DictRadix to store
-                        // the prefixes mask in the node itself
-                        MorphData data = new MorphData();
-                        data.setPrefixes((short) fprefixes.read()); // Read prefix hint byte
-                        dict.addNode(sbuf, data);
-                        // and read how much to go back
-                        n = 0;
-                        do {
-                            // base 10...
-                            n *= 10;
-                            n += (c - '0');
-                        } while (((c = fdict.read()) > -1) && (c >= '0') && (c <= '9'));
-                        slen -= n;
-                    }
-                    sbuf[slen++] = ISO8859_To_Unicode(c);
-                }
+        } finally {
+            closeQuietly(fdesc);
+        }
+        return ret;
+    }
 
-            } finally {
-                if (fprefixes != null) try {
-                    fprefixes.close();
-                } catch (IOException ignored) {
+    // A line of the stems file holds three base-94 digits per analysis, least significant first, making up the
+    // index of its stem among the dictionary words. What HSpell call "stems", we define as lemmas.
+    private static DecodedLines decodeStems(final BlockReader fstem, final int count) throws IOException {
+        final DecodedLines ret = new DecodedLines(count);
+        try {
+            int c;
+            while ((c = fstem.read()) > -1) {
+                // Break on EOL or EOF
+                if ((c == '\n') || (c == 0)) {
+                    ret.endLine();
+                    continue;
                 }
-                if (fdict != null) try {
-                    fdict.close();
-                } catch (IOException ignored) {
+                final int c2 = fstem.read(), c3 = fstem.read();
+                if (c3 < 0) {
+                    break;
+                }
+                ret.add(c - 33 + (c2 - 33) * 94 + (c3 - 33) * 94 * 94);
+            }
+        } finally {
+            closeQuietly(fstem);
+        }
+        return ret;
+    }
+
+    private static void closeQuietly(final Closeable closeable) {
+        if (closeable != null) try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Sorts analyses[0, count) in place, and only allocates anything for data which isn't in the pool yet
+    private MorphData canonicalMorphData(final short prefixes, final int[] analyses, final int count, final LemmaTable lemmaTable) {
+        morphDataCount++;
+        lemmasCount += count;
+        MorphData.sortAnalyses(analyses, count);
+        final MorphData existing = morphDataPool.get(morphDataProbe.set(prefixes, analyses, count));
+        if (existing != null) {
+            return existing;
+        }
+        final int[] copy = Arrays.copyOf(analyses, count);
+        final MorphData data = new MorphData(lemmaTable);
+        data.setPrefixes(prefixes);
+        data.setAnalyses(copy);
+        final MorphData frozen = data.frozenCopy(); // shared by many words, so none of them may change it
+        morphDataPool.put(new MorphDataKey().set(prefixes, copy, count), frozen);
+        distinctMorphDataCount++;
+        return frozen;
+    }
+
+    private MorphData canonicalMorphData(final short prefixes) {
+        morphDataCount++;
+        final int slot = prefixes & 0xFF; // prefixes.read() returns -1 past the end of the file
+        MorphData data = prefixesOnlyPool[slot];
+        if (data == null || data.getPrefixes() != prefixes) {
+            data = new MorphData();
+            data.setPrefixes(prefixes);
+            data = data.frozenCopy();
+            if (prefixesOnlyPool[slot] == null) {
+                prefixesOnlyPool[slot] = data;
+                distinctMorphDataCount++;
+            }
+        }
+        return data;
+    }
+
+    // The prefixes mask and sorted analyses of a MorphData. All pooled MorphData share a lemma table, so analyses
+    // are compared as they are. Lookups reuse a single mutable probe over the loader's scratch array.
+    private static final class MorphDataKey {
+        private short prefixes;
+        private int[] analyses;
+        private int count, hash;
+
+        MorphDataKey set(final short prefixes, final int[] analyses, final int count) {
+            this.prefixes = prefixes;
+            this.analyses = analyses;
+            this.count = count;
+            int result = prefixes;
+            for (int i = 0; i < count; i++) {
+                result = 31 * result + analyses[i];
+            }
+            this.hash = result;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof MorphDataKey))
+                return false;
+            final MorphDataKey other = (MorphDataKey) obj;
+            if (prefixes != other.prefixes || count != other.count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (analyses[i] != other.analyses[i]) {
+                    return false;
                 }
             }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        return dict;
+    }
+
+    /**
+     * @return The number of analyses of the words loaded, each of which used to hold a Lemma object of its own
+     */
+    public int getLemmasCount() {
+        return lemmasCount;
+    }
+
+    /**
+     * @return The number of distinct lemmas, each stored once in the dictionary's lemma table
+     */
+    public int getDistinctLemmasCount() {
+        return distinctLemmasCount;
+    }
+
+    /**
+     * @return The number of words loaded, each of which used to get a MorphData instance of its own
+     */
+    public int getMorphDataCount() {
+        return morphDataCount;
+    }
+
+    /**
+     * @return The number of distinct MorphData instances kept after deduplication
+     */
+    public int getDistinctMorphDataCount() {
+        return distinctMorphDataCount;
+    }
+
+    /**
+     * @return The fraction of MorphData instances deduplication saved, e.g. 0.9 when 1 in 10 was kept
+     */
+    public double getMorphDataReductionRatio() {
+        return morphDataCount == 0 ? 0 : 1 - (double) distinctMorphDataCount / morphDataCount;
     }
 
     public static int getWordCountInHSpellFolder(File path) throws IOException {
@@ -282,51 +628,48 @@ final class HSpellLoader {
         return tmp - 1; // hspell stores the actual word count + 1
     }
 
-    private int bufPos = 0;
-    private final int[] buf = new int[5];
+    /**
+     * Reads a gzipped hspell file in large blocks. The files are decoded byte by byte, and reading those from
+     * a GZIPInputStream one by one costs a synchronized virtual call each; this is a plain array read instead.
+     */
+    static final class BlockReader implements Closeable {
+        private static final int BLOCK_SIZE = 1 << 16;
 
-    private final ArrayList<Integer> wordMasks = new ArrayList<Integer>();
+        private final InputStream in;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int pos, limit;
 
-    final Integer[] readDescFile(InputStream fdesc) throws IOException {
-        while ((buf[bufPos] = fdesc.read()) > -1) {
-            // Break on EOL or EOF
-            if ((buf[bufPos] == '\n') || (buf[bufPos] == 0)) {
-                bufPos = 0;
-                Integer[] ret = wordMasks.toArray(new Integer[wordMasks.size()]);
-                wordMasks.clear();
-                return ret;
-            }
-            bufPos++;
-            if (bufPos % 2 == 0) {
+        BlockReader(final InputStream gzipped) throws IOException {
+            this.in = new GZIPInputStream(gzipped, BLOCK_SIZE);
+        }
 
-                int i = buf[0] - 'A' + (buf[1] - 'A') * 26;
-                wordMasks.add(dmasks.get(i));
-                bufPos = 0;
-                continue;
+        /**
+         * @return The next byte, or -1 at the end of the file
+         */
+        int read() throws IOException {
+            if (pos < limit) {
+                return block[pos++] & 0xFF;
             }
+            return fill() ? block[pos++] & 0xFF : -1;
         }
-        return null;
-    }
 
-    // Note: What HSpell call "stems", which we define as lemmas
-    private final ArrayList<Integer> wordStems = new ArrayList<Integer>();
-
-    final List<Integer> readStemFile(InputStream fstem) throws IOException {
-        wordStems.clear();
-        while ((buf[bufPos] = fstem.read()) > -1) {
-            // Break on EOL or EOF
-            if ((buf[bufPos] == '\n') || (buf[bufPos] == 0)) {
-                bufPos = 0;
-                return wordStems;
-            }
-            bufPos++;
-            if (bufPos % 3 == 0) {
-                wordStems.add(buf[0] - 33 + (buf[1] - 33) * 94 + (buf[2] - 33) * 94 * 94);
-                bufPos = 0;
-                continue;
+        private boolean fill() throws IOException {
+            int n;
+            do {
+                n = in.read(block, 0, BLOCK_SIZE);
+            } while (n == 0);
+            if (n < 0) {
+                return false;
             }
+            pos = 0;
+            limit = n;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
         }
-        return null;
     }
 
     // Mapping is based on
@@ -353,6 +696,7 @@ final class HSpellLoader {
         final BufferedReader input = new BufferedReader(new InputStreamReader(customWordsStream, Charset.forName("UTF-8")));
         final Hashtable<String, String> secondPass = new Hashtable<>();
         final DictRadix<MorphData> custom = new DictRadix<>();
+        final HeapLemmaTable lemmaTable = new HeapLemmaTable();
         String line;
         while ((line = input.readLine()) != null) {
             String[] cells = line.split(" ");
@@ -362,40 +706,34 @@ final class HSpellLoader {
             MorphData md = null;
             switch (cells[1]) {
                 case "שםעצם":
-                    md = new MorphData();
+                    md = new MorphData(lemmaTable);
                     md.setPrefixes((short) 63);
                     md.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma(cells[0], DescFlag.D_NOUN, dmaskToPrefix(descFlags_noun))});
                     break;
                 case "שםחברה":
                 case "שםפרטי":
-                    md = new MorphData();
+                    md = new MorphData(lemmaTable);
                     md.setPrefixes((short) 8);
                     md.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma(cells[0], DescFlag.D_PROPER, dmaskToPrefix(descFlags_person_name))});
                     break;
                 case "שםמקום":
-                    md = new MorphData();
+                    md = new MorphData(lemmaTable);
                     md.setPrefixes((short) 8);
                     md.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma(cells[0], DescFlag.D_PROPER, dmaskToPrefix(descFlags_place_name))});
                     break;
                 case "שםמדויק":
-                    md = new MorphData();
+                    md = new MorphData(lemmaTable);
                     md.setPrefixes((short) 0);
                     md.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma(cells[0], DescFlag.D_PROPER, dmaskToPrefix(descFlags_empty))});
                     break;
             }
 
             if (md == null) { // allow to associate new entries with other custom entries
-                try {
-                    md = custom.lookup(cells[1], false);
-                } catch (IllegalArgumentException ignored_ex) {
-                }
+                md = custom.find(cells[1]);
             }
 
             if (md == null) {
-                try {
-                    md = dictRadix.lookup(cells[1], false);
-                } catch (IllegalArgumentException ignored_ex) {
-                }
+                md = dictRadix.find(cells[1]);
             }
 
             if (md != null) {
@@ -406,17 +744,11 @@ final class HSpellLoader {
         }
 
         for (final Map.Entry<String, String> entry : secondPass.entrySet()) {
-            try {
-                custom.lookup(entry.getKey(), false);
+            if (custom.find(entry.getKey()) != null)
                 continue; // we already stored this word somehow
-            } catch (IllegalArgumentException expected_ex) {
-            }
 
-            try {
-                final MorphData md = custom.lookup(entry.getValue(), false);
-                if (md != null) custom.addNode(entry.getKey(), md);
-            } catch (IllegalArgumentException ignored_ex) {
-            }
+            final MorphData md = custom.find(entry.getValue());
+            if (md != null) custom.addNode(entry.getKey(), md);
         }
 
         return custom;
@@ -446,7 +778,7 @@ final class HSpellLoader {
     }
 
     // find the prefixes required by a word according to its details
-    private static PrefixType dmaskToPrefix(Integer dmask) {
+    private static PrefixType dmaskToPrefix(int dmask) {
         PrefixType specifier;
         if ((dmask & DMask.D_TYPEMASK) == DMask.D_VERB) {
             if ((dmask & DMask.D_TENSEMASK) == DMask.D_IMPERATIVE) {
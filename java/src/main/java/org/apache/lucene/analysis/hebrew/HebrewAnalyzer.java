@@ -20,6 +20,8 @@ package org.apache.lucene.analysis.hebrew;
 import com.code972.hebmorph.*;
 import com.code972.hebmorph.datastructures.DictHebMorph;
 import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.LookupResult;
+import com.code972.hebmorph.datastructures.PrefixTrie;
 import com.code972.hebmorph.hspell.HSpellDictionaryLoader;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.CharArraySet;
@@ -29,7 +31,6 @@ import org.apache.lucene.util.IOUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.List;
 
 public abstract class HebrewAnalyzer extends Analyzer {
@@ -55,12 +56,31 @@ public abstract class HebrewAnalyzer extends Analyzer {
         return SPECIAL_TOKENIZATION_CASES;
     }
 
+    private final DictionaryRegistry.Lease dictionaryLease;
+
     protected HebrewAnalyzer(DictHebMorph dict) {
         this.dict = dict;
+        this.dictionaryLease = null;
     }
 
+    /**
+     * Uses the default dictionary, shared with all other analyzers created this way until they are closed
+     */
     public HebrewAnalyzer() throws IOException {
-        this(new HSpellDictionaryLoader().loadDictionaryFromDefaultPath());
+        this(DictionaryRegistry.getDefault().acquireDefault(new HSpellDictionaryLoader()));
+    }
+
+    private HebrewAnalyzer(DictionaryRegistry.Lease dictionaryLease) {
+        this.dict = dictionaryLease.getDictionary();
+        this.dictionaryLease = dictionaryLease;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (dictionaryLease != null) {
+            dictionaryLease.close();
+        }
     }
 
     public static boolean isHebrewWord(final CharSequence word) {
@@ -77,43 +97,36 @@ public abstract class HebrewAnalyzer extends Analyzer {
 
     public static WordType isRecognizedWord(final String word, final boolean tolerate, final DictHebMorph dict) {
         byte prefLen = 0;
-        Integer prefixMask;
+        int prefixMask;
         MorphData md;
-        HashMap<String, Integer> prefixesTree = dict.getPref();
-        DictRadix<MorphData> dictRadix = dict.getRadix();
+        final PrefixTrie prefixes = dict.getPrefixTrie();
 
         if (!isHebrewWord(word))
             return WordType.NON_HEBREW;
 
-        try {
-            if (dict.lookup(word) != null) return WordType.HEBREW;
-        } catch (IllegalArgumentException ignored_ex) {
-        }
+        final char[] buf = word.toCharArray();
+        if (dict.lookup(buf, 0, buf.length) != null) return WordType.HEBREW;
 
         if (word.endsWith("'")) { // Try ommitting closing Geresh
-            try {
-                if (dict.lookup(word.substring(0, word.length() - 1)) != null) return WordType.HEBREW;
-            } catch (IllegalArgumentException ignored_ex) {
-            }
+            if (dict.lookup(buf, 0, buf.length - 1) != null) return WordType.HEBREW;
         }
 
+        // Walk the prefixes automaton along the word, trying the rest of it after every legal prefix
+        int prefixState = PrefixTrie.ROOT;
         prefLen = 0;
         while (true) {
             // Make sure there are at least 2 letters left after the prefix (the words של, שלא for example)
             if (word.length() - prefLen < 2)
                 break;
 
-            if ((prefixMask = prefixesTree.get(word.substring(0, ++prefLen))) == null)
+            if ((prefixState = prefixes.step(prefixState, buf[prefLen++])) == PrefixTrie.NO_STATE
+                    || (prefixMask = prefixes.getMask(prefixState)) == PrefixTrie.NOT_A_PREFIX)
                 break;
 
-            try {
-                md = dict.lookup(word.substring(prefLen));
-            } catch (IllegalArgumentException e) {
-                md = null;
-            }
+            md = dict.lookup(buf, prefLen, buf.length - prefLen);
             if ((md != null) && ((md.getPrefixes() & prefixMask) > 0)) {
-                for (int result = 0; result < md.getLemmas().length; result++) {
-                    if ((md.getLemmas()[result].getPrefix().getValue() & prefixMask) > 0) {
+                for (int result = 0; result < md.getLemmasCount(); result++) {
+                    if ((MorphData.getPrefixMask(md.getAnalysis(result)) & prefixMask) > 0) {
                         return WordType.HEBREW_WITH_PREFIX;
                     }
                 }
@@ -127,25 +140,27 @@ public abstract class HebrewAnalyzer extends Analyzer {
                 return WordType.UNRECOGNIZED;
             }
 
-            List<DictRadix<MorphData>.LookupResult> tolerated = dictRadix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll);
+            List<LookupResult<MorphData>> tolerated = dict.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll);
             if (tolerated != null && tolerated.size() > 0) {
                 return WordType.HEBREW_TOLERATED;
             }
 
+            prefixState = PrefixTrie.ROOT;
             prefLen = 0;
             while (true) {
                 // Make sure there are at least 2 letters left after the prefix (the words של, שלא for example)
                 if (word.length() - prefLen < 2)
                     break;
 
-                if ((prefixMask = prefixesTree.get(word.substring(0, ++prefLen))) == null)
+                if ((prefixState = prefixes.step(prefixState, buf[prefLen++])) == PrefixTrie.NO_STATE
+                        || (prefixMask = prefixes.getMask(prefixState)) == PrefixTrie.NOT_A_PREFIX)
                     break;
 
-                tolerated = dictRadix.lookupTolerant(word.substring(prefLen), LookupTolerators.TolerateEmKryiaAll);
+                tolerated = dict.lookupTolerant(buf, prefLen, buf.length - prefLen, LookupTolerators.TolerateEmKryiaAll);
                 if (tolerated != null) {
-                    for (DictRadix<MorphData>.LookupResult lr : tolerated) {
-                        for (int result = 0; result < lr.getData().getLemmas().length; result++) {
-                            if ((lr.getData().getLemmas()[result].getPrefix().getValue() & prefixMask) > 0) {
+                    for (LookupResult<MorphData> lr : tolerated) {
+                        for (int result = 0; result < lr.getData().getLemmasCount(); result++) {
+                            if ((MorphData.getPrefixMask(lr.getData().getAnalysis(result)) & prefixMask) > 0) {
                                 return WordType.HEBREW_TOLERATED_WITH_PREFIX;
                             }
                         }
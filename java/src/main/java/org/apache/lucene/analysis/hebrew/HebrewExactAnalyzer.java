@@ -40,7 +40,7 @@ public class HebrewExactAnalyzer extends HebrewAnalyzer {
     @Override
     protected TokenStreamComponents createComponents(final String fieldName) {
         // on exact - we don't care about suffixes at all, we always output original word with suffix only
-        final HebrewTokenizer src = new HebrewTokenizer(dict.getPref(), SPECIAL_TOKENIZATION_CASES);
+        final HebrewTokenizer src = new HebrewTokenizer(dict.getPrefixTrie(), SPECIAL_TOKENIZATION_CASES);
         src.setSuffixForExactMatch(originalTermSuffix);
         TokenStream tok = new NiqqudFilter(src);
         tok = new ASCIIFoldingFilter(tok);
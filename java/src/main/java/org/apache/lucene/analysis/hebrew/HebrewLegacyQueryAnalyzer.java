@@ -42,7 +42,7 @@ public class HebrewLegacyQueryAnalyzer extends HebrewAnalyzer {
     protected TokenStreamComponents createComponents(final String fieldName) {
         // on query - if marked as keyword don't keep origin, else only lemmatized (don't suffix)
         // if word termintates with $ will output word$, else will output all lemmas or word$ if OOV
-        HebrewTokenizer src = new HebrewTokenizer(dict.getPref(), SPECIAL_TOKENIZATION_CASES);
+        HebrewTokenizer src = new HebrewTokenizer(dict.getPrefixTrie(), SPECIAL_TOKENIZATION_CASES);
         src.setSuffixForExactMatch(originalTermSuffix);
         TokenStream tok = new NiqqudFilter(src);
         tok = new ASCIIFoldingFilter(tok);
@@ -19,6 +19,7 @@ package org.apache.lucene.analysis.hebrew;
 
 import com.code972.hebmorph.Reference;
 import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.PrefixTrie;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
@@ -36,7 +37,7 @@ import java.util.HashMap;
 public final class HebrewTokenizer extends Tokenizer {
 
     private final com.code972.hebmorph.Tokenizer hebMorphTokenizer;
-    private final HashMap<String, Integer> prefixesTree;
+    private final PrefixTrie prefixes;
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
@@ -47,9 +48,17 @@ public final class HebrewTokenizer extends Tokenizer {
     }
 
     public HebrewTokenizer(final HashMap<String, Integer> _prefixesTree, final DictRadix<Byte> specialCases) {
+        this(_prefixesTree == null ? null : new PrefixTrie(_prefixesTree), specialCases);
+    }
+
+    /**
+     * @param prefixes The prefixes table already compiled, e.g. DictHebMorph.getPrefixTrie, which tokenizers
+     *                 over the same dictionary can share
+     */
+    public HebrewTokenizer(final PrefixTrie prefixes, final DictRadix<Byte> specialCases) {
         super();
-        hebMorphTokenizer = new com.code972.hebmorph.Tokenizer(input, _prefixesTree, specialCases);
-        prefixesTree = _prefixesTree;
+        hebMorphTokenizer = new com.code972.hebmorph.Tokenizer(input, prefixes, specialCases);
+        this.prefixes = prefixes;
     }
 
     public void setSuffixForExactMatch(final Character suffixForExactMatch) {
@@ -95,7 +104,7 @@ public final class HebrewTokenizer extends Tokenizer {
             if (tokenType == 0)
                 return false; // EOS
 
-            if ((tokenType & com.code972.hebmorph.Tokenizer.TokenType.Hebrew) > 0 && prefixesTree != null) {
+            if ((tokenType & com.code972.hebmorph.Tokenizer.TokenType.Hebrew) > 0 && prefixes != null) {
                 // Ignore "words" which are actually only prefixes in a single word.
                 // This first case is easy to spot, since the prefix and the following word will be
                 // separated by a dash marked as a construct (סמיכות) by the Tokenizer
@@ -165,7 +174,7 @@ public final class HebrewTokenizer extends Tokenizer {
     }
 
     public boolean isLegalPrefix(final String str) {
-        return prefixesTree.containsKey(str);
+        return prefixes.getMask(str, str.length()) != PrefixTrie.NOT_A_PREFIX;
     }
 
     // See the Academy's punctuation rules (see לשוננו לעם, טבת, תשס"ב) for an explanation of this rule
@@ -30,7 +30,6 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
     private boolean previousTolerated = false, lemmatizeExactHebrewWords, lemmatizeExactNonHebrewWords;
     private HebrewTokenTypeAttribute.HebrewType previousType;
 
-    private final Set<String> duplicateLemmas = new HashSet<>(20); // this stores lemmas we've seen for a word, to remove duplicated lemmas
     private final List<HebrewToken> tokensList = new ArrayList<>(20);
 
     public HebrewLemmatizerTokenFilter(TokenStream input, DictHebMorph dict) {
@@ -82,7 +81,6 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
         }
 
         previousLemmas.clear();
-        duplicateLemmas.clear();
         previousStartOffset = offsetAtt.startOffset();
         previousEndOffset = offsetAtt.endOffset();
         previousType = hebrewTypeAtt.getType();
@@ -91,15 +89,13 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
         if (hebrewTypeAtt.isHebrew()) {
             previousTolerated = false;
 
-            String word = termAtt.toString();
-
-            // try to lemmatize
+            // try to lemmatize, straight off the term buffer
             tokensList.clear();
-            lemmatizer.lemmatize(word, tokensList);
+            lemmatizer.lemmatize(termAtt.buffer(), 0, termAtt.length(), tokensList);
 
             // word wasn't found in the dictionary - try tolerating it
             if (tokensList.isEmpty()) {
-                lemmatizer.lemmatizeTolerant(word, tokensList);
+                lemmatizer.lemmatizeTolerant(termAtt.buffer(), 0, termAtt.length(), tokensList);
                 previousTolerated = true;
             }
             tokensList.sort(Comparator.reverseOrder());
@@ -108,7 +104,7 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
             // TODO: consider the ranking as an additional filter
             for (HebrewToken hebToken : tokensList) {
                 if (isValidToken(hebToken) || !previousTolerated) {
-                    if (duplicateLemmas.add(hebToken.getLemma())) {
+                    if (!hasLemmaOf(hebToken)) {
                         previousLemmas.add(hebToken);
                     }
                 }
@@ -117,14 +113,15 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
             // this is just a workaround - current analyzer adds all low-rated tokens if no token is high enough
             if (!tokensList.isEmpty() && previousLemmas.isEmpty()) {
                 for (HebrewToken hebToken : tokensList) {
-                    if (duplicateLemmas.add(hebToken.getLemma())) {
+                    if (!hasLemmaOf(hebToken)) {
                         previousLemmas.add(hebToken);
                     }
                 }
             }
             // word wasn't found even after toleration - add itself as the only lemma
             if (previousLemmas.isEmpty()) {
-                previousLemmas.add(new HebrewToken(termAtt.toString(), (byte) 0, DescFlag.D_EMPTY, word, PrefixType.PS_EMPTY, 1.0f));
+                final String word = termAtt.toString();
+                previousLemmas.add(new HebrewToken(word, (byte) 0, DescFlag.D_EMPTY, word, PrefixType.PS_EMPTY, 1.0f));
             }
             // TODO: merge lemmas that have the same properties or text
             // we built a lemmaslist, this currently returns the original words. Consecutive calls to incrementToken() will return it's lemmas.
@@ -139,6 +136,19 @@ public final class HebrewLemmatizerTokenFilter extends TokenFilter {
     @Override
     public void reset() throws IOException {
         super.reset();
+        // Lemmas left over from a stream which wasn't consumed to its end mustn't leak into the next one
+        previousLemmas.clear();
+    }
+
+    // Whether a lemma already added for this word has the same lemma; lemmas come from the same dictionary,
+    // so this normally compares lemma ids
+    private boolean hasLemmaOf(final HebrewToken hebToken) {
+        for (int i = 0; i < previousLemmas.size(); i++) {
+            if (((HebrewToken) previousLemmas.get(i)).hasSameLemma(hebToken)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean isValidToken(final HebrewToken t) {
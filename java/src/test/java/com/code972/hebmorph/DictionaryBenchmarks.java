@@ -0,0 +1,577 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.DictFST;
+import com.code972.hebmorph.datastructures.DictHebMorph;
+import com.code972.hebmorph.datastructures.DictHebMorphSerializer;
+import com.code972.hebmorph.datastructures.DictLookup;
+import com.code972.hebmorph.datastructures.DictRadix;
+import com.code972.hebmorph.datastructures.EmKriyaSkeletonIndex;
+import com.code972.hebmorph.datastructures.FrozenDictRadix;
+import com.code972.hebmorph.datastructures.LookupResult;
+import com.code972.hebmorph.datastructures.MappedDictionary;
+import com.code972.hebmorph.datastructures.SortedDictRadixBuilder;
+import com.code972.hebmorph.datastructures.TolerantLookupLimits;
+import com.code972.hebmorph.datastructures.WordBloomFilter;
+import com.code972.hebmorph.hspell.HSpellDictionaryLoader;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Manual footprint and throughput measurements. These are ignored by default; run them one at a time with
+ * an otherwise idle JVM to get meaningful numbers.
+ */
+public class DictionaryBenchmarks extends TestBase {
+
+    @Test
+    @Ignore
+    public void dictionaryFootprint() throws IOException {
+        final long before = usedHeap();
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+        final long afterLoad = usedHeap();
+
+        // The word -> MorphData map DictHebMorph used to keep alongside the radix
+        final HashMap<String, MorphData> map = new HashMap<>();
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) dict.getRadix().iterator();
+        while (en.hasNext()) {
+            map.put(en.getCurrentKey(), en.next());
+        }
+        final long afterMap = usedHeap();
+
+        System.out.println(String.format("Words: %d", dict.getRadix().getCount()));
+        System.out.println(String.format("DictHebMorph: %.1f MB", toMB(afterLoad - before)));
+        System.out.println(String.format("Additional HashMap<String, MorphData> index: %.1f MB", toMB(afterMap - afterLoad)));
+        System.out.println(map.size() + dict.hashCode()); // keep both reachable until measured
+    }
+
+    @Test
+    @Ignore
+    public void fstFootprint() throws IOException {
+        final long before = usedHeap();
+        final DictHebMorph loaded = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+        final long afterLoad = usedHeap();
+        final DictFST<MorphData> fst = new DictFST<>(loaded.getRadix());
+        final DictHebMorph dict = new DictHebMorph(fst, loaded.getPref());
+        loaded.getRadix().clear(); // drops the radix nodes, MorphData objects are still referenced by the FST
+        final long afterCompile = usedHeap();
+
+        System.out.println(String.format("Words: %d, distinct values: %d", fst.getCount(), fst.getValuesCount()));
+        System.out.println(String.format("DictHebMorph on DictRadix: %.1f MB", toMB(afterLoad - before)));
+        System.out.println(String.format("DictHebMorph on DictFST: %.1f MB (FST itself: %.1f MB)",
+                toMB(afterCompile - before), toMB(fst.ramBytesUsed())));
+        System.out.println(dict.hashCode());
+    }
+
+    @Test
+    @Ignore
+    public void compiledDictionaryLoadTime() throws IOException {
+        final File compiled = File.createTempFile("hebmorph", ".dict");
+        compiled.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(compiled)) {
+            DictHebMorphSerializer.write(new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH), out);
+        }
+        final File mapped = File.createTempFile("hebmorph", ".mapped");
+        mapped.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(mapped)) {
+            MappedDictionary.write(new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH), out);
+        }
+        System.out.println(String.format("Compiled dictionary: %.1f MB, mapped dictionary: %.1f MB", toMB(compiled.length()), toMB(mapped.length())));
+
+        for (int i = 0; i < 5; i++) { // first rounds are warmup
+            long start = System.nanoTime();
+            final DictHebMorph fromHSpell = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+            final long hspellNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            final DictHebMorph fromCompiled = new HSpellDictionaryLoader().loadDictionaryFromPath(compiled.getPath());
+            final long compiledNanos = System.nanoTime() - start;
+            long before = usedHeap();
+            start = System.nanoTime();
+            final DictHebMorph fromMapped = new HSpellDictionaryLoader().loadDictionaryFromPath(mapped.getPath());
+            final long mappedNanos = System.nanoTime() - start;
+            final long mappedHeap = usedHeap() - before;
+            assertEquals(fromHSpell.getRadix().getCount(), fromCompiled.getRadix().getCount());
+            assertEquals(fromHSpell.getRadix().getCount(), fromMapped.getDictionary().getCount());
+            System.out.println(String.format("hspell files: %d ms, compiled: %d ms, mapped: %.2f ms using %d KB of heap",
+                    hspellNanos / 1000000, compiledNanos / 1000000, mappedNanos / 1e6, mappedHeap / 1024));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void hspellLoadTime() throws IOException {
+        reportLoad(new DictionarySource() {
+            @Override
+            public DictHebMorph load(final ForkJoinPool pool) throws IOException {
+                return new HSpellDictionaryLoader(pool).loadDictionaryFromPath(DICT_PATH);
+            }
+        });
+    }
+
+    @Test
+    @Ignore
+    public void sortedRadixBuild() throws IOException {
+        final DictRadix<MorphData> radix = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH).getRadix();
+        final List<String> words = new ArrayList<>();
+        final List<MorphData> values = new ArrayList<>();
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            values.add(en.next());
+            words.add(en.getCurrentKey());
+        }
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 8; i++) { // first rounds are warmup
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            final DictRadix<MorphData> added = new DictRadix<>();
+            for (int w = 0; w < words.size(); w++) {
+                added.addNode(words.get(w), values.get(w));
+            }
+            final long addNanos = System.nanoTime() - start;
+            final long addBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            start = System.nanoTime();
+            final SortedDictRadixBuilder<MorphData> builder = new SortedDictRadixBuilder<>(new DictRadix<MorphData>());
+            for (int w = 0; w < words.size(); w++) {
+                builder.add(words.get(w), values.get(w));
+            }
+            final DictRadix<MorphData> built = builder.build();
+            final long buildNanos = System.nanoTime() - start;
+            final long buildBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+            assertEquals(added.getCount(), built.getCount());
+            System.out.println(String.format("%d words - addNode: %d ms, %.1f MB; sorted builder: %d ms, %.1f MB", words.size(),
+                    addNanos / 1000000, toMB(addBytes), buildNanos / 1000000, toMB(buildBytes)));
+        }
+    }
+
+    // The whole path applications take, from finding the hspell folder to the finished dictionary
+    @Test
+    @Ignore
+    public void defaultPathLoadAllocations() throws IOException {
+        reportLoad(new DictionarySource() {
+            @Override
+            public DictHebMorph load(final ForkJoinPool pool) throws IOException {
+                return new HSpellDictionaryLoader(pool).loadDictionaryFromDefaultPath();
+            }
+        });
+    }
+
+    private interface DictionarySource {
+        DictHebMorph load(ForkJoinPool pool) throws IOException;
+    }
+
+    private static void reportLoad(final DictionarySource source) throws IOException {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // The loader decodes and builds on the pool, so count what all threads allocate; the pool outlives the
+        // rounds, as threads which died meanwhile no longer report what they allocated
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long best = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < 8; i++) { // first rounds are warmup
+                final long allocated = allocatedByAllThreads(threads);
+                final long start = System.nanoTime();
+                final DictHebMorph dict = source.load(pool);
+                final long nanos = System.nanoTime() - start;
+                final long bytes = allocatedByAllThreads(threads) - allocated;
+                best = Math.min(best, nanos);
+                System.out.println(String.format("Loaded %d words in %d ms, allocating %.1f MB (%d bytes per word)", dict.getRadix().getCount(),
+                        nanos / 1000000, toMB(bytes), bytes / dict.getRadix().getCount()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(String.format("Best: %d ms", best / 1000000));
+    }
+
+    @Test
+    @Ignore
+    public void lookupThroughput() throws IOException {
+        final DictRadix<MorphData> radix = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH).getRadix();
+
+        // All dictionary words, and as many misses made by chopping off their first letter
+        final List<String> words = new ArrayList<>();
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            en.next();
+            words.add(en.getCurrentKey());
+            words.add(en.getCurrentKey().substring(1));
+        }
+        Collections.shuffle(words, new Random(0));
+
+        long before = usedHeap();
+        final FrozenDictRadix<MorphData> frozen = new FrozenDictRadix<>(radix);
+        final long frozenBytes = usedHeap() - before;
+        final DictFST<MorphData> fst = new DictFST<>(radix);
+
+        reportThroughput("DictRadix", radix, words);
+        reportThroughput("FrozenDictRadix", frozen, words);
+        reportThroughput("DictFST", fst, words);
+
+        final File mapped = File.createTempFile("hebmorph", ".mapped");
+        mapped.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(mapped)) {
+            MappedDictionary.write(new DictHebMorph(radix, new HashMap<String, Integer>()), out);
+        }
+        reportThroughput("MappedDictionary", MappedDictionary.open(mapped), words);
+
+        before = usedHeap();
+        radix.clear(); // the MorphData objects are still referenced by the other structures
+        final long radixBytes = before - usedHeap();
+        System.out.println(String.format("Bytes per entry: DictRadix %.1f, FrozenDictRadix %.1f (%d nodes), DictFST %.1f",
+                (double) radixBytes / frozen.getCount(), (double) frozenBytes / frozen.getCount(), frozen.getNodesCount(),
+                (double) fst.ramBytesUsed() / fst.getCount()));
+    }
+
+    private static void reportThroughput(final String name, final DictLookup<MorphData> dict, final List<String> words) {
+        int found = 0;
+        for (int i = 0; i < 5; i++) { // warmup
+            for (String word : words) {
+                if (dict.find(word) != null) found++;
+            }
+        }
+        final long start = System.nanoTime();
+        final int rounds = 10;
+        for (int i = 0; i < rounds; i++) {
+            for (String word : words) {
+                if (dict.find(word) != null) found++;
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %.2f M lookups/sec (%d hits)", name, rounds * words.size() / seconds / 1e6, found));
+    }
+
+    @Test
+    @Ignore
+    public void tolerantLookupThroughput() throws IOException {
+        final DictRadix<MorphData> radix = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH).getRadix();
+
+        // Every 10th dictionary word, spelled without Em Kriya
+        final List<String> words = new ArrayList<>();
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) radix.iterator();
+        for (int i = 0; en.hasNext(); i++) {
+            en.next();
+            if (i % 10 == 0) {
+                words.add(en.getCurrentKey().substring(0, 1) + en.getCurrentKey().substring(1).replaceAll("[יו]", ""));
+            }
+        }
+
+        reportTolerantThroughput("DictRadix", radix, words, TolerantLookupLimits.UNLIMITED);
+        reportTolerantThroughput("FrozenDictRadix", new FrozenDictRadix<>(radix), words, TolerantLookupLimits.UNLIMITED);
+        reportTolerantThroughput("DictFST", new DictFST<>(radix), words, TolerantLookupLimits.UNLIMITED);
+        reportTolerantThroughput("EmKriyaSkeletonIndex", new EmKriyaSkeletonIndex<>(radix), words, TolerantLookupLimits.UNLIMITED);
+
+        final TolerantLookupLimits limits = new TolerantLookupLimits(0.5f, 10, 500);
+        reportTolerantThroughput("DictRadix, limited", radix, words, limits);
+        System.out.println(limits);
+    }
+
+    private static void reportTolerantThroughput(final String name, final DictLookup<MorphData> dict, final List<String> words,
+                                                 final TolerantLookupLimits limits) {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long results = 0, start = 0, allocated = 0;
+        for (int i = 0; i < 5; i++) {
+            if (i == 2) { // first rounds are warmup
+                start = System.nanoTime();
+                allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            for (String word : words) {
+                final List<LookupResult<MorphData>> tolerated = dict.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits);
+                if (tolerated != null) results += tolerated.size();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        System.out.println(String.format("%s: %.0f K lookups/sec, %.0f bytes allocated per lookup (%d results)",
+                name, 3 * words.size() / seconds / 1e3, (double) allocated / (3 * words.size()), results));
+    }
+
+    @Test
+    @Ignore
+    public void lemmatizationCacheThroughput() throws IOException {
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+
+        // Hebrew words of the test corpus, in order of appearance
+        final List<String> words = new ArrayList<>();
+        final File[] files = new File("./../test-files/").listFiles();
+        for (File file : files) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1) words.add(word);
+            }
+        }
+        System.out.println(String.format("Corpus: %d words", words.size()));
+
+        reportLemmatizationThroughput("No cache", new Lemmatizer(dict), words);
+        final TolerantLookupCache lookupCache = new TolerantLookupCache(10000);
+        dict.setTolerantLookupCache(lookupCache);
+        reportLemmatizationThroughput("Tolerant lookups cached", new Lemmatizer(dict), words);
+        System.out.println(lookupCache + String.format(", hit rate %.1f%%", lookupCache.getHitRate() * 100));
+        dict.setTolerantLookupCache(null);
+        final LemmatizationCache cache = new LemmatizationCache(50000);
+        dict.setLemmatizationCache(cache);
+        reportLemmatizationThroughput("Cached", new Lemmatizer(dict), words);
+        System.out.println(cache + String.format(", hit rate %.1f%%", cache.getHitRate() * 100));
+    }
+
+    @Test
+    @Ignore
+    public void tolerantLookupCacheThroughput() throws IOException {
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+        final Lemmatizer lemmatizer = new Lemmatizer(dict);
+
+        // Corpus words which are only lemmatized tolerantly
+        final List<String> words = new ArrayList<>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1 && lemmatizer.lemmatize(word).isEmpty()) words.add(word);
+            }
+        }
+        System.out.println(String.format("Corpus: %d words lemmatized tolerantly", words.size()));
+
+        for (int run = 0; run < 2; run++) {
+            reportTolerantLemmatizationThroughput("No cache", lemmatizer, words);
+            final TolerantLookupCache cache = new TolerantLookupCache(10000);
+            dict.setTolerantLookupCache(cache);
+            reportTolerantLemmatizationThroughput("Tolerant lookups cached", lemmatizer, words);
+            System.out.println(cache + String.format(", hit rate %.1f%%", cache.getHitRate() * 100));
+            dict.setTolerantLookupCache(null);
+        }
+    }
+
+    private static void reportTolerantLemmatizationThroughput(final String name, final Lemmatizer lemmatizer, final List<String> words) {
+        final List<HebrewToken> tokens = new ArrayList<>();
+        long count = 0, start = 0;
+        for (int i = 0; i < 8; i++) {
+            if (i == 3) { // first rounds are warmup
+                start = System.nanoTime();
+                count = 0;
+            }
+            for (String word : words) {
+                tokens.clear();
+                lemmatizer.lemmatizeTolerant(word, tokens);
+                count += tokens.size();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %.0f K words/sec (%d tokens)", name, 5 * words.size() / seconds / 1e3, count));
+    }
+
+    private static void reportLemmatizationThroughput(final String name, final Lemmatizer lemmatizer, final List<String> words) {
+        final List<HebrewToken> tokens = new ArrayList<>();
+        long count = 0, start = 0;
+        for (int i = 0; i < 8; i++) {
+            if (i == 3) { // first rounds are warmup
+                start = System.nanoTime();
+            }
+            for (String word : words) {
+                tokens.clear();
+                lemmatizer.lemmatize(word, tokens);
+                if (tokens.isEmpty()) { // same as HebrewLemmatizerTokenFilter
+                    lemmatizer.lemmatizeTolerant(word, tokens);
+                }
+                count += tokens.size();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %.0f K words/sec (%d tokens)", name, 5 * words.size() / seconds / 1e3, count));
+    }
+
+    @Test
+    @Ignore
+    public void lemmatizeAllocations() throws IOException {
+        final Lemmatizer lemmatizer = new Lemmatizer(new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH));
+
+        final List<String> words = new ArrayList<>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1) words.add(word);
+            }
+        }
+
+        // Tokens are what lemmatize returns, so count them apart from what it allocates on the way
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final List<HebrewToken> tokens = new ArrayList<>();
+        long count = 0, start = 0, allocated = 0;
+        for (int i = 0; i < 8; i++) {
+            if (i == 3) { // first rounds are warmup
+                start = System.nanoTime();
+                allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                count = 0;
+            }
+            for (String word : words) {
+                tokens.clear();
+                lemmatizer.lemmatize(word, tokens);
+                count += tokens.size();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        System.out.println(String.format("%.0f K words/sec, %.1f bytes allocated per word, %.2f tokens per word",
+                5 * words.size() / seconds / 1e3, (double) allocated / (5 * words.size()), (double) count / (5 * words.size())));
+    }
+
+    @Test
+    @Ignore
+    public void singlePassLemmatization() throws IOException {
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+        final DictHebMorph indexed = new DictHebMorph(dict.getRadix(), dict.getPref(), dict.getLemmaTable());
+        indexed.buildSuffixIndex();
+        System.out.println(String.format("Suffix index: %.1f MB", toMB(indexed.getSuffixIndex().ramBytesUsed())));
+
+        final List<String> words = new ArrayList<>(), prefixed = new ArrayList<>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1) words.add(word);
+                if (word.length() > 5 && "ובכלמשה".indexOf(word.charAt(0)) >= 0 && "ובכלמשה".indexOf(word.charAt(1)) >= 0) {
+                    prefixed.add(word);
+                }
+            }
+        }
+
+        reportExactLemmatizationThroughput("Corpus, lookup per prefix", new Lemmatizer(dict), words);
+        reportExactLemmatizationThroughput("Corpus, single pass", new Lemmatizer(indexed), words);
+        reportExactLemmatizationThroughput("Long prefixed words, lookup per prefix", new Lemmatizer(dict), prefixed);
+        reportExactLemmatizationThroughput("Long prefixed words, single pass", new Lemmatizer(indexed), prefixed);
+    }
+
+    private static void reportExactLemmatizationThroughput(final String name, final Lemmatizer lemmatizer, final List<String> words) {
+        final List<HebrewToken> tokens = new ArrayList<>();
+        long count = 0, start = 0;
+        for (int i = 0; i < 8; i++) {
+            if (i == 3) { // first rounds are warmup
+                start = System.nanoTime();
+                count = 0;
+            }
+            for (String word : words) {
+                tokens.clear();
+                lemmatizer.lemmatize(word, tokens);
+                count += tokens.size();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %.0f K words/sec (%d tokens)", name, 5 * words.size() / seconds / 1e3, count));
+    }
+
+    @Test
+    @Ignore
+    public void batchLemmatizationScaling() throws IOException {
+        final Lemmatizer lemmatizer = new Lemmatizer(new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH).freeze());
+
+        final List<String> words = new ArrayList<>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1) words.add(word);
+            }
+        }
+        System.out.println(String.format("Corpus: %d words, %d cores", words.size(), Runtime.getRuntime().availableProcessors()));
+
+        for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+            long tokens = 0, start = 0;
+            for (int i = 0; i < 8; i++) {
+                if (i == 3) { // first rounds are warmup
+                    start = System.nanoTime();
+                }
+                tokens = lemmatizer.lemmatizeBatch(words, true, parallelism).getTokensCount();
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Parallelism %d: %.0f K words/sec (%d tokens)", parallelism, 5 * words.size() / seconds / 1e3, tokens));
+        }
+    }
+
+    @Test
+    @Ignore
+    public void bloomFilterRejections() throws IOException {
+        final DictHebMorph dict = new HSpellDictionaryLoader().loadDictionaryFromPath(DICT_PATH);
+
+        final List<String> words = new ArrayList<>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^\u05D0-\u05EA\"']+")) {
+                if (word.length() > 1) words.add(word);
+            }
+        }
+        // Every 10th dictionary word spelled without Em Kriya, mostly out of the dictionary
+        final List<String> misspelled = new ArrayList<>();
+        final DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) dict.getRadix().iterator();
+        for (int i = 0; en.hasNext(); i++) {
+            en.next();
+            if (i % 10 == 0) {
+                misspelled.add(en.getCurrentKey().substring(0, 1) + en.getCurrentKey().substring(1).replaceAll("[יו]", ""));
+            }
+        }
+
+        reportBloomFilter("No filter", dict, null, words, misspelled);
+        for (double falsePositiveRate : new double[]{0.1, 0.01, 0.001}) {
+            final DictHebMorph filtered = new DictHebMorph(dict.getRadix(), dict.getPref(), dict.getLemmaTable());
+            filtered.setBloomFilter(WordBloomFilter.build(dict.getRadix(), falsePositiveRate).withStats());
+            reportBloomFilter(String.format("Filter at %.1f%%", falsePositiveRate * 100), filtered, filtered.getBloomFilter(), words, misspelled);
+        }
+    }
+
+    private static void reportBloomFilter(final String name, final DictHebMorph dict, final WordBloomFilter filter,
+                                          final List<String> words, final List<String> misspelled) {
+        final DictHebMorph frozen = dict.freeze();
+        reportExactLemmatizationThroughput(name + ", DictRadix, corpus", new Lemmatizer(dict), words);
+        reportExactLemmatizationThroughput(name + ", FrozenDictRadix, corpus", new Lemmatizer(frozen), words);
+        reportExactLemmatizationThroughput(name + ", DictRadix, misspelled", new Lemmatizer(dict), misspelled);
+        reportExactLemmatizationThroughput(name + ", FrozenDictRadix, misspelled", new Lemmatizer(frozen), misspelled);
+        if (filter != null) {
+            System.out.println(String.format("%s: %.0f KB, %.1f%% of lookups rejected", filter, filter.ramBytesUsed() / 1024.0,
+                    100.0 * filter.getRejectedCount() / filter.getProbesCount()));
+        }
+    }
+
+    static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long allocatedByAllThreads(final com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated); // -1 for threads which died meanwhile
+        }
+        return total;
+    }
+
+    static double toMB(long bytes) {
+        return bytes / 1024.0 / 1024.0;
+    }
+}
@@ -0,0 +1,163 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.DictHebMorph;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DictionaryRegistryTest {
+    @Test
+    public void sharesDictionariesUntilAllLeasesAreClosed() throws IOException {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        CountingLoader loader = new CountingLoader();
+        String path = Files.createTempDirectory("hebmorph").toString();
+
+        DictionaryRegistry.Lease first = registry.acquire(loader, path), second = registry.acquire(loader, path);
+        assertSame(first.getDictionary(), second.getDictionary());
+        assertEquals(1, loader.loads.get());
+        assertEquals(Integer.valueOf(2), registry.getReferenceCounts().get(first.getKey()));
+
+        first.close();
+        first.close(); // no effect
+        assertEquals(Integer.valueOf(1), registry.getReferenceCounts().get(first.getKey()));
+        second.close();
+        assertTrue(registry.getReferenceCounts().isEmpty());
+
+        // Holders can't reconfigure the dictionary under each other
+        assertTrue(first.getDictionary().isFrozen());
+        try {
+            first.getDictionary().setLemmatizationCache(new LemmatizationCache(10));
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        DictionaryRegistry.Lease third = registry.acquire(loader, path);
+        assertNotSame(first.getDictionary(), third.getDictionary());
+        assertEquals(2, loader.loads.get());
+        third.close();
+    }
+
+    @Test
+    public void keysByPathAndVersion() throws IOException {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        CountingLoader loader = new CountingLoader();
+        File dir = Files.createTempDirectory("hebmorph").toFile();
+
+        DictionaryRegistry.Lease old = registry.acquire(loader, dir.getPath());
+        assertSame(old.getDictionary(), registry.acquire(loader, dir.getPath() + "/.").getDictionary());
+
+        File data = new File(dir, "data");
+        assertTrue(data.createNewFile());
+        assertTrue(data.setLastModified(dir.lastModified() + 60000));
+        DictionaryRegistry.Lease updated = registry.acquire(loader, dir.getPath());
+        assertNotSame(old.getDictionary(), updated.getDictionary());
+        assertEquals(2, registry.getReferenceCounts().size());
+    }
+
+    @Test
+    public void loadsOnceUnderContention() throws Exception {
+        final DictionaryRegistry registry = new DictionaryRegistry();
+        final CountingLoader loader = new CountingLoader();
+        final String path = Files.createTempDirectory("hebmorph").toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DictionaryRegistry.Lease>> leases = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                leases.add(executor.submit(new Callable<DictionaryRegistry.Lease>() {
+                    @Override
+                    public DictionaryRegistry.Lease call() throws IOException {
+                        return registry.acquire(loader, path);
+                    }
+                }));
+            }
+            DictHebMorph dict = leases.get(0).get().getDictionary();
+            for (Future<DictionaryRegistry.Lease> lease : leases) {
+                assertSame(dict, lease.get().getDictionary());
+            }
+            assertEquals(1, loader.loads.get());
+            assertEquals(Integer.valueOf(32), registry.getReferenceCounts().values().iterator().next());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failedLoadsAreNotKept() throws IOException {
+        DictionaryRegistry registry = new DictionaryRegistry();
+        CountingLoader loader = new CountingLoader();
+        loader.fail = true;
+        try {
+            registry.acquireDefault(loader);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+        assertTrue(registry.getReferenceCounts().isEmpty());
+
+        loader.fail = false;
+        registry.acquireDefault(loader).close();
+        assertEquals(2, loader.loads.get());
+    }
+
+    private static class CountingLoader implements DictionaryLoader {
+        final AtomicInteger loads = new AtomicInteger();
+        volatile boolean fail;
+
+        public String dictionaryLoaderName() {
+            return "counting";
+        }
+
+        public String[] dictionaryPossiblePaths() {
+            return new String[0];
+        }
+
+        public String[] getPossiblePaths(String... basePaths) {
+            return new String[0];
+        }
+
+        public DictHebMorph loadDictionary(InputStream stream) {
+            throw new UnsupportedOperationException();
+        }
+
+        public DictHebMorph loadDictionaryFromPath(String path) throws IOException {
+            return loadDictionaryFromDefaultPath();
+        }
+
+        public DictHebMorph loadDictionaryFromDefaultPath() throws IOException {
+            loads.incrementAndGet();
+            if (fail) {
+                throw new IOException("failed");
+            }
+            return new DictHebMorph();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.DictHebMorph;
+import com.code972.hebmorph.datastructures.TolerantLookupLimits;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LemmatizationCacheTest extends TestBase {
+    private static List<HebrewToken> tokens(final String word) {
+        return Collections.singletonList(new HebrewToken(word, (byte) 0, DescFlag.D_NOUN, word, PrefixType.PS_ALL, 1.0f));
+    }
+
+    private static List<HebrewToken> get(final LemmatizationCache cache, final String word, final boolean tolerant) {
+        return cache.get(word.toCharArray(), 0, word.length(), tolerant);
+    }
+
+    private static void put(final LemmatizationCache cache, final String word, final boolean tolerant, final List<HebrewToken> tokens) {
+        cache.put(word.toCharArray(), 0, word.length(), tolerant, tokens);
+    }
+
+    @Test
+    public void cachesImmutableResults() {
+        final LemmatizationCache cache = new LemmatizationCache(100);
+        assertNull(get(cache, "בית", false));
+        assertEquals(1, cache.getMisses());
+
+        put(cache, "בית", false, tokens("בית"));
+        final List<HebrewToken> cached = cache.get("  בית".toCharArray(), 2, 3, false);
+        assertEquals(tokens("בית"), cached);
+        assertEquals(1, cache.getHits());
+        try {
+            cached.add(null);
+            fail("Cached results should be immutable");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        // Exact and tolerant results are kept apart
+        assertNull(get(cache, "בית", true));
+        put(cache, "בית", true, new ArrayList<HebrewToken>());
+        assertTrue(get(cache, "בית", true).isEmpty());
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(get(cache, "בית", false));
+    }
+
+    @Test
+    public void callersGetTheirOwnTokens() {
+        final LemmatizationCache cache = new LemmatizationCache(100);
+        final List<HebrewToken> original = tokens("בית");
+        put(cache, "בית", false, original);
+        original.get(0).setScore(0.5f);
+
+        final HebrewToken first = get(cache, "בית", false).get(0);
+        assertEquals(1.0f, first.getScore(), 0);
+        first.setScore(0.1f);
+        first.setMask(DescFlag.D_VERB);
+        first.setText("שונה");
+        assertEquals(tokens("בית"), get(cache, "בית", false));
+    }
+
+    @Test
+    public void keepsFrequentWords() {
+        final LemmatizationCache cache = new LemmatizationCache(64);
+        for (int i = 0; i < 50; i++) {
+            if (get(cache, "בית", false) == null) {
+                put(cache, "בית", false, tokens("בית"));
+            }
+        }
+
+        // A flood of words seen only once shouldn't push out one that keeps coming up
+        for (int i = 0; i < 10000; i++) {
+            final String word = i % 20 == 0 ? "בית" : "מילה" + i;
+            if (get(cache, word, false) == null) {
+                put(cache, word, false, tokens(word));
+            }
+            assertTrue(cache.size() <= cache.getMaximumSize());
+        }
+        assertNotNull(get(cache, "בית", false));
+        assertTrue(cache.getRejections() > 0);
+    }
+
+    @Test
+    public void lemmatizerReturnsSameResultsWithCache() throws IOException {
+        final Lemmatizer lemmatizer = new Lemmatizer(getDictionary());
+        final String[] words = {"בית", "בבית", "ובבית", "החולים", "צה\"ל'", "אנצקלופדיה", "בלהבלה", "בית"};
+
+        final List<List<HebrewToken>> expected = new ArrayList<>();
+        for (String word : words) {
+            expected.add(lemmatizer.lemmatize(word));
+            expected.add(lemmatizer.lemmatizeTolerant(word));
+        }
+
+        final LemmatizationCache cache = new LemmatizationCache(1000);
+        getDictionary().setLemmatizationCache(cache);
+        try {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < words.length; i++) {
+                    assertEquals(words[i], expected.get(2 * i), lemmatizer.lemmatize(words[i]));
+                    assertEquals(words[i], expected.get(2 * i + 1), lemmatizer.lemmatizeTolerant(words[i]));
+                }
+            }
+            assertTrue(cache.getHits() > 0);
+        } finally {
+            getDictionary().setLemmatizationCache(null);
+        }
+    }
+
+    @Test
+    public void changingPrefixesClearsTheCache() {
+        final DictHebMorph dict = new DictHebMorph();
+        dict.addNode("בית", new MorphData());
+        final LemmatizationCache cache = new LemmatizationCache(10);
+        dict.setLemmatizationCache(cache);
+
+        final Lemmatizer lemmatizer = new Lemmatizer(dict);
+        assertTrue(lemmatizer.lemmatize("הבית").isEmpty());
+        assertEquals(1, cache.size());
+
+        final HashMap<String, Integer> prefs = new HashMap<>();
+        prefs.put("ה", (int) PrefixType.PS_ALL.getValue());
+        dict.setPref(prefs);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void changingTolerantLookupLimitsClearsTheCache() {
+        final DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        final LemmatizationCache cache = new LemmatizationCache(10);
+        dict.setLemmatizationCache(cache);
+        assertTrue(new Lemmatizer(dict).lemmatizeTolerant("שלחן").isEmpty());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.size());
+
+        dict.setTolerantLookupLimits(new TolerantLookupLimits(0.5f, 10, 500));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,76 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LemmatizedBatchTest extends TestBase {
+    @Test
+    public void batchMatchesSingleWordLemmatization() throws IOException {
+        Lemmatizer lemmatizer = new Lemmatizer(getDictionary().freeze());
+        List<String> words = new ArrayList<String>();
+        for (File file : new File("./../test-files/").listFiles()) {
+            words.addAll(Arrays.asList(readFileToString(file.getPath()).split("[^א-ת\"']+")));
+        }
+
+        LemmatizedBatch batch = lemmatizer.lemmatizeBatch(words, true, 4);
+        assertEquals(words.size(), batch.size());
+        assertTrue(batch.getFormsCount() < words.size());
+        for (int i = 0; i < words.size(); i++) {
+            List<HebrewToken> expected = lemmatizer.lemmatize(words.get(i));
+            if (expected.isEmpty()) {
+                lemmatizer.lemmatizeTolerant(words.get(i), expected);
+            }
+            assertEquals(words.get(i), batch.getFormText(batch.getForm(i)));
+            assertEquals(words.get(i), expected.size(), batch.getTokensEnd(i) - batch.getTokensStart(i));
+            for (int t = 0; t < expected.size(); t++) {
+                int token = batch.getTokensStart(i) + t;
+                assertEquals(expected.get(t).getLemma(), batch.getLemma(token));
+                assertEquals(expected.get(t).getMask(), batch.getDescFlag(token));
+                assertEquals(expected.get(t).getPrefixLength(), batch.getPrefixLength(token));
+                assertEquals(expected.get(t).getScore(), batch.getScore(token), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void deduplicatesWords() throws IOException {
+        Lemmatizer lemmatizer = new Lemmatizer(getDictionary());
+        LemmatizedBatch batch = lemmatizer.lemmatizeBatch(Arrays.asList("הבית", "בית", "הבית", "קקקק", "בית"), false, 2);
+        assertEquals(5, batch.size());
+        assertEquals(3, batch.getFormsCount());
+        assertEquals(batch.getForm(0), batch.getForm(2));
+        assertEquals(batch.getForm(1), batch.getForm(4));
+        assertEquals(batch.getTokensStart(3), batch.getTokensEnd(3)); // not tolerated
+        assertTrue(batch.getTokensEnd(1) > batch.getTokensStart(1));
+        assertEquals("בית", batch.getLemmaTable().getLemma(batch.getLemmaId(batch.getTokensStart(1))));
+
+        LemmatizedBatch empty = lemmatizer.lemmatizeBatch(Collections.<String>emptyList(), true, 2);
+        assertEquals(0, empty.size());
+        assertEquals(0, empty.getTokensCount());
+    }
+}
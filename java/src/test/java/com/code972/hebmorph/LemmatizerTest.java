@@ -126,14 +126,33 @@ public class LemmatizerTest extends TestBase {
         Assert.fail("Not yet implemented");
     }
 
-    @Ignore
-    public void testLemmatize() {
-        Assert.fail("Not yet implemented");
+    @Test
+    public void testLemmatize() throws IOException {
+        final Lemmatizer lemmatizer = new Lemmatizer(getDictionary());
+        final String[] words = {"בית", "בבית", "ובבית", "החולים", "לישראל", "מנהל", "שגרירות", "צה\"ל'", "בלהבלה"};
+        for (String word : words) {
+            final List<HebrewToken> expected = lemmatizer.lemmatize(word);
+
+            // Lemmatizing a slice of a larger buffer should produce the very same tokens
+            final char[] buf = ("  " + word + "   ").toCharArray();
+            final List<HebrewToken> actual = lemmatizer.lemmatize(buf, 2, word.length(), new ArrayList<HebrewToken>());
+            Assert.assertEquals(word, expected, actual);
+        }
+        Assert.assertFalse(lemmatizer.lemmatize("ובבית").isEmpty());
     }
 
-    @Ignore
-    public void testLemmatizeTolerant() {
-        Assert.fail("Not yet implemented");
+    @Test
+    public void testLemmatizeTolerant() throws IOException {
+        final Lemmatizer lemmatizer = new Lemmatizer(getDictionary());
+        final String[] words = {"שלחן", "השלחן", "ובשלחן", "פינגווין", "קקקק", "הקקקק"};
+        for (String word : words) {
+            final List<HebrewToken> expected = lemmatizer.lemmatizeTolerant(word);
+
+            final char[] buf = ("  " + word + "   ").toCharArray();
+            final List<HebrewToken> actual = lemmatizer.lemmatizeTolerant(buf, 2, word.length(), new ArrayList<HebrewToken>());
+            Assert.assertEquals(word, expected, actual);
+        }
+        Assert.assertFalse(lemmatizer.lemmatizeTolerant("השלחן").isEmpty());
     }
 
 }
@@ -19,6 +19,10 @@ package com.code972.hebmorph;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
 public class MorphDataTester {
     @Test
     public void lemmaTestEquals() {
@@ -37,4 +41,66 @@ public class MorphDataTester {
         lemma2 = new MorphData.Lemma(null, DescFlag.D_ACRONYM, PrefixType.PS_ALL);
         assert (lemma1.equals(lemma2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void lemmasStaySortedAndCannotBeModifiedFromOutside() {
+        MorphData.Lemma noun = new MorphData.Lemma("שולחן", DescFlag.D_NOUN, PrefixType.PS_ALL),
+                verb = new MorphData.Lemma("שלח", DescFlag.D_VERB, PrefixType.PS_ALL),
+                proper = new MorphData.Lemma("שולחן", DescFlag.D_PROPER, PrefixType.PS_B);
+        MorphData md = new MorphData();
+        md.setLemmas(new MorphData.Lemma[]{verb, noun});
+        assertEquals(2, md.getLemmasCount());
+        assertEquals(noun, md.getLemma(0));
+        assertEquals(verb, md.getLemma(1));
+
+        MorphData.Lemma[] lemmas = md.getLemmas();
+        lemmas[0] = proper;
+        assertEquals(noun, md.getLemma(0));
+
+        md.addLemma(proper);
+        assertEquals(3, md.getLemmasCount());
+        for (int i = 1; i < md.getLemmasCount(); i++) {
+            assertTrue(md.getLemma(i - 1).getDescFlag().getVal() <= md.getLemma(i).getDescFlag().getVal());
+        }
+        assertEquals(2, lemmas.length);
+
+        md.clearLemmas();
+        assertEquals(0, md.getLemmasCount());
+        assertEquals(0, md.getLemmas().length);
+        assertFalse(md.hasLemmas());
+        assertEquals(new MorphData(), md);
+    }
+
+    @Test
+    public void analysesArePackedAgainstTheLemmaTable() {
+        HeapLemmaTable table = new HeapLemmaTable();
+        MorphData md = new MorphData(table), other = new MorphData(table), own = new MorphData();
+        MorphData.Lemma[] lemmas = {new MorphData.Lemma("שולחן", DescFlag.D_NOUN, PrefixType.PS_L),
+                new MorphData.Lemma(null, DescFlag.D_ACRONYM, PrefixType.PS_ALL)};
+        md.setLemmas(lemmas.clone());
+        other.setLemmas(new MorphData.Lemma[]{lemmas[0]});
+        own.setLemmas(lemmas.clone());
+
+        assertEquals(1, table.size());
+        assertSame(table, md.getLemmaTable());
+        assertNotSame(table, own.getLemmaTable());
+        assertEquals(MorphData.getLemmaId(md.getAnalysis(0)), MorphData.getLemmaId(other.getAnalysis(0)));
+        assertEquals(LemmaTable.NULL_LEMMA, MorphData.getLemmaId(md.getAnalysis(1)));
+        assertEquals(DescFlag.D_ACRONYM, MorphData.getDescFlag(md.getAnalysis(1)));
+        assertEquals(PrefixType.PS_L, MorphData.getPrefixType(md.getAnalysis(0)));
+        assertEquals(PrefixType.PS_ALL.getValue(), MorphData.getPrefixMask(md.getAnalysis(1)));
+        assertEquals(Arrays.asList(lemmas), Arrays.asList(md.getLemmas()));
+
+        // Equal regardless of the table lemmas are numbered by
+        assertEquals(md, own);
+        assertEquals(md.hashCode(), own.hashCode());
+        assertFalse(md.equals(other));
+
+        HebrewToken token = new HebrewToken("לשולחן", (byte) 1, md.getAnalysis(0), md.getLemmaTable(), 0.9f);
+        assertEquals("שולחן", token.getLemma());
+        assertEquals(DescFlag.D_NOUN, token.getMask());
+        assertTrue(token.hasSameLemma(new HebrewToken("שולחן", (byte) 0, other.getAnalysis(0), other.getLemmaTable(), 1.0f)));
+        assertTrue(token.hasSameLemma(new HebrewToken("שולחן", (byte) 0, own.getAnalysis(0), own.getLemmaTable(), 1.0f)));
+        assertFalse(token.hasSameLemma(new HebrewToken("שולחן", (byte) 0, md.getAnalysis(1), md.getLemmaTable(), 1.0f)));
+    }
+}
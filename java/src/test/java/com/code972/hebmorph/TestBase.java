@@ -23,6 +23,7 @@ import com.code972.hebmorph.hspell.HSpellDictionaryLoader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.ref.Reference;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
@@ -38,6 +39,17 @@ public abstract class TestBase {
         return dict;
     }
 
+    /**
+     * @return Whether the referent was garbage collected, giving the collector a few chances
+     */
+    protected static boolean isCollected(final Reference<?> ref) throws InterruptedException {
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return ref.get() == null;
+    }
+
     protected static String readFileToString(String path) throws IOException {
         try (FileInputStream stream = new FileInputStream(new File(path))) {
             FileChannel fc = stream.getChannel();
@@ -0,0 +1,123 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph;
+
+import com.code972.hebmorph.datastructures.DictHebMorph;
+import com.code972.hebmorph.datastructures.LookupResult;
+import com.code972.hebmorph.datastructures.TolerantLookupLimits;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TolerantLookupCacheTest extends TestBase {
+    @Test
+    public void stemsAreSharedBetweenPrefixedForms() throws IOException {
+        DictHebMorph base = getDictionary();
+        DictHebMorph dict = new DictHebMorph(base.getRadix(), base.getPref(), base.getLemmaTable());
+        TolerantLookupCache cache = new TolerantLookupCache(1000);
+        dict.setTolerantLookupCache(cache);
+
+        Lemmatizer plain = new Lemmatizer(base), cached = new Lemmatizer(dict);
+        String[] words = {"הבית", "בבית", "ולבית", "שלחן", "השלחן", "פינגווין", "קקקק", "הקקקק"};
+        for (int round = 0; round < 2; round++) {
+            for (String word : words) {
+                assertEquals(word, plain.lemmatizeTolerant(word), cached.lemmatizeTolerant(word));
+            }
+        }
+        assertTrue(cache.getHits() > cache.getMisses());
+        assertTrue(cache.getHitRate() > 0.5);
+
+        // Misses are cached as empty results, but still reported as null
+        List<LookupResult<MorphData>> empty = cache.get("קקקק".toCharArray(), 0, 4);
+        assertNotNull(empty);
+        assertTrue(empty.isEmpty());
+        assertNull(dict.lookupTolerant("קקקק", LookupTolerators.TolerateEmKryiaAll));
+
+        dict.setTolerantLookupLimits(new TolerantLookupLimits(0.5f, 10, 500));
+        assertEquals(0, cache.size());
+
+        DictHebMorph frozen = dict.freeze();
+        assertNotSame(cache, frozen.getTolerantLookupCache());
+        assertEquals(cache.getMaximumSize(), frozen.getTolerantLookupCache().getMaximumSize());
+    }
+
+    @Test
+    public void onlyCachesItsOwnTolerators() throws IOException {
+        DictHebMorph base = getDictionary();
+        DictHebMorph dict = new DictHebMorph(base.getRadix(), base.getPref(), base.getLemmaTable());
+        TolerantLookupCache cache = new TolerantLookupCache(10);
+        dict.setTolerantLookupCache(cache);
+
+        LookupTolerators.ToleranceFunction[] other = {LookupTolerators.TolerateEmKryiaAll[0]};
+        assertFalse(cache.caches(other));
+        dict.lookupTolerant("שלחן", other);
+        assertEquals(0, cache.getHits() + cache.getMisses());
+
+        List<LookupResult<MorphData>> results = dict.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll);
+        assertEquals(1, cache.getMisses());
+        try {
+            results.clear();
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void callersGetTheirOwnResults() throws IOException {
+        DictHebMorph base = getDictionary();
+        DictHebMorph dict = new DictHebMorph(base.getRadix(), base.getPref(), base.getLemmaTable());
+        dict.setTolerantLookupCache(new TolerantLookupCache(10));
+
+        List<LookupResult<MorphData>> first = dict.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll);
+        float score = first.get(0).getScore();
+        first.get(0).setScore(score + 1);
+        first.get(0).setWord("קקקק");
+
+        List<LookupResult<MorphData>> second = dict.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll);
+        assertEquals(1, dict.getTolerantLookupCache().getHits());
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(score, second.get(0).getScore(), 0);
+        assertEquals(base.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).get(0).getWord(), second.get(0).getWord());
+    }
+
+    @Test
+    public void addedWordsAreNotHiddenByCachedMisses() {
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        TolerantLookupCache lookupCache = new TolerantLookupCache(10);
+        LemmatizationCache lemmatizationCache = new LemmatizationCache(10);
+        dict.setTolerantLookupCache(lookupCache);
+        dict.setLemmatizationCache(lemmatizationCache);
+
+        assertNull(dict.lookupTolerant("כסא", LookupTolerators.TolerateEmKryiaAll));
+        lemmatizationCache.put("כסא".toCharArray(), 0, 3, false, Collections.<HebrewToken>emptyList());
+        assertEquals(1, lookupCache.size());
+        assertEquals(1, lemmatizationCache.size());
+
+        dict.addNode("כיסא".toCharArray(), new MorphData());
+        assertEquals(0, lookupCache.size());
+        assertEquals(0, lemmatizationCache.size());
+        List<LookupResult<MorphData>> results = dict.lookupTolerant("כסא", LookupTolerators.TolerateEmKryiaAll);
+        assertNotNull(results);
+        assertEquals("כיסא", results.get(0).getWord());
+    }
+}
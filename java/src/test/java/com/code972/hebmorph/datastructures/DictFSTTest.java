@@ -0,0 +1,93 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DictFSTTest extends TestBase {
+    @Test
+    public void findsExactlyTheRadixKeys() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        String[] keys = {"a", "abcdef", "abf", "abfeeee", "agga", "azfwasf", "bcdef", "c", "cb", "cbdefghij", "czzzzij"};
+        for (int i = 0; i < keys.length; i++) {
+            radix.addNode(keys[i], i);
+        }
+        radix.addNode("shared", 0);
+
+        DictFST<Integer> fst = new DictFST<Integer>(radix);
+        assertEquals(radix.getCount(), fst.getCount());
+        assertEquals(keys.length, fst.getValuesCount());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(Integer.valueOf(i), fst.find(keys[i]));
+        }
+        assertEquals(Integer.valueOf(0), fst.find("shared"));
+
+        assertNull(fst.find(""));
+        assertNull(fst.find("ab"));
+        assertNull(fst.find("abcdefg"));
+        assertNull(fst.find("z"));
+    }
+
+    @Test
+    public void tolerantLookupMatchesRadix() throws IOException {
+        DictRadix<MorphData> radix = getDictionary().getRadix();
+        DictFST<MorphData> fst = new DictFST<MorphData>(radix);
+        String[] words = {"אמא", "אנצקלופדיה", "אינציקלופדיה", "שלחן", "פינגוין", "מסטייק", "נבזויוות", "גרגיריי", "תקרובוותיי"};
+        for (String word : words) {
+            assertEquals(word, toString(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)),
+                    toString(fst.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)));
+            assertSame(radix.find(word), fst.find(word));
+        }
+    }
+
+    @Test
+    public void lookupsDontKeepTheDictionaryAlive() throws InterruptedException {
+        assertTrue(isCollected(lookUpInNewDictionary()));
+    }
+
+    private static WeakReference<DictFST<Integer>> lookUpInNewDictionary() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        radix.addNode("שולחן", 1);
+        radix.addNode("כיסא", 2);
+        DictFST<Integer> fst = new DictFST<Integer>(radix);
+        assertEquals(Integer.valueOf(1), fst.find("שולחן"));
+        assertEquals(1, fst.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(fst);
+    }
+
+    private static String toString(List<LookupResult<MorphData>> results) {
+        if (results == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (LookupResult<MorphData> lr : results) {
+            assertNotNull(lr.getData());
+            sb.append(lr.getWord()).append(':').append(lr.getScore()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.DescFlag;
+import com.code972.hebmorph.HeapLemmaTable;
+import com.code972.hebmorph.LemmatizationCache;
+import com.code972.hebmorph.Lemmatizer;
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.PrefixType;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class DictHebMorphFreezeTest extends TestBase {
+    @Test
+    public void frozenDictionaryLemmatizesTheSame() throws IOException {
+        DictHebMorph dict = getDictionary();
+        DictHebMorph frozen = dict.freeze();
+        assertTrue(frozen.isFrozen());
+        assertFalse(dict.isFrozen());
+        assertSame(frozen, frozen.freeze());
+        assertEquals(dict.getRadix().getCount(), frozen.getDictionary().getCount());
+
+        Lemmatizer lemmatizer = new Lemmatizer(dict), frozenLemmatizer = new Lemmatizer(frozen);
+        for (String word : new String[]{"אמא", "שלחן", "ובבית", "כשהלכתי", "אנצקלופדיה", "מסטייק"}) {
+            assertEquals(word, lemmatizer.lemmatize(word).toString(), frozenLemmatizer.lemmatize(word).toString());
+            assertEquals(word, lemmatizer.lemmatizeTolerant(word).toString(), frozenLemmatizer.lemmatizeTolerant(word).toString());
+        }
+        assertTrue(frozenLemmatizer.isLegalPrefix("וכש"));
+    }
+
+    @Test
+    public void frozenDictionaryHasItsOwnLemmatizationCache() {
+        MorphData md = new MorphData();
+        md.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma("שולחן", DescFlag.D_NOUN, PrefixType.PS_ALL)});
+        DictHebMorph dict = new DictHebMorph(new DictRadix<MorphData>(), new HashMap<String, Integer>());
+        dict.addNode("שולחן", md);
+        dict.setLemmatizationCache(new LemmatizationCache(100));
+        new Lemmatizer(dict).lemmatize("שולחן");
+
+        DictHebMorph frozen = dict.freeze();
+        assertNotSame(dict.getLemmatizationCache(), frozen.getLemmatizationCache());
+        assertEquals(100, frozen.getLemmatizationCache().getMaximumSize());
+        assertEquals(0, frozen.getLemmatizationCache().size());
+
+        // Words the source dictionary gains later, and caches, aren't seen by the frozen copy
+        dict.addNode("כסא", md);
+        assertEquals(1, new Lemmatizer(dict).lemmatize("כסא").size());
+        assertEquals(0, new Lemmatizer(frozen).lemmatize("כסא").size());
+        assertEquals(1, new Lemmatizer(frozen).lemmatize("שולחן").size());
+    }
+
+    @Test
+    public void frozenDictionaryCannotBeModified() {
+        MorphData shared = new MorphData();
+        shared.setPrefixes((short) 63);
+        shared.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma("שולחן", DescFlag.D_NOUN, PrefixType.PS_ALL)});
+        HashMap<String, Integer> pref = new HashMap<String, Integer>();
+        pref.put("ו", 1);
+        DictHebMorph dict = new DictHebMorph(new DictRadix<MorphData>(), pref);
+        dict.addNode("שולחן", shared);
+        dict.addNode("שלחן", shared);
+
+        DictHebMorph frozen = dict.freeze();
+        MorphData frozenData = frozen.lookup("שולחן");
+        assertEquals(shared, frozenData);
+        assertNotSame(shared, frozenData);
+        assertSame(frozenData, frozen.lookup("שלחן"));
+        assertTrue(frozenData.isFrozen());
+
+        frozen.getPref().put("ה", 2); // a copy
+        assertNull(frozen.lookupPrefix("ה"));
+        assertEquals(Integer.valueOf(1), frozen.lookupPrefix("ו"));
+
+        try {
+            frozen.addNode("כיסא", new MorphData());
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozen.setPref(new HashMap<String, Integer>());
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozen.clear();
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozen.setLemmatizationCache(null);
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozen.setTolerantLookupCache(null);
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozen.setTolerantLookupLimits(null);
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozenData.setPrefixes((short) 0);
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            frozenData.addLemma(new MorphData.Lemma("שלחן", DescFlag.D_NOUN, PrefixType.PS_ALL));
+            fail("Exception expected");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        // Lemmas are read through views of the source's tables, which can't be added to
+        assertFalse(frozen.getLemmaTable() instanceof HeapLemmaTable);
+        assertFalse(frozenData.getLemmaTable() instanceof HeapLemmaTable);
+        assertEquals("שולחן", frozenData.getLemmas()[0].getLemma());
+
+        // The source is unaffected, both ways
+        shared.setPrefixes((short) 0);
+        dict.addNode("כיסא", new MorphData());
+        assertEquals(63, frozenData.getPrefixes());
+        assertNull(frozen.lookup("כיסא"));
+    }
+
+    @Test
+    public void freezingKeepsTheSkeletonIndex() {
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        dict.buildSkeletonIndex();
+
+        DictHebMorph frozen = dict.freeze();
+        assertNotNull(frozen.getSkeletonIndex());
+        LookupResult<MorphData> tolerated = frozen.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).get(0);
+        assertSame(frozen.lookup("שולחן"), tolerated.getData());
+    }
+
+    @Test
+    public void freezingAMappedDictionaryKeepsItsIndexes() throws IOException {
+        DictRadix<MorphData> radix = new DictRadix<MorphData>();
+        radix.addNode("שולחן", new MorphData());
+        File file = File.createTempFile("hebmorph", ".dict");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            MappedDictionary.write(new DictHebMorph(radix, new HashMap<String, Integer>()), out);
+        }
+
+        DictHebMorph mapped = MappedDictionary.load(file);
+        mapped.setSkeletonIndex(new EmKriyaSkeletonIndex<MorphData>(radix));
+        mapped.setSuffixIndex(new SuffixIndex<MorphData>(radix));
+
+        DictHebMorph frozen = mapped.freeze();
+        assertSame(mapped.getSkeletonIndex(), frozen.getSkeletonIndex());
+        assertSame(mapped.getSuffixIndex(), frozen.getSuffixIndex());
+    }
+}
@@ -0,0 +1,105 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.DescFlag;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.PrefixType;
+import com.code972.hebmorph.TestBase;
+import com.code972.hebmorph.hspell.HSpellDictionaryLoader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class DictHebMorphSerializerTest extends TestBase {
+    @Test
+    public void roundTripsHSpellDictionary() throws IOException {
+        DictHebMorph dict = getDictionary();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictHebMorphSerializer.write(dict, out);
+
+        DictHebMorph loaded = new HSpellDictionaryLoader().loadDictionary(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(dict.getRadix().getCount(), loaded.getRadix().getCount());
+        assertEquals(dict, loaded);
+        assertEquals(dict.getPref(), loaded.getPref());
+        assertEquals(Integer.valueOf(dict.getPref().get("ו")), loaded.lookupPrefix("ו".toCharArray(), 0, 1));
+
+        DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) dict.getRadix().iterator();
+        for (int i = 0; en.hasNext(); i++) {
+            MorphData expected = en.next();
+            if (i % 100 != 0) continue;
+            MorphData actual = loaded.lookup(en.getCurrentKey());
+            assertEquals(expected.getPrefixes(), actual.getPrefixes());
+            assertEquals(expected.haltIfFound(), actual.haltIfFound());
+            assertEquals(Arrays.asList(expected.getLemmas()), Arrays.asList(actual.getLemmas()));
+            // Both loaders share data between words, and so can't let it be changed
+            assertTrue(expected.isFrozen());
+            assertTrue(actual.isFrozen());
+        }
+    }
+
+    @Test
+    public void keepsSharedDataAndRadixSettings() throws IOException {
+        DictRadix<MorphData> radix = new DictRadix<MorphData>(false);
+        MorphData shared = new MorphData();
+        shared.setPrefixes((short) 8);
+        shared.setHaltIfFound(true);
+        shared.setLemmas(new MorphData.Lemma[]{new MorphData.Lemma("H&M", DescFlag.D_PROPER, PrefixType.PS_NONDEF),
+                new MorphData.Lemma(null, DescFlag.D_EMPTY, PrefixType.PS_ALL)});
+        radix.addNode("H&M", shared);
+        radix.addNode("H&M's", shared);
+        radix.addNode("i-phone", new MorphData()); // no lemmas at all
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictHebMorphSerializer.write(new DictHebMorph(radix, new HashMap<String, Integer>()), out);
+        DictHebMorph loaded = DictHebMorphSerializer.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertFalse(loaded.getRadix().getCaseSensitiveKeys());
+        assertSame(loaded.lookup("h&m"), loaded.lookup("H&M's"));
+        assertTrue(loaded.lookup("H&M").haltIfFound());
+        assertEquals(Arrays.asList(shared.getLemmas()), Arrays.asList(loaded.lookup("H&M").getLemmas()));
+        assertFalse(loaded.lookup("I-Phone").hasLemmas());
+    }
+
+    @Test
+    public void rejectsOtherFormatsAndVersions() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DictHebMorphSerializer.write(new DictHebMorph(), out);
+        byte[] bytes = out.toByteArray();
+
+        assertInvalid(Arrays.copyOf(bytes, bytes.length - 1));
+        bytes[7]++; // version
+        assertInvalid(bytes);
+        bytes[0]++; // magic
+        assertInvalid(bytes);
+    }
+
+    private static void assertInvalid(byte[] bytes) {
+        try {
+            DictHebMorphSerializer.read(new ByteArrayInputStream(bytes));
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EmKriyaSkeletonIndexTest extends TestBase {
+    @Test
+    public void tolerantLookupMatchesRadix() throws IOException {
+        DictRadix<MorphData> radix = getDictionary().getRadix();
+        EmKriyaSkeletonIndex<MorphData> index = new EmKriyaSkeletonIndex<MorphData>(radix);
+        assertEquals(radix.getCount(), index.getCount());
+
+        String[] words = {"אמא", "אנצקלופדיה", "אינציקלופדיה", "שלחן", "פינגוין", "מסטייק", "נבזויוות", "גרגיריי", "תקרובוותיי", "ילד", "וילון"};
+        for (String word : words) {
+            assertEquals(word, toSortedStrings(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)),
+                    toSortedStrings(index.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)));
+            assertSame(radix.find(word), index.find(word));
+        }
+    }
+
+    @Test
+    public void groupsWordsBySkeleton() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        radix.addNode("שלחן", 1);
+        radix.addNode("שולחן", 2);
+        radix.addNode("ישב", 3);
+        radix.addNode("שב", 4);
+
+        EmKriyaSkeletonIndex<Integer> index = new EmKriyaSkeletonIndex<Integer>(radix);
+        assertEquals(4, index.getCount());
+        assertEquals(3, index.getSkeletonsCount()); // a leading Yud is part of the skeleton
+        assertEquals(Integer.valueOf(2), index.find("--שולחן--".toCharArray(), 2, 5));
+        assertNull(index.find("שולחנ"));
+        assertNull(index.find("שב-"));
+        assertNull(index.lookupTolerant("שלחנות", LookupTolerators.TolerateEmKryiaAll));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherTolerators() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        radix.addNode("abc", 1);
+        LookupTolerators.ToleranceFunction[] tolFuncs = {new LookupTolerators.ToleranceFunction() {
+            public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
+                return LookupTolerators.NOT_TOLERATED;
+            }
+        }};
+        assertFalse(EmKriyaSkeletonIndex.supports(tolFuncs));
+        new EmKriyaSkeletonIndex<Integer>(radix).lookupTolerant("abc", tolFuncs);
+    }
+
+    @Test
+    public void dictionaryUsesIndexUntilWordsAreAdded() throws IOException {
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        dict.buildSkeletonIndex();
+        assertNotNull(dict.getSkeletonIndex());
+        assertEquals("שולחן", dict.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).get(0).getWord());
+
+        dict.addNode("כיסא", new MorphData());
+        assertNull(dict.getSkeletonIndex());
+        assertEquals("כיסא", dict.lookupTolerant("כסא", LookupTolerators.TolerateEmKryiaAll).get(0).getWord());
+    }
+
+    @Test
+    public void lookupsDontKeepTheIndexAlive() throws InterruptedException {
+        assertTrue(isCollected(lookUpInNewIndex()));
+    }
+
+    private static WeakReference<EmKriyaSkeletonIndex<Integer>> lookUpInNewIndex() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        radix.addNode("שולחן", 1);
+        EmKriyaSkeletonIndex<Integer> index = new EmKriyaSkeletonIndex<Integer>(radix);
+        assertEquals(Integer.valueOf(1), index.find("שולחן"));
+        assertEquals(1, index.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(index);
+    }
+
+    private static List<String> toSortedStrings(List<LookupResult<MorphData>> results) {
+        List<String> ret = new ArrayList<String>();
+        if (results != null) {
+            for (LookupResult<MorphData> lr : results) {
+                ret.add(lr.getWord() + ':' + lr.getScore() + ':' + System.identityHashCode(lr.getData()));
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,115 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrozenDictRadixTest extends TestBase {
+    @Test
+    public void findsExactlyTheRadixKeys() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        String[] keys = {"a", "abcdef", "abcdefg", "abf", "abfeeee", "agga", "azfwasf", "bcdef", "c", "cb", "cbd", "cbdefghij", "czzzzij", "czzzzija"};
+        for (int i = 0; i < keys.length; i++) {
+            radix.addNode(keys[i], i);
+        }
+
+        FrozenDictRadix<Integer> frozen = new FrozenDictRadix<Integer>(radix);
+        assertEquals(radix.getCount(), frozen.getCount());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(Integer.valueOf(i), frozen.find(keys[i]));
+        }
+        assertEquals(Integer.valueOf(1), frozen.find("xxabcdefxx".toCharArray(), 2, 6));
+
+        assertNull(frozen.find(""));
+        assertNull(frozen.find("ab")); // bridge node, no value
+        assertNull(frozen.find("abc"));
+        assertNull(frozen.find("abcdefgh"));
+        assertNull(frozen.find("cz"));
+        assertNull(frozen.find("z"));
+    }
+
+    @Test
+    public void keepsCaseInsensitivity() {
+        DictRadix<Byte> radix = new DictRadix<Byte>(false);
+        radix.addNode("H&M", (byte) 1);
+        radix.addNode("i-phone", (byte) 2);
+
+        FrozenDictRadix<Byte> frozen = new FrozenDictRadix<Byte>(radix);
+        assertEquals(Byte.valueOf((byte) 1), frozen.find("h&m"));
+        assertEquals(Byte.valueOf((byte) 2), frozen.find("I-Phone"));
+    }
+
+    @Test
+    public void tolerantLookupMatchesRadix() throws IOException {
+        DictRadix<MorphData> radix = getDictionary().getRadix();
+        FrozenDictRadix<MorphData> frozen = new FrozenDictRadix<MorphData>(radix);
+        String[] words = {"אמא", "אנצקלופדיה", "אינציקלופדיה", "שלחן", "פינגוין", "מסטייק", "נבזויוות", "גרגיריי", "תקרובוותיי"};
+        for (String word : words) {
+            assertEquals(word, toString(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)),
+                    toString(frozen.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)));
+            assertSame(radix.find(word), frozen.find(word));
+        }
+    }
+
+    @Test
+    public void lookupsDontKeepTheDictionaryAlive() throws InterruptedException {
+        assertTrue(isCollected(lookUpInNewDictionary()));
+        assertTrue(isCollected(lookUpInNewFrozenDictionary()));
+    }
+
+    private static DictRadix<MorphData> newRadix() {
+        DictRadix<MorphData> radix = new DictRadix<MorphData>();
+        radix.addNode("שולחן", new MorphData());
+        radix.addNode("כיסא", new MorphData());
+        return radix;
+    }
+
+    private static WeakReference<FrozenDictRadix<MorphData>> lookUpInNewDictionary() {
+        FrozenDictRadix<MorphData> frozen = new FrozenDictRadix<MorphData>(newRadix());
+        assertEquals(1, frozen.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(frozen);
+    }
+
+    private static WeakReference<DictHebMorph> lookUpInNewFrozenDictionary() {
+        DictHebMorph frozen = new DictHebMorph(newRadix(), new HashMap<String, Integer>()).freeze();
+        assertEquals(1, frozen.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(frozen);
+    }
+
+    private static String toString(List<LookupResult<MorphData>> results) {
+        if (results == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (LookupResult<MorphData> lr : results) {
+            assertNotNull(lr.getData());
+            sb.append(lr.getWord()).append(':').append(lr.getScore()).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.Lemmatizer;
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import com.code972.hebmorph.hspell.HSpellDictionaryLoader;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedDictionaryTest extends TestBase {
+    @Test
+    public void mapsHSpellDictionary() throws IOException {
+        DictHebMorph dict = getDictionary();
+        File file = writeToTempFile(dict);
+        assertTrue(MappedDictionary.isMappedDictionary(file));
+
+        DictHebMorph mapped = new HSpellDictionaryLoader().loadDictionaryFromPath(file.getPath());
+        assertTrue(mapped.getDictionary() instanceof MappedDictionary);
+        assertEquals(dict.getRadix().getCount(), mapped.getDictionary().getCount());
+        assertEquals(dict.getPref(), mapped.getPref());
+
+        DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) dict.getRadix().iterator();
+        for (int i = 0; en.hasNext(); i++) {
+            MorphData expected = en.next();
+            if (i % 50 != 0) continue;
+            MorphData actual = mapped.lookup(en.getCurrentKey());
+            assertEquals(en.getCurrentKey(), expected, actual);
+            assertEquals(expected.getPrefixes(), actual.getPrefixes());
+            assertEquals(expected.haltIfFound(), actual.haltIfFound());
+        }
+        assertNull(mapped.lookup("אבגדהוזחט"));
+
+        String[] words = {"אמא", "אנצקלופדיה", "שלחן", "פינגוין", "מסטייק", "גרגיריי"};
+        Lemmatizer heapLemmatizer = new Lemmatizer(dict), mappedLemmatizer = new Lemmatizer(mapped);
+        for (String word : words) {
+            assertEquals(word, toString(dict.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)),
+                    toString(mapped.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll)));
+            assertEquals(word, heapLemmatizer.lemmatize(word).toString(), mappedLemmatizer.lemmatize(word).toString());
+            assertEquals(word, heapLemmatizer.lemmatizeTolerant(word).toString(), mappedLemmatizer.lemmatizeTolerant(word).toString());
+        }
+    }
+
+    @Test
+    public void keepsCaseInsensitivityAndMissingLemmas() throws IOException {
+        DictRadix<MorphData> radix = new DictRadix<MorphData>(false);
+        MorphData md = new MorphData();
+        md.setPrefixes((short) 8);
+        radix.addNode("H&M", md);
+
+        MappedDictionary mapped = MappedDictionary.open(writeToTempFile(new DictHebMorph(radix, new HashMap<String, Integer>())));
+        assertEquals(1, mapped.getCount());
+        assertEquals(8, mapped.find("h&m").getPrefixes());
+        assertFalse(mapped.find("h&m").hasLemmas());
+        assertNull(mapped.find("h&"));
+        assertTrue(mapped.getPrefixes().isEmpty());
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = File.createTempFile("hebmorph", ".dict");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            DictHebMorphSerializer.write(new DictHebMorph(), out);
+        }
+        assertFalse(MappedDictionary.isMappedDictionary(file));
+        try {
+            MappedDictionary.open(file);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void lookupsDontKeepTheMappingAlive() throws IOException, InterruptedException {
+        DictRadix<MorphData> radix = new DictRadix<MorphData>();
+        radix.addNode("שולחן", new MorphData());
+        File file = writeToTempFile(new DictHebMorph(radix, new HashMap<String, Integer>()));
+        assertTrue(isCollected(lookUpInNewMapping(file)));
+    }
+
+    private static WeakReference<MappedDictionary> lookUpInNewMapping(File file) throws IOException {
+        MappedDictionary mapped = MappedDictionary.open(file);
+        assertEquals(1, mapped.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(mapped);
+    }
+
+    private static File writeToTempFile(DictHebMorph dict) throws IOException {
+        File file = File.createTempFile("hebmorph", ".dict");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            MappedDictionary.write(dict, out);
+        }
+        return file;
+    }
+
+    private static String toString(List<LookupResult<MorphData>> results) {
+        if (results == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (LookupResult<MorphData> lr : results) {
+            sb.append(lr.getWord()).append(':').append(lr.getScore()).append(':').append(Arrays.asList(lr.getData().getLemmas())).append(' ');
+        }
+        return sb.toString();
+    }
+}
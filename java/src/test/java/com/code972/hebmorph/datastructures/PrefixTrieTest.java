@@ -0,0 +1,71 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrefixTrieTest extends TestBase {
+    @Test
+    public void matchesThePrefixesTable() throws IOException {
+        final HashMap<String, Integer> pref = getDictionary().getPref();
+        final PrefixTrie trie = new PrefixTrie(pref);
+        for (Map.Entry<String, Integer> entry : pref.entrySet()) {
+            final String prefix = entry.getKey();
+            assertEquals(prefix, entry.getValue().intValue(), trie.getMask(prefix, prefix.length()));
+            assertEquals(prefix, entry.getValue().intValue(), trie.getMask(("-" + prefix + "-").toCharArray(), 1, prefix.length()));
+            for (char c = 'א'; c <= 'ת'; c++) {
+                final String longer = prefix + c;
+                final Integer mask = pref.get(longer);
+                assertEquals(longer, mask == null ? PrefixTrie.NOT_A_PREFIX : mask, trie.getMask(longer, longer.length()));
+            }
+        }
+        assertEquals(PrefixTrie.NOT_A_PREFIX, trie.getMask("", 0));
+        assertEquals(PrefixTrie.NOT_A_PREFIX, trie.getMask("abc", 3));
+    }
+
+    @Test
+    public void walkFindsAllPrefixesOfAWord() {
+        final HashMap<String, Integer> pref = new HashMap<>();
+        pref.put("ו", 1);
+        pref.put("וכש", 2); // "וכ" isn't a prefix by itself
+        pref.put("ש", 4);
+        final PrefixTrie trie = new PrefixTrie(pref);
+        assertEquals(5, trie.getStatesCount()); // including the root and "וכ"
+
+        final String word = "וכשהלכתי";
+        final StringBuilder found = new StringBuilder();
+        int state = PrefixTrie.ROOT;
+        for (int i = 0; i < word.length() && (state = trie.step(state, word.charAt(i))) != PrefixTrie.NO_STATE; i++) {
+            if (trie.getMask(state) != PrefixTrie.NOT_A_PREFIX) {
+                found.append(i + 1).append(':').append(trie.getMask(state)).append(' ');
+            }
+        }
+        assertEquals("1:1 3:2 ", found.toString());
+
+        final PrefixTrie empty = new PrefixTrie(new HashMap<String, Integer>());
+        assertEquals(PrefixTrie.NO_STATE, empty.step(PrefixTrie.ROOT, 'ו'));
+        assertEquals(PrefixTrie.NOT_A_PREFIX, empty.getMask("ו", 1));
+    }
+}
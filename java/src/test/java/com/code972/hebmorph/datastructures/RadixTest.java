@@ -17,10 +17,15 @@
  **************************************************************************/
 package com.code972.hebmorph.datastructures;
 
+import com.code972.hebmorph.LookupTolerators;
 import com.code972.hebmorph.TestBase;
 import com.code972.hebmorph.datastructures.DictRadix.RadixEnumerator;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -65,6 +70,130 @@ public class RadixTest extends TestBase {
         assert (!d1.equals(d2));
     }
 
+    @Test
+    public void findDoesNotThrowOnMisses() {
+        DictRadix<Integer> d = new DictRadix<Integer>();
+        assertNull(d.find("abc"));
+        assertFalse(d.containsPrefix("abc".toCharArray(), 0, 3));
+
+        d.addNode("abcdef", 1);
+        d.addNode("abcxyz", 2);
+
+        assertEquals(Integer.valueOf(1), d.find("abcdef"));
+        assertEquals(Integer.valueOf(2), d.find("--abcxyz--".toCharArray(), 2, 6));
+        assertNull(d.find("abc")); // a node with no value of its own
+        assertNull(d.find("abcd"));
+        assertNull(d.find("abcdefg"));
+        assertNull(d.find("z"));
+
+        assertTrue(d.containsPrefix("abc".toCharArray(), 0, 3));
+        assertTrue(d.containsPrefix("abcd".toCharArray(), 0, 4));
+        assertTrue(d.containsPrefix("--abcdef".toCharArray(), 2, 6));
+        assertFalse(d.containsPrefix("abcdefg".toCharArray(), 0, 7));
+        assertFalse(d.containsPrefix("abd".toCharArray(), 0, 3));
+        assertFalse(d.containsPrefix("abc".toCharArray(), 0, 0));
+    }
+
+    @Test
+    public void tolerantLookupWithCustomTolerators() {
+        DictRadix<Integer> d = new DictRadix<Integer>();
+        d.addNode("abc", 1);
+        d.addNode("abxc", 2);
+
+        // Tolerates an 'x' missing from the key, and a superfluous 'q' in it
+        final LookupTolerators.ToleranceFunction[] tolFuncs = {
+                new LookupTolerators.ToleranceFunction() {
+                    public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
+                        return curChar == 'x' ? LookupTolerators.consumeChar(50) : LookupTolerators.NOT_TOLERATED;
+                    }
+                },
+                new LookupTolerators.ToleranceFunction() {
+                    public int tolerate(char[] key, int keyLen, int keyPos, char[] word, int wordLen, char curChar) {
+                        return key[keyPos] == 'q' ? LookupTolerators.skipKeyChar(90) : LookupTolerators.NOT_TOLERATED;
+                    }
+                }};
+
+        assertEquals("abc:1.0 abxc:0.5 ", toString(d.lookupTolerant("abc", tolFuncs)));
+        assertEquals("abc:1.0 abxc:0.5 ", toString(d.lookupTolerant("--abc--".toCharArray(), 2, 3, tolFuncs)));
+        assertEquals("abc:0.9 abxc:0.45 ", toString(d.lookupTolerant("aqbc", tolFuncs)));
+        assertEquals("abxc:1.0 ", toString(d.lookupTolerant("abxc", tolFuncs)));
+        assertNull(d.lookupTolerant("abd", tolFuncs));
+    }
+
+    @Test
+    public void lookupsDontKeepTheRadixAlive() throws InterruptedException {
+        assertTrue(isCollected(lookUpInNewRadix()));
+    }
+
+    private static WeakReference<DictRadix<Integer>> lookUpInNewRadix() {
+        DictRadix<Integer> d = new DictRadix<Integer>();
+        d.addNode("שולחן", 1);
+        assertEquals(1, d.lookupTolerant("שלחן", LookupTolerators.TolerateEmKryiaAll).size());
+        return new WeakReference<>(d);
+    }
+
+    @Test
+    public void mergesShardsByFirstChar() {
+        DictRadix<Integer> a = new DictRadix<Integer>(), b = new DictRadix<Integer>(), empty = new DictRadix<Integer>();
+        a.addNode("abc", 1);
+        a.addNode("abd", 2);
+        a.addNode("azz", 3);
+        b.addNode("bcd", 4);
+        b.addNode("b", 5);
+
+        DictRadix<Integer> expected = new DictRadix<Integer>();
+        for (String key : new String[]{"abc", "abd", "azz", "bcd", "b"}) {
+            expected.addNode(key, a.find(key) != null ? a.find(key) : b.find(key));
+        }
+
+        DictRadix<Integer> merged = DictRadix.merge(Arrays.asList(a, empty, b), true);
+        assertEquals(5, merged.getCount());
+        assertEquals(expected, merged);
+        assertEquals(Integer.valueOf(5), merged.find("b"));
+        assertNull(merged.find("ab"));
+
+        // Merged radixes take more words like any other
+        merged.addNode("ca", 6);
+        assertEquals(Integer.valueOf(6), merged.find("ca"));
+        assertEquals(6, merged.getCount());
+
+        assertEquals(0, DictRadix.merge(new ArrayList<DictRadix<Integer>>(), true).getCount());
+    }
+
+    @Test
+    public void mergeRejectsOverlappingShards() {
+        DictRadix<Integer> a = new DictRadix<Integer>(), b = new DictRadix<Integer>();
+        a.addNode("bcd", 1);
+        b.addNode("abc", 2);
+        try {
+            DictRadix.merge(Arrays.asList(a, b), true);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        b.clear();
+        b.addNode("bzz", 2);
+        try {
+            DictRadix.merge(Arrays.asList(a, b), true);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            DictRadix.merge(Arrays.asList(a, new DictRadix<Integer>(false)), true);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    private static String toString(List<LookupResult<Integer>> results) {
+        StringBuilder sb = new StringBuilder();
+        for (LookupResult<Integer> lr : results) {
+            sb.append(lr.getWord()).append(':').append(lr.getScore()).append(' ');
+        }
+        return sb.toString();
+    }
+
     <T> void doDoubleAddTest(DictRadix<T> d, DataGeneratorFunc<T> dataGenerator) {
         d.clear();
 
@@ -0,0 +1,162 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class SortedDictRadixBuilderTest extends TestBase {
+    @Test
+    public void buildsTheSameTrieAsAddNode() {
+        Random random = new Random(0);
+        for (int round = 0; round < 50; round++) {
+            // Few distinct chars make for many shared prefixes, keys which are prefixes of others, and splits
+            TreeSet<String> keys = new TreeSet<>();
+            for (int i = 0, n = random.nextInt(200) + 1; i < n; i++) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0, len = random.nextInt(8) + 1; j < len; j++) {
+                    sb.append((char) ('a' + random.nextInt(3)));
+                }
+                keys.add(sb.toString());
+            }
+
+            DictRadix<Integer> expected = new DictRadix<Integer>();
+            SortedDictRadixBuilder<Integer> builder = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>());
+            int value = 0;
+            for (String key : keys) {
+                expected.addNode(key, value);
+                builder.add(key, value);
+                value++;
+            }
+            DictRadix<Integer> built = builder.build();
+
+            assertEquals(keys.size(), built.getCount());
+            assertEquals(expected, built);
+            assertSameNodes(expected.getRootNode(), built.getRootNode());
+        }
+    }
+
+    @Test
+    public void builtRadixTakesMoreWords() {
+        SortedDictRadixBuilder<Integer> builder = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>());
+        builder.add("abc", 1);
+        builder.add("--abd--".toCharArray(), 2, 3, 2);
+        builder.add("b", 3);
+        DictRadix<Integer> radix = builder.build();
+        assertEquals(Integer.valueOf(2), radix.find("abd"));
+        assertNull(radix.find("ab"));
+
+        radix.addNode("ab", 4);
+        radix.addNode("aaa", 5);
+        assertEquals(5, radix.getCount());
+        assertEquals(Integer.valueOf(4), radix.find("ab"));
+        assertEquals(Integer.valueOf(5), radix.find("aaa"));
+        assertEquals(Integer.valueOf(1), radix.find("abc"));
+
+        try {
+            builder.add("c", 6);
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void repeatedKeysFollowTheValueOverrideSetting() {
+        SortedDictRadixBuilder<Integer> builder = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>());
+        builder.add("abc", 1);
+        builder.add("abc", 2);
+        DictRadix<Integer> radix = builder.build();
+        assertEquals(1, radix.getCount());
+        assertEquals(Integer.valueOf(1), radix.find("abc"));
+
+        DictRadix<Integer> overriding = new DictRadix<Integer>();
+        overriding.setAllowValueOverride(true);
+        builder = new SortedDictRadixBuilder<Integer>(overriding);
+        builder.add("abc", 1);
+        builder.add("abc", 2);
+        assertEquals(Integer.valueOf(2), builder.build().find("abc"));
+    }
+
+    @Test
+    public void caseInsensitiveKeysAreLowercased() {
+        SortedDictRadixBuilder<Integer> builder = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>(false));
+        builder.add("Abc", 1);
+        builder.add("aBD", 2);
+        builder.add("ABD", 3);
+        DictRadix<Integer> radix = builder.build();
+        assertEquals(2, radix.getCount());
+        assertEquals(Integer.valueOf(1), radix.find("abc"));
+        assertEquals(Integer.valueOf(2), radix.find("abd"));
+    }
+
+    @Test
+    public void rejectsUnsortedAndEmptyKeys() {
+        SortedDictRadixBuilder<Integer> builder = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>());
+        builder.add("abc", 1);
+        for (String key : new String[]{"ab", "abb", "aa", ""}) {
+            try {
+                builder.add(key, 2);
+                fail("Exception expected for " + key);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+
+        DictRadix<Integer> nonEmpty = new DictRadix<Integer>();
+        nonEmpty.addNode("a", 1);
+        try {
+            new SortedDictRadixBuilder<Integer>(nonEmpty);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void buildsNothingFromNoKeys() {
+        DictRadix<Integer> radix = new SortedDictRadixBuilder<Integer>(new DictRadix<Integer>()).build();
+        assertEquals(0, radix.getCount());
+        assertNull(radix.getRootNode().getChildren());
+        assertNull(radix.find("a"));
+    }
+
+    private static <T> void assertSameNodes(DictRadix<T>.DictNode expected, DictRadix<T>.DictNode actual) {
+        assertArrayEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getValue(), actual.getValue());
+        List<DictRadix<T>.DictNode> expectedChildren = children(expected), actualChildren = children(actual);
+        assertEquals(expectedChildren.size(), actualChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameNodes(expectedChildren.get(i), actualChildren.get(i));
+        }
+    }
+
+    private static <T> List<DictRadix<T>.DictNode> children(DictRadix<T>.DictNode node) {
+        List<DictRadix<T>.DictNode> ret = new ArrayList<>();
+        if (node.getChildren() != null) {
+            for (DictRadix<T>.DictNode child : node.getChildren()) {
+                ret.add(child);
+            }
+        }
+        return ret;
+    }
+}
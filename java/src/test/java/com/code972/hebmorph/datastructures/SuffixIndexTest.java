@@ -0,0 +1,102 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.Lemmatizer;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class SuffixIndexTest extends TestBase {
+    @Test
+    public void findsAllStemsInOneWalk() {
+        DictRadix<Integer> radix = new DictRadix<Integer>();
+        radix.addNode("וכשבבית", 1);
+        radix.addNode("בבית", 2);
+        radix.addNode("בית", 3);
+        radix.addNode("ית", 4);
+        radix.addNode("כשבית", 5);
+
+        SuffixIndex<Integer> index = new SuffixIndex<Integer>(radix);
+        assertEquals(5, index.getCount());
+
+        Integer[] stems = {9, 9, 9, 9, 9, 9};
+        index.findStems("--וכשבבית--".toCharArray(), 2, 7, 4, stems);
+        assertArrayEquals(new Integer[]{1, null, null, 2, 3, 9}, stems); // only prefixes up to 4 letters long
+
+        index.findStems("הבית".toCharArray(), 0, 4, 3, stems);
+        assertArrayEquals(new Integer[]{null, 3, 4, null, 3, 9}, stems);
+
+        try {
+            index.findStems("בית".toCharArray(), 0, 3, 3, stems);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void lemmatizerReturnsTheSameTokens() throws IOException {
+        DictHebMorph dict = getDictionary();
+        DictHebMorph indexed = new DictHebMorph(dict.getRadix(), dict.getPref(), dict.getLemmaTable());
+        indexed.buildSuffixIndex();
+        assertEquals(dict.getRadix().getCount(), indexed.getSuffixIndex().getCount());
+
+        Lemmatizer plain = new Lemmatizer(dict), singlePass = new Lemmatizer(indexed);
+        String[] words = {"וכשבבית", "שבבית", "ולכשתבואו", "בית", "ה", "של", "שלא", "צה'", "בצה'", "מסטייק", "ולכשבהשפעת"};
+        for (String word : words) {
+            assertEquals(word, plain.lemmatize(word), singlePass.lemmatize(word));
+        }
+        for (File file : new File("./../test-files/").listFiles()) {
+            for (String word : readFileToString(file.getPath()).split("[^א-ת\"']+")) {
+                assertEquals(word, plain.lemmatize(word), singlePass.lemmatize(word));
+            }
+        }
+
+        DictHebMorph frozen = indexed.freeze();
+        assertNotNull(frozen.getSuffixIndex());
+        assertEquals(plain.lemmatize("וכשבבית"), new Lemmatizer(frozen).lemmatize("וכשבבית"));
+
+        indexed.addNode("חדשה", new MorphData());
+        assertNull(indexed.getSuffixIndex());
+    }
+
+    @Test
+    public void lemmatizerDoesntKeepTheStemsItFound() throws InterruptedException {
+        assertTrue(isCollected(lemmatizeWithNewDictionary()));
+    }
+
+    private static WeakReference<MorphData> lemmatizeWithNewDictionary() {
+        MorphData md = new MorphData();
+        md.setPrefixes((short) 63);
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("בית", md);
+        HashMap<String, Integer> prefs = new HashMap<String, Integer>();
+        prefs.put("ה", 63);
+        dict.setPref(prefs);
+        dict.buildSuffixIndex();
+        new Lemmatizer(dict).lemmatize("הבית");
+        return new WeakReference<>(md);
+    }
+}
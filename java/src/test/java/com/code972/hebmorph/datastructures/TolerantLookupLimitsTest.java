@@ -0,0 +1,105 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.LookupTolerators;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TolerantLookupLimitsTest extends TestBase {
+    private static final String[] WORDS = {"אנצקלופדיה", "שלחן", "מסטייק", "נבזויוות", "גרגיריי", "תקרובוותיי", "אוירון"};
+
+    @Test
+    public void prunesByScore() throws IOException {
+        final DictRadix<MorphData> radix = getDictionary().getRadix();
+        final TolerantLookupLimits limits = new TolerantLookupLimits(0.7f, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        for (String word : WORDS) {
+            // Pruning keeps exactly the results scoring above the minimum, in the same order
+            final List<String> expected = new ArrayList<>();
+            for (LookupResult<MorphData> lr : nonNull(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll))) {
+                if (lr.getScore() >= 0.7f) expected.add(toString(lr));
+            }
+            assertEquals(word, expected, toStrings(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits)));
+        }
+        assertTrue(limits.getScorePrunedCount() > 0);
+        assertEquals(0, limits.getResultsCappedCount());
+        assertEquals(0, limits.getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void keepsBestResults() throws IOException {
+        final DictRadix<MorphData> radix = getDictionary().getRadix();
+        final FrozenDictRadix<MorphData> frozen = new FrozenDictRadix<MorphData>(radix);
+        final TolerantLookupLimits limits = new TolerantLookupLimits(0f, 2, Integer.MAX_VALUE);
+        for (String word : WORDS) {
+            final List<Float> scores = scores(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll));
+            Collections.sort(scores, Collections.<Float>reverseOrder());
+            final List<Float> expected = scores.subList(0, Math.min(2, scores.size()));
+
+            final List<Float> actual = scores(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits));
+            Collections.sort(actual, Collections.<Float>reverseOrder());
+            assertEquals(word, expected, actual);
+            assertEquals(word, toStrings(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits)),
+                    toStrings(frozen.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits)));
+        }
+        assertTrue(limits.getResultsCappedCount() > 0);
+    }
+
+    @Test
+    public void stopsWhenOutOfBudget() throws IOException {
+        final DictRadix<MorphData> radix = getDictionary().getRadix();
+        final TolerantLookupLimits limits = new TolerantLookupLimits(0f, Integer.MAX_VALUE, 50);
+        for (String word : WORDS) {
+            final List<String> all = toStrings(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll));
+            assertTrue(word, all.containsAll(toStrings(radix.lookupTolerant(word, LookupTolerators.TolerateEmKryiaAll, limits))));
+        }
+        assertEquals(WORDS.length, limits.getBudgetExhaustedCount());
+    }
+
+    private static List<LookupResult<MorphData>> nonNull(final List<LookupResult<MorphData>> results) {
+        return results == null ? Collections.<LookupResult<MorphData>>emptyList() : results;
+    }
+
+    private static String toString(final LookupResult<MorphData> lr) {
+        return lr.getWord() + ":" + lr.getScore();
+    }
+
+    private static List<String> toStrings(final List<LookupResult<MorphData>> results) {
+        final List<String> ret = new ArrayList<>();
+        for (LookupResult<MorphData> lr : nonNull(results)) {
+            ret.add(toString(lr));
+        }
+        return ret;
+    }
+
+    private static List<Float> scores(final List<LookupResult<MorphData>> results) {
+        final List<Float> ret = new ArrayList<>();
+        for (LookupResult<MorphData> lr : nonNull(results)) {
+            ret.add(lr.getScore());
+        }
+        return ret;
+    }
+}
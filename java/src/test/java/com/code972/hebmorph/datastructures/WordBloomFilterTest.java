@@ -0,0 +1,132 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.datastructures;
+
+import com.code972.hebmorph.Lemmatizer;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WordBloomFilterTest extends TestBase {
+    @Test
+    public void neverRejectsDictionaryWords() throws IOException {
+        DictRadix<MorphData> radix = getDictionary().getRadix();
+        WordBloomFilter filter = WordBloomFilter.build(radix, 0.01).withStats();
+        DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) radix.iterator();
+        while (en.hasNext()) {
+            en.next();
+            assertTrue(en.getCurrentKey(), filter.mightContain(en.getCurrentKey()));
+        }
+        assertEquals(radix.getCount(), filter.getProbesCount());
+        assertEquals(0, filter.getRejectedCount());
+
+        // Random letter strings are hardly ever words
+        Random random = new Random(42);
+        filter.resetStats();
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            char[] word = new char[8];
+            for (int c = 0; c < word.length; c++) {
+                word[c] = (char) ('א' + random.nextInt(27));
+            }
+            if (filter.mightContain(word, 0, word.length) && radix.find(word, 0, word.length) == null) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+        assertEquals(100000, filter.getProbesCount());
+        assertTrue(filter.getRejectedCount() > 98000);
+    }
+
+    @Test
+    public void sizing() {
+        WordBloomFilter filter = WordBloomFilter.forFalsePositiveRate(1000, 0.01, true);
+        assertEquals(9586, filter.getBitsCount());
+        assertEquals(7, filter.getHashesCount());
+        WordBloomFilter small = WordBloomFilter.forBitsPerWord(1000, 1.2, true);
+        assertEquals(1200, small.getBitsCount());
+        assertEquals(1, small.getHashesCount());
+        assertEquals(152, small.ramBytesUsed());
+        assertFalse(small.isRecordingStats());
+        assertFalse(small.mightContain("abc"));
+        assertEquals(0, small.getProbesCount());
+        assertTrue(small.withStats().isRecordingStats());
+
+        try {
+            WordBloomFilter.forFalsePositiveRate(1000, 1.5, true);
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        WordBloomFilter caseInsensitive = WordBloomFilter.forFalsePositiveRate(10, 0.01, false);
+        caseInsensitive.add("abc");
+        assertTrue(caseInsensitive.mightContain("ABC"));
+    }
+
+    @Test
+    public void dictionaryChecksFilterBeforeLookups() throws IOException {
+        DictHebMorph base = getDictionary();
+        DictHebMorph dict = new DictHebMorph(base.getRadix(), base.getPref(), base.getLemmaTable());
+        WordBloomFilter filter = WordBloomFilter.build(base.getRadix(), 0.01).withStats();
+        dict.setBloomFilter(filter);
+
+        Lemmatizer plain = new Lemmatizer(base), filtered = new Lemmatizer(dict);
+        String[] words = {"וכשבבית", "בית", "קקקק", "ולכשתבואו", "צה'", "פינגווין"};
+        for (String word : words) {
+            assertEquals(word, plain.lemmatize(word), filtered.lemmatize(word));
+        }
+        assertTrue(filter.getRejectedCount() > 0);
+        assertNull(dict.lookup("קקקק"));
+
+        DictHebMorph frozen = dict.freeze();
+        assertNotNull(frozen.getBloomFilter());
+        assertNotSame(filter, frozen.getBloomFilter());
+        assertEquals(plain.lemmatize("וכשבבית"), new Lemmatizer(frozen).lemmatize("וכשבבית"));
+    }
+
+    @Test
+    public void wordsAddedLaterPassTheFilter() {
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        dict.buildBloomFilter(0.01);
+        assertNotNull(dict.lookup("שולחן"));
+
+        dict.addNode("כיסא", new MorphData());
+        assertTrue(dict.getBloomFilter().mightContain("כיסא"));
+        assertNotNull(dict.lookup("כיסא"));
+    }
+
+    @Test
+    public void wordsAddedFromTerminatedBuffersPassTheFilter() {
+        DictHebMorph dict = new DictHebMorph();
+        dict.addNode("שולחן", new MorphData());
+        dict.buildBloomFilter(0.01);
+
+        // The radix only takes the word up to the terminator, and so must the filter
+        dict.addNode("מיטה\0זבל".toCharArray(), new MorphData());
+        assertTrue(dict.getBloomFilter().mightContain("מיטה"));
+        assertNotNull(dict.lookup("מיטה"));
+        char[] buf = "xמיטהx".toCharArray();
+        assertNotNull(dict.lookup(buf, 1, 4));
+    }
+}
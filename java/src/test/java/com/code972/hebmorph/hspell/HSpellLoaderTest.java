@@ -0,0 +1,131 @@
+/***************************************************************************
+ *   Copyright (C) 2010-2015 by                                            *
+ *      Itamar Syn-Hershko <itamar at code972 dot com>                     *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU Affero General Public License           *
+ *   version 3, as published by the Free Software Foundation.              *
+ *                                                                         *
+ *   This program is distributed in the hope that it will be useful,       *
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *   GNU Affero General Public License for more details.                   *
+ *                                                                         *
+ *   You should have received a copy of the GNU Affero General Public      *
+ *   License along with this program; if not, see                          *
+ *   <http://www.gnu.org/licenses/>.                                       *
+ **************************************************************************/
+package com.code972.hebmorph.hspell;
+
+import com.code972.hebmorph.LemmaTable;
+import com.code972.hebmorph.MorphData;
+import com.code972.hebmorph.TestBase;
+import com.code972.hebmorph.datastructures.DictHebMorph;
+import com.code972.hebmorph.datastructures.DictRadix;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class HSpellLoaderTest extends TestBase {
+    @Test
+    public void identicalMorphDataIsShared() throws IOException {
+        HSpellLoader loader = new HSpellLoader(new File(DICT_PATH), true);
+        DictHebMorph dict = loader.loadDictionaryFromHSpellData(new FileInputStream(new File(DICT_PATH, HSpellLoader.PREFIX_H)));
+        assertEquals(dict.getRadix().getCount(), loader.getMorphDataCount());
+        assertTrue(loader.getDistinctMorphDataCount() < loader.getMorphDataCount());
+        assertTrue(loader.getDistinctLemmasCount() < loader.getLemmasCount());
+        assertTrue(loader.getMorphDataReductionRatio() > 0);
+
+        // No two distinct instances hold the same data, and no lemma is stored twice
+        IdentityHashMap<MorphData, Boolean> instances = new IdentityHashMap<>();
+        HashMap<String, MorphData> byContent = new HashMap<>();
+        DictRadix<MorphData>.RadixEnumerator en = (DictRadix<MorphData>.RadixEnumerator) dict.getRadix().iterator();
+        while (en.hasNext()) {
+            MorphData md = en.next();
+            assertSame(dict.getLemmaTable(), md.getLemmaTable());
+            if (instances.put(md, Boolean.TRUE) == null) {
+                assertNull(en.getCurrentKey(), byContent.put(md.toString(), md));
+            }
+        }
+        assertEquals(loader.getDistinctMorphDataCount(), instances.size());
+
+        LemmaTable lemmas = dict.getLemmaTable();
+        assertEquals(loader.getDistinctLemmasCount(), lemmas.size());
+        HashSet<String> distinct = new HashSet<>();
+        for (int id = 1; id <= lemmas.size(); id++) {
+            assertTrue(distinct.add(lemmas.getLemma(id)));
+        }
+    }
+
+    @Test
+    public void prefixesOnlyDataIsShared() throws IOException {
+        HSpellLoader loader = new HSpellLoader(new File(DICT_PATH), false);
+        DictHebMorph dict = loader.loadDictionaryFromHSpellData(new FileInputStream(new File(DICT_PATH, HSpellLoader.PREFIX_H)));
+        assertEquals(dict.getRadix().getCount(), loader.getMorphDataCount());
+        assertTrue(loader.getDistinctMorphDataCount() <= 256);
+
+        Map<Integer, MorphData> byPrefixes = new HashMap<>();
+        for (MorphData md : dict.getRadix()) {
+            MorphData existing = byPrefixes.put(md.getPrefixes(), md);
+            assertTrue(existing == null || existing == md);
+            assertFalse(md.hasLemmas());
+        }
+    }
+
+    @Test
+    public void parallelLoadIsDeterministic() throws IOException {
+        DictHebMorph sequential = loadWith(new ForkJoinPool(1));
+        DictHebMorph parallel = loadWith(new ForkJoinPool(4));
+        assertEquals(sequential.getRadix().getCount(), parallel.getRadix().getCount());
+
+        LemmaTable lemmas = sequential.getLemmaTable();
+        assertEquals(lemmas.size(), parallel.getLemmaTable().size());
+        for (int id = 1; id <= lemmas.size(); id++) {
+            assertEquals(lemmas.getLemma(id), parallel.getLemmaTable().getLemma(id));
+        }
+
+        DictRadix<MorphData>.RadixEnumerator expected = (DictRadix<MorphData>.RadixEnumerator) sequential.getRadix().iterator();
+        DictRadix<MorphData>.RadixEnumerator actual = (DictRadix<MorphData>.RadixEnumerator) parallel.getRadix().iterator();
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            MorphData md = expected.next();
+            assertEquals(md.toString(), actual.next().toString());
+            assertEquals(expected.getCurrentKey(), actual.getCurrentKey());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    @Test
+    public void loadLeavesNoThreadsBehind() throws IOException, InterruptedException {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        HSpellLoader loader = new HSpellLoader(new File(DICT_PATH), true);
+        loader.loadDictionaryFromHSpellData(new FileInputStream(new File(DICT_PATH, HSpellLoader.PREFIX_H)));
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!before.contains(thread)) {
+                thread.join(1000); // the loader's pool is shut down, so its threads exit right away
+                assertFalse(thread.getName(), thread.isAlive());
+            }
+        }
+    }
+
+    private static DictHebMorph loadWith(ForkJoinPool pool) throws IOException {
+        try {
+            HSpellLoader loader = new HSpellLoader(new File(DICT_PATH), true);
+            DictHebMorph dict = loader.loadDictionaryFromHSpellData(new FileInputStream(new File(DICT_PATH, HSpellLoader.PREFIX_H)), pool);
+            assertFalse(pool.isShutdown()); // the caller's pool is left to the caller
+            return dict;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
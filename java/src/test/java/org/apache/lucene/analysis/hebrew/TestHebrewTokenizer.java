@@ -71,6 +71,14 @@ public class TestHebrewTokenizer extends BaseTokenStreamWithDictionaryTestCase {
                 new String[]{"some", "dashed", "phrase"});
     }
 
+    public void testSharedPrefixTrie() {
+        final HebrewTokenizer fromMap = new HebrewTokenizer(dict.getPref()), fromTrie = new HebrewTokenizer(dict.getPrefixTrie(), null);
+        for (String prefix : new String[]{"ו", "וכש", "ה", "בית", "שב", ""}) {
+            assertEquals(prefix, fromMap.isLegalPrefix(prefix), fromTrie.isLegalPrefix(prefix));
+        }
+        assertEquals("שטיח", fromTrie.tryStrippingPrefix("ה\"שטיח"));
+    }
+
     TokenStream tokenStream(String text) throws IOException {
         Reader reader = new StringReader(text);
         return a.tokenStream("foo", reader);